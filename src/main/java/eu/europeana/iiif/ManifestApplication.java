@@ -1,8 +1,10 @@
 package eu.europeana.iiif;
 
+import eu.europeana.iiif.service.ManifestMetrics;
 import eu.europeana.iiif.service.ManifestService;
 import eu.europeana.iiif.service.ManifestSettings;
 import eu.europeana.iiif.web.ManifestController;
+import eu.europeana.iiif.web.ManifestWarmUp;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.support.SpringBootServletInitializer;
@@ -55,6 +57,15 @@ public class ManifestApplication extends SpringBootServletInitializer {
         return new ManifestService(manifestSettings());
     }
 
+    /**
+     * Exposes manifest service statistics (e.g. connection pool usage) in the actuator /metrics endpoint
+     * @return
+     */
+    @Bean
+    public ManifestMetrics manifestMetrics() {
+        return new ManifestMetrics(manifestService());
+    }
+
     /**
      * Rest controller that handles manifest requests
      * @return
@@ -64,6 +75,15 @@ public class ManifestApplication extends SpringBootServletInitializer {
         return new ManifestController(manifestService());
     }
 
+    /**
+     * Warms up the manifest cache after startup and reports the progress in the actuator /health endpoint
+     * @return
+     */
+    @Bean
+    public ManifestWarmUp manifestWarmUp() {
+        return new ManifestWarmUp(manifestController(), manifestSettings());
+    }
+
     /**
      * This method is called when starting as a Spring-Boot application (e.g. from your IDE)
      * @param args
@@ -33,6 +33,13 @@ public final class Definitions {
      */
     public static final String CANVAS_ID = IIIF_PRESENTATION_BASE_URL + "/canvas/p";
 
+    /**
+     * Url for canvas page IDs (used when the canvases of a large record are split into pages) but with placeholder for
+     * the actual dataset and record ID. Note that the page number is not included here (so the second page should be
+     * /canvases/2)
+     */
+    public static final String CANVAS_PAGE_ID = IIIF_PRESENTATION_BASE_URL + "/canvases/";
+
     /**
      * Url for annotation IDs but with placeholder for the actual dataset and record ID
      * Note that there the order number is not included here (so first canvas should be /annotation/p1)
@@ -78,6 +85,11 @@ public final class Definitions {
                                                            + "\""
                                                            + ";charset=UTF-8";
 
+    /**
+     * Media type for newline delimited json (used for bulk manifest responses)
+     */
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
     /**
      * Media type for rdf
      */
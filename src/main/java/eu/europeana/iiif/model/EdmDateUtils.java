@@ -5,6 +5,7 @@ import org.apache.logging.log4j.Logger;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 /**
  * Helper class to convert an EDM date string to a Java LocalDate object
@@ -15,8 +16,8 @@ public final class EdmDateUtils {
 
     private static final Logger LOG = LogManager.getLogger(EdmDateUtils.class);
 
-    private static final DateTimeFormatter DATE_YEARFIRST = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final DateTimeFormatter DATE_YEARLAST = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    // prefixes of approximate dates, longest first so 'circa' isn't mistaken for 'c'
+    private static final String[] APPROXIMATE_PREFIXES = {"approx.", "circa", "about", "ca.", "ca", "c.", "~"};
 
     private EdmDateUtils() {
         // empty constructor to prevent initialization
@@ -33,33 +34,233 @@ public final class EdmDateUtils {
     }
 
     /**
-     * This converts an EDM date string to a LocalDate object (so no timezone information is available)
-     * Note that there can be a lot of different format, most of which we don't support yet
+     * This converts an EDM date string to a LocalDate object (so no timezone information is available).
+     * Supported are the most common formats we find in records:
+     * <ul>
+     *     <li>dates with the year first (yyyy-MM-dd) or last (dd-MM-yyyy), separated by '-', '/' or '.'</li>
+     *     <li>year and month (yyyy-MM) or only a year (yyyy), these return the first day of the month or year</li>
+     *     <li>ISO date times (e.g. 1940-02-15T10:15:30Z), the time part is ignored</li>
+     *     <li>approximate dates (e.g. 'ca. 1900', 'circa 1900', '[1900]' or '1900?')</li>
+     *     <li>date ranges (e.g. '1919-01-05 - 1937-12-22' or '1900/1910'), these return the start of the range</li>
+     * </ul>
+     * All other values, as well as non-existing dates, return null. Note that values are parsed without throwing
+     * (and catching) exceptions, because most values we check are not dates.
      * See also https://github.com/hugomanguinhas/europeana_experiments/tree/master/blackhole
      * @param edmDate
+     * @return LocalDate object, or null if the value isn't a supported date
      */
     public static LocalDate dateStringToDate(String edmDate) {
-        // try most common format first
-        LocalDate result = tryParseFormat(edmDate, DATE_YEARFIRST, false);
-
-        // try second common format
-        if (result == null) {
-            result = tryParseFormat(edmDate, DATE_YEARLAST, false);
+        LocalDate result = null;
+        if (edmDate != null) {
+            result = parseDate(stripApproximation(edmDate.trim()));
         }
-
         LOG.debug("Parsed edmDateString {}, result {}", edmDate, result);
         return result;
     }
 
-    private static LocalDate tryParseFormat(String edmDate, DateTimeFormatter format, boolean logError) {
-        try {
-            return LocalDate.parse(edmDate, format);
-        } catch (Exception e) {
-            if (logError) {
-                LOG.error("Error parsing date {} (used formatter = {})", edmDate, format);
+    /**
+     * Removes brackets, a trailing question mark and a prefix like 'ca.' from an approximate date
+     */
+    private static String stripApproximation(String value) {
+        String result = value;
+        if (result.length() > 2 && result.charAt(0) == '[' && result.charAt(result.length() - 1) == ']') {
+            result = result.substring(1, result.length() - 1).trim();
+        }
+        if (result.length() > 1 && result.charAt(result.length() - 1) == '?') {
+            result = result.substring(0, result.length() - 1).trim();
+        }
+        if (!result.isEmpty() && !isDigit(result.charAt(0))) {
+            String lowerCase = result.toLowerCase(Locale.ROOT);
+            for (String prefix : APPROXIMATE_PREFIXES) {
+                if (lowerCase.startsWith(prefix) && lowerCase.length() > prefix.length()) {
+                    char next = lowerCase.charAt(prefix.length());
+                    if (next == ' ' || isDigit(next)) {
+                        return result.substring(prefix.length()).trim();
+                    }
+                }
             }
         }
+        return result;
+    }
+
+    /**
+     * Parses a single date, optionally followed by a time or by the end of a date range
+     */
+    private static LocalDate parseDate(String value) {
+        DateScanner scanner = new DateScanner(value);
+        LocalDate result = scanner.nextDate();
+        if (result == null || scanner.atEnd()) {
+            return result;
+        }
+        if (scanner.skipTime() || scanner.skipRangeEnd()) {
+            return result;
+        }
         return null;
     }
 
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '-' || c == '/' || c == '.';
+    }
+
+    /**
+     * Reads dates from a string, keeping track of the current position
+     */
+    private static final class DateScanner {
+
+        private final String value;
+        private int pos;
+
+        private DateScanner(String value) {
+            this.value = value;
+        }
+
+        private boolean atEnd() {
+            return pos >= value.length();
+        }
+
+        private char current() {
+            return value.charAt(pos);
+        }
+
+        /**
+         * Reads a date at the current position
+         * @return date, or null if there is no (existing) date at the current position
+         */
+        private LocalDate nextDate() {
+            int start = pos;
+            int first = nextNumber(4);
+            int digits = pos - start;
+            if (digits == 4) {
+                return nextDateYearFirst(first);
+            }
+            if (digits >= 1 && digits <= 2) {
+                return nextDateYearLast(first);
+            }
+            return null;
+        }
+
+        /**
+         * Reads the optional month and day after a year. If what follows the year isn't a month (for example the end
+         * of a range like 1900-1910) we return only the year
+         */
+        private LocalDate nextDateYearFirst(int year) {
+            int yearEnd = pos;
+            int month = 1;
+            int day = 1;
+            if (!atEnd() && isSeparator(current())) {
+                char separator = current();
+                pos++;
+                int monthStart = pos;
+                int value = nextNumber(2);
+                if (pos - monthStart >= 1 && (atEnd() || !isDigit(current()))) {
+                    month = value;
+                    if (!atEnd() && current() == separator) {
+                        pos++;
+                        int dayStart = pos;
+                        day = nextNumber(2);
+                        if (pos - dayStart == 0 || (!atEnd() && isDigit(current()))) {
+                            return null;
+                        }
+                    }
+                } else {
+                    pos = yearEnd;
+                }
+            }
+            return toDate(year, month, day);
+        }
+
+        /**
+         * Reads the month and year after a day (dd-MM-yyyy, dd/MM/yyyy or dd.MM.yyyy)
+         */
+        private LocalDate nextDateYearLast(int day) {
+            if (atEnd() || !isSeparator(current())) {
+                return null;
+            }
+            char separator = current();
+            pos++;
+            int monthStart = pos;
+            int month = nextNumber(2);
+            if (pos - monthStart == 0 || atEnd() || current() != separator) {
+                return null;
+            }
+            pos++;
+            int yearStart = pos;
+            int year = nextNumber(4);
+            if (pos - yearStart != 4 || (!atEnd() && isDigit(current()))) {
+                return null;
+            }
+            return toDate(year, month, day);
+        }
+
+        /**
+         * Reads a number of at most maxDigits digits
+         * @return the number, or 0 if there are no digits at the current position
+         */
+        private int nextNumber(int maxDigits) {
+            int result = 0;
+            int end = Math.min(value.length(), pos + maxDigits);
+            while (pos < end && isDigit(current())) {
+                result = result * 10 + (current() - '0');
+                pos++;
+            }
+            return result;
+        }
+
+        /**
+         * Skips the time part of an ISO date time (e.g. T10:15:30.000+01:00)
+         * @return true if the rest of the value is a time
+         */
+        private boolean skipTime() {
+            if (current() != 'T' || pos + 1 >= value.length()) {
+                return false;
+            }
+            for (int i = pos + 1; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (!isDigit(c) && c != ':' && c != '.' && c != '+' && c != '-' && c != 'Z') {
+                    return false;
+                }
+            }
+            pos = value.length();
+            return true;
+        }
+
+        /**
+         * Skips the end of a date range (e.g. ' - 1937-12-22' or '/1910')
+         * @return true if the rest of the value is the end of a date range
+         */
+        private boolean skipRangeEnd() {
+            skipSpaces();
+            if (atEnd() || (current() != '-' && current() != '/' && current() != '\u2013')) {
+                return false;
+            }
+            pos++;
+            skipSpaces();
+            return nextDate() != null && atEnd();
+        }
+
+        private void skipSpaces() {
+            while (!atEnd() && current() == ' ') {
+                pos++;
+            }
+        }
+
+        /**
+         * @return date, or null if the date doesn't exist (e.g. 1922-02-30)
+         */
+        private static LocalDate toDate(int year, int month, int day) {
+            if (month < 1 || month > 12 || day < 1 || day > 31) {
+                return null;
+            }
+            LocalDate firstOfMonth = LocalDate.of(year, month, 1);
+            if (day > firstOfMonth.lengthOfMonth()) {
+                return null;
+            }
+            return firstOfMonth.withDayOfMonth(day);
+        }
+    }
+
 }
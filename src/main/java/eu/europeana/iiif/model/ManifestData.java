@@ -0,0 +1,195 @@
+package eu.europeana.iiif.model;
+
+import eu.europeana.iiif.model.edm.LanguageValues;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+
+/**
+ * Format-neutral manifest data, extracted once from a record. The ManifestV2 and ManifestV3 objects are rendered from
+ * this, so a record only has to be processed once regardless of which IIIF version is requested.
+ * Note that objects of this class are cached and shared between requests, so they shouldn't be modified after creation.
+ */
+public class ManifestData implements Serializable {
+
+    private static final long serialVersionUID = 2418405876542839731L;
+
+    private String europeanaId;
+    private String[] within;
+    private LanguageValues label;
+    private LanguageValues description;
+    private LinkedHashMap<String, LanguageValues> metaData;
+    private String thumbnailId;
+    private String navDate;
+    private String attribution;
+    private String license;
+    private String isShownBy;
+    private CanvasData[] canvases;
+
+    public ManifestData(String europeanaId) {
+        this.europeanaId = europeanaId;
+    }
+
+    /**
+     * @return Europeana ID of the record (dataset ID and record ID separated by a slash)
+     */
+    public String getEuropeanaId() {
+        return europeanaId;
+    }
+
+    /**
+     * @return array of ids of collections the record is part of (empty if there are none)
+     */
+    public String[] getWithin() {
+        return within;
+    }
+
+    public void setWithin(String[] within) {
+        this.within = within;
+    }
+
+    /**
+     * @return label values, or null if there is no label
+     */
+    public LanguageValues getLabel() {
+        return label;
+    }
+
+    public void setLabel(LanguageValues label) {
+        this.label = label;
+    }
+
+    /**
+     * @return description values, or null if there is no description
+     */
+    public LanguageValues getDescription() {
+        return description;
+    }
+
+    public void setDescription(LanguageValues description) {
+        this.description = description;
+    }
+
+    /**
+     * @return map with metadata labels (keys) and their values, or null if there is no metadata
+     */
+    public LinkedHashMap<String, LanguageValues> getMetaData() {
+        return metaData;
+    }
+
+    public void setMetaData(LinkedHashMap<String, LanguageValues> metaData) {
+        this.metaData = metaData;
+    }
+
+    public String getThumbnailId() {
+        return thumbnailId;
+    }
+
+    public void setThumbnailId(String thumbnailId) {
+        this.thumbnailId = thumbnailId;
+    }
+
+    /**
+     * @return date string in xsd:datetime format, or null if there is no navDate
+     */
+    public String getNavDate() {
+        return navDate;
+    }
+
+    public void setNavDate(String navDate) {
+        this.navDate = navDate;
+    }
+
+    public String getAttribution() {
+        return attribution;
+    }
+
+    public void setAttribution(String attribution) {
+        this.attribution = attribution;
+    }
+
+    public String getLicense() {
+        return license;
+    }
+
+    public void setLicense(String license) {
+        this.license = license;
+    }
+
+    public String getIsShownBy() {
+        return isShownBy;
+    }
+
+    public void setIsShownBy(String isShownBy) {
+        this.isShownBy = isShownBy;
+    }
+
+    /**
+     * @return canvases in the order in which they should be rendered (empty if there are none)
+     */
+    public CanvasData[] getCanvases() {
+        return canvases;
+    }
+
+    public void setCanvases(CanvasData[] canvases) {
+        this.canvases = canvases;
+    }
+
+    /**
+     * Format-neutral canvas data, extracted from a single webresource
+     */
+    public static class CanvasData implements Serializable {
+
+        private static final long serialVersionUID = -5271834926047718305L;
+
+        private final String webResourceId;
+        private final String attribution;
+        private final String license;
+        private final String mimeType;
+        private final String serviceId;
+        private final String serviceProfile;
+
+        /**
+         * Create new canvas data
+         * @param webResourceId id of the webresource that is shown on the canvas
+         * @param attribution attribution text (can be null)
+         * @param license license url (can be null)
+         * @param mimeType mime type of the webresource (can be null)
+         * @param serviceId id of the IIIF image service of the webresource (can be null)
+         * @param serviceProfile profile of the IIIF image service (can be null)
+         */
+        public CanvasData(String webResourceId, String attribution, String license, String mimeType,
+                          String serviceId, String serviceProfile) {
+            this.webResourceId = webResourceId;
+            this.attribution = attribution;
+            this.license = license;
+            this.mimeType = mimeType;
+            this.serviceId = serviceId;
+            this.serviceProfile = serviceProfile;
+        }
+
+        public String getWebResourceId() {
+            return webResourceId;
+        }
+
+        public String getAttribution() {
+            return attribution;
+        }
+
+        public String getLicense() {
+            return license;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public String getServiceProfile() {
+            return serviceProfile;
+        }
+    }
+}
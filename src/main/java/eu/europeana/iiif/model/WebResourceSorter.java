@@ -1,17 +1,16 @@
 package eu.europeana.iiif.model;
 
+import eu.europeana.iiif.model.edm.EdmWebResource;
 import eu.europeana.iiif.service.exception.DataInconsistentException;
-import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Sorts the webresources based on how they are linked to each other according to their nextInSequence values.
@@ -19,11 +18,16 @@ import java.util.Set;
  * exist in the provided array of webresources
  *
  * Basically the algorithm is as follows:
- * 1. we iterate over all nodes and check each node if it's the start of a sequence
- * 2. for all the found start nodes, we follow the sequence up to the end node (and remove the webresources part of that
+ * 1. we build a reverse index that links each nextInSequence value to the webresource pointing to it (and check that
+ * all nextInSequence values exist and are pointed to only once)
+ * 2. all nodes that have a nextInSequence but are not in the reverse index are start nodes
+ * 3. for all the found start nodes, we follow the sequence up to the end node (and remove the webresources part of that
  * sequence, so we know which webresources are already processed)
- * 3. the found sequences are added to the final result (in no particular order)
- * 4. any remaining nodes should not be part of a sequence and are added last (also in no particular order)
+ * 4. the found sequences are added to the final result (in no particular order)
+ * 5. any remaining nodes should not be part of a sequence and are added last (in the order they were provided). If a
+ * remaining node does have a nextInSequence value, then it's part of a cycle
+ * All steps are linear in the number of webresources, so large books and newspapers with thousands of pages are no
+ * problem.
  *
  * @author Patrick Ehlert
  * Created on 07-03-2018
@@ -41,45 +45,48 @@ public final class WebResourceSorter {
      * all webresources that are not part of a sequence
      * If there are multiple sequences, the order between sequences doesn't matter. Also the order between webresources
      * not part of a sequence doesn't matter.
-     * @throws DataInconsistentException when
+     * @throws DataInconsistentException when there are duplicate ids, a nextInSequence value refers to a webresource
+     * that doesn't exist, a webresource is the nextInSequence of more than one webresource or there is a cycle
      * @return sorted array of webResources
      */
-    public static List<WebResource> sort(List<WebResource> webResources) throws DataInconsistentException {
+    public static List<EdmWebResource> sort(List<EdmWebResource> webResources) throws DataInconsistentException {
         LOG.trace("WebResources = {}", webResources);
 
         // to simplify/speed up processing we generate a hashmap that links all ids to the appropriate webResource object
-        // and a hashmap with all the id's (keys) and nextInSequence (values)
-        HashMap<String, WebResource> idsWebResources = new HashMap<>();
-        HashMap<String, String> idsNextInSequence = new HashMap<>();
-        for (WebResource wr : webResources) {
+        Map<String, EdmWebResource> idsWebResources = new LinkedHashMap<>(webResources.size() * 4 / 3 + 1);
+        for (EdmWebResource wr : webResources) {
             String wrId = wr.getId();
             if (idsWebResources.put(wrId, wr) != null) {
                 throw new DataInconsistentException("Duplicate webresource id found "+wrId);
             }
-            String nextInSequence = wr.getNextInSequence();
-            idsNextInSequence.put(wrId, nextInSequence);
-            LOG.trace("    {} -> {} ", wrId, nextInSequence);
+            LOG.trace("    {} -> {} ", wrId, wr.getNextInSequence());
         }
 
+        // generate the reverse index (nextInSequence value as key, id of the webresource pointing to it as value)
+        Map<String, String> idsPreviousInSequence = getPreviousInSequence(idsWebResources);
+
         // find all start nodes (order doesn't matter)
-        Set<String> startNodes = getSequenceStartItems(idsNextInSequence);
+        List<String> startNodes = new ArrayList<>();
+        for (EdmWebResource wr : idsWebResources.values()) {
+            if (wr.hasNextInSequence() && !idsPreviousInSequence.containsKey(wr.getId())) {
+                startNodes.add(wr.getId());
+            }
+        }
         LOG.trace("  StartNodes = {}", startNodes);
 
         // for each start node, follow the sequence down to the end node and list webresource in reverse order
-        ArrayList<WebResource> result = new ArrayList<>();
-        Iterator<String> startNodeIds = startNodes.iterator();
-        while (startNodeIds.hasNext()) {
-            String startNodeId = startNodeIds.next();
-            List<WebResource> sequence = getSequence(startNodeId, idsWebResources, idsNextInSequence);
+        ArrayList<EdmWebResource> result = new ArrayList<>(webResources.size());
+        for (String startNodeId : startNodes) {
+            List<EdmWebResource> sequence = getSequence(startNodeId, idsWebResources);
             LOG.trace("  Sequence = {}", sequence);
             result.addAll(sequence);
         }
 
         // add any remaining nodes (these should be isolated webresources, not part of any sequence)
-        for (Map.Entry<String, WebResource> idWebResource : idsWebResources.entrySet()) {
-            WebResource isolated = idWebResource.getValue();
+        for (EdmWebResource isolated : idsWebResources.values()) {
             if (isolated.hasNextInSequence()) {
-                throw new DataInconsistentException("Expected webresource "+isolated.getId()+" to not have a nextInSequence value");
+                throw new DataInconsistentException("Expected webresource "+isolated.getId()+" to not have a " +
+                        "nextInSequence value. Most likely it's part of a cycle");
             }
             result.add(isolated);
         }
@@ -91,59 +98,48 @@ public final class WebResourceSorter {
     }
 
     /**
-     * Iterate over the webResources and find all items that are the start points of a sequence.
+     * Generate a reverse index for all webresources that have a nextInSequence value. We check if all nextInSequence
+     * values refer to existing webresources and that no webresource is the nextInSequence of more than 1 webresource.
      */
-    private static Set<String> getSequenceStartItems(Map<String, String> idsSequences) throws DataInconsistentException {
-        Set<String> result = new HashSet<>();
-
-        Iterator<String> ids = idsSequences.keySet().iterator();
-        while (ids.hasNext()) {
-            String id = ids.next();
-            if (isStartOfSequence(id, idsSequences)) {
-                result.add(id);
+    private static Map<String, String> getPreviousInSequence(Map<String, EdmWebResource> idsWebResources)
+            throws DataInconsistentException {
+        Map<String, String> result = new HashMap<>(idsWebResources.size() * 4 / 3 + 1);
+        for (EdmWebResource wr : idsWebResources.values()) {
+            if (!wr.hasNextInSequence()) {
+                continue;
             }
-        }
-        return result;
-    }
-
-
-    /**
-     *  Check if the provided webResource is the start point of a sequence (i.e. it has a 'nextInSequence' and there
-     *  is no other webResource that points to it)
-     */
-    private static boolean isStartOfSequence(String webResourceId, Map<String, String> idsSequences) throws DataInconsistentException {
-        // check if it has a nextInSequence
-        String nextInSequenceId = idsSequences.get(webResourceId);
-        if (StringUtils.isNotEmpty(nextInSequenceId)) {
-            // verify the nextInSequence webresource is available
-            if (!idsSequences.keySet().contains(nextInSequenceId)) {
-                throw new DataInconsistentException("Inconsistent data: webresource " +webResourceId+ " hasNextInSequence "
+            String nextInSequenceId = wr.getNextInSequence();
+            if (!idsWebResources.containsKey(nextInSequenceId)) {
+                throw new DataInconsistentException("Inconsistent data: webresource " +wr.getId()+ " hasNextInSequence "
                         +nextInSequenceId+ " but that webresource cannot be found!");
             }
-            // check if no other webResources point to this webResource
-            return !idsSequences.values().contains(webResourceId);
+            String otherId = result.put(nextInSequenceId, wr.getId());
+            if (otherId != null) {
+                throw new DataInconsistentException("Inconsistent data: webresource " +nextInSequenceId+ " is " +
+                        "nextInSequence of both webresource " +otherId+ " and " +wr.getId());
+            }
         }
-        return false;
+        return result;
     }
 
     /**
      * Returns the entire sequence that starts in the provided startNode, in reverse order.
-     * Note that we remove all the webresources we found from the provided maps so we 1) know which ones we already
+     * Note that we remove all the webresources we found from the provided map so we 1) know which ones we already
      * processed later and 2) can check data consistency
      */
-    private static ArrayList<WebResource> getSequence(String startNodeId, Map<String, WebResource> idsWebResources, Map<String, String> idsNextInSequence) throws DataInconsistentException {
-        ArrayList<WebResource> result = new ArrayList<>();
+    private static List<EdmWebResource> getSequence(String startNodeId, Map<String, EdmWebResource> idsWebResources)
+            throws DataInconsistentException {
+        ArrayDeque<EdmWebResource> result = new ArrayDeque<>();
         String nodeId = startNodeId;
         do {
-            WebResource wr = idsWebResources.remove(nodeId);
+            EdmWebResource wr = idsWebResources.remove(nodeId);
             if (wr == null) {
-                throw new DataInconsistentException("Unable to find webresource " + startNodeId + ". Most likely it's part of another sequence");
-            } else {
-                result.add(0, wr);
+                throw new DataInconsistentException("Unable to find webresource " + nodeId + ". Most likely it's part of another sequence");
             }
-            nodeId = idsNextInSequence.remove(nodeId);
-        } while(nodeId != null);
-        return result;
+            result.addFirst(wr);
+            nodeId = (wr.hasNextInSequence() ? wr.getNextInSequence() : null);
+        } while (nodeId != null);
+        return new ArrayList<>(result);
     }
 
 }
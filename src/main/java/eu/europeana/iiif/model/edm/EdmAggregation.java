@@ -0,0 +1,52 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * EDM (provider) aggregation, only the fields that are needed to generate a manifest
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmAggregation {
+
+    private static final EdmWebResource[] NO_WEB_RESOURCES = new EdmWebResource[0];
+
+    private final String edmIsShownBy;
+    private final String[] hasView;
+    private final LanguageValues edmRights;
+    private final EdmWebResource[] webResources;
+
+    @JsonCreator
+    public EdmAggregation(@JsonProperty("edmIsShownBy") String edmIsShownBy,
+                          @JsonProperty("hasView") String[] hasView,
+                          @JsonProperty("edmRights") LanguageValues edmRights,
+                          @JsonProperty("webResources") EdmWebResource[] webResources) {
+        this.edmIsShownBy = edmIsShownBy;
+        this.hasView = hasView;
+        this.edmRights = edmRights;
+        this.webResources = (webResources == null ? NO_WEB_RESOURCES : webResources);
+    }
+
+    public String getEdmIsShownBy() {
+        return edmIsShownBy;
+    }
+
+    /**
+     * @return array of hasView values, or null if there are none
+     */
+    public String[] getHasView() {
+        return hasView;
+    }
+
+    public LanguageValues getEdmRights() {
+        return edmRights;
+    }
+
+    /**
+     * @return array of webresources (empty if there are none)
+     */
+    public EdmWebResource[] getWebResources() {
+        return webResources;
+    }
+}
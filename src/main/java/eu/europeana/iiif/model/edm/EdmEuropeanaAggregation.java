@@ -0,0 +1,30 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * EDM europeanaAggregation, only the fields that are needed to generate a manifest
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmEuropeanaAggregation {
+
+    private final String edmPreview;
+    private final LanguageValues edmRights;
+
+    @JsonCreator
+    public EdmEuropeanaAggregation(@JsonProperty("edmPreview") String edmPreview,
+                                   @JsonProperty("edmRights") LanguageValues edmRights) {
+        this.edmPreview = edmPreview;
+        this.edmRights = edmRights;
+    }
+
+    public String getEdmPreview() {
+        return edmPreview;
+    }
+
+    public LanguageValues getEdmRights() {
+        return edmRights;
+    }
+}
@@ -0,0 +1,87 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * EDM proxy, only the fields that are needed to generate a manifest
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmProxy {
+
+    private final LanguageValues dcTitle;
+    private final LanguageValues dcDescription;
+    private final LanguageValues dcDate;
+    private final LanguageValues dcFormat;
+    private final LanguageValues dcRelation;
+    private final LanguageValues dcType;
+    private final LanguageValues dcLanguage;
+    private final LanguageValues dcSource;
+    private final LanguageValues dctermsIssued;
+    private final LanguageValues dctermsIsPartOf;
+
+    @JsonCreator
+    @SuppressWarnings("squid:S00107") // constructor mirrors the json fields
+    public EdmProxy(@JsonProperty("dcTitle") LanguageValues dcTitle,
+                    @JsonProperty("dcDescription") LanguageValues dcDescription,
+                    @JsonProperty("dcDate") LanguageValues dcDate,
+                    @JsonProperty("dcFormat") LanguageValues dcFormat,
+                    @JsonProperty("dcRelation") LanguageValues dcRelation,
+                    @JsonProperty("dcType") LanguageValues dcType,
+                    @JsonProperty("dcLanguage") LanguageValues dcLanguage,
+                    @JsonProperty("dcSource") LanguageValues dcSource,
+                    @JsonProperty("dctermsIssued") LanguageValues dctermsIssued,
+                    @JsonProperty("dctermsIsPartOf") LanguageValues dctermsIsPartOf) {
+        this.dcTitle = dcTitle;
+        this.dcDescription = dcDescription;
+        this.dcDate = dcDate;
+        this.dcFormat = dcFormat;
+        this.dcRelation = dcRelation;
+        this.dcType = dcType;
+        this.dcLanguage = dcLanguage;
+        this.dcSource = dcSource;
+        this.dctermsIssued = dctermsIssued;
+        this.dctermsIsPartOf = dctermsIsPartOf;
+    }
+
+    public LanguageValues getDcTitle() {
+        return dcTitle;
+    }
+
+    public LanguageValues getDcDescription() {
+        return dcDescription;
+    }
+
+    public LanguageValues getDcDate() {
+        return dcDate;
+    }
+
+    public LanguageValues getDcFormat() {
+        return dcFormat;
+    }
+
+    public LanguageValues getDcRelation() {
+        return dcRelation;
+    }
+
+    public LanguageValues getDcType() {
+        return dcType;
+    }
+
+    public LanguageValues getDcLanguage() {
+        return dcLanguage;
+    }
+
+    public LanguageValues getDcSource() {
+        return dcSource;
+    }
+
+    public LanguageValues getDctermsIssued() {
+        return dctermsIssued;
+    }
+
+    public LanguageValues getDctermsIsPartOf() {
+        return dctermsIsPartOf;
+    }
+}
@@ -0,0 +1,104 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * EDM record data as returned by the Record API (the 'object' part of the response). We only keep the fields that
+ * are needed to generate a manifest, all other fields are skipped when reading the record json.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmRecord {
+
+    private static final EdmProxy[] NO_PROXIES = new EdmProxy[0];
+    private static final EdmAggregation[] NO_AGGREGATIONS = new EdmAggregation[0];
+    private static final EdmService[] NO_SERVICES = new EdmService[0];
+
+    private final String about;
+    private final String timestampUpdate;
+    private final EdmProxy[] proxies;
+    private final EdmAggregation[] aggregations;
+    private final EdmEuropeanaAggregation europeanaAggregation;
+    private final EdmService[] services;
+    // not part of the record json, the Record API from which the record was retrieved
+    private final String recordApi;
+
+    @JsonCreator
+    public EdmRecord(@JsonProperty("about") String about,
+                     @JsonProperty("timestamp_update") String timestampUpdate,
+                     @JsonProperty("proxies") EdmProxy[] proxies,
+                     @JsonProperty("aggregations") EdmAggregation[] aggregations,
+                     @JsonProperty("europeanaAggregation") EdmEuropeanaAggregation europeanaAggregation,
+                     @JsonProperty("services") EdmService[] services) {
+        this(about, timestampUpdate, proxies, aggregations, europeanaAggregation, services, null);
+    }
+
+    private EdmRecord(String about, String timestampUpdate, EdmProxy[] proxies, EdmAggregation[] aggregations,
+                      EdmEuropeanaAggregation europeanaAggregation, EdmService[] services, String recordApi) {
+        this.about = about;
+        this.timestampUpdate = timestampUpdate;
+        this.proxies = (proxies == null ? NO_PROXIES : proxies);
+        this.aggregations = (aggregations == null ? NO_AGGREGATIONS : aggregations);
+        this.europeanaAggregation = europeanaAggregation;
+        this.services = (services == null ? NO_SERVICES : services);
+        this.recordApi = recordApi;
+    }
+
+    /**
+     * @param recordApi base url of the Record API from which the record was retrieved
+     * @return copy of this record (sharing the same data) that knows from which Record API it was retrieved
+     */
+    public EdmRecord withRecordApi(String recordApi) {
+        return new EdmRecord(about, timestampUpdate, proxies, aggregations, europeanaAggregation, services, recordApi);
+    }
+
+    /**
+     * @return Europeana ID of the record (dataset ID and record ID separated by a slash)
+     */
+    public String getAbout() {
+        return about;
+    }
+
+    /**
+     * @return the record's 'timestamp_update' value
+     */
+    public String getTimestampUpdate() {
+        return timestampUpdate;
+    }
+
+    /**
+     * @return array of proxies (empty if there are none)
+     */
+    public EdmProxy[] getProxies() {
+        return proxies;
+    }
+
+    /**
+     * @return array of (provider) aggregations (empty if there are none)
+     */
+    public EdmAggregation[] getAggregations() {
+        return aggregations;
+    }
+
+    /**
+     * @return the europeanaAggregation, or null if there is none
+     */
+    public EdmEuropeanaAggregation getEuropeanaAggregation() {
+        return europeanaAggregation;
+    }
+
+    /**
+     * @return array of services (empty if there are none)
+     */
+    public EdmService[] getServices() {
+        return services;
+    }
+
+    /**
+     * @return base url of the Record API from which the record was retrieved, or null if unknown
+     */
+    public String getRecordApi() {
+        return recordApi;
+    }
+}
@@ -0,0 +1,36 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * EDM service, only the fields that are needed to generate a manifest
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmService {
+
+    private final String about;
+    private final String[] doapImplements;
+
+    /**
+     * Note: there is a problem with cardinality of the doapImplements field. It should be a String, but at the moment
+     * it is defined in EDM as a String[], so we accept both.
+     */
+    @JsonCreator
+    public EdmService(@JsonProperty("about") String about,
+                      @JsonProperty("doapImplements")
+                      @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY) String[] doapImplements) {
+        this.about = about;
+        this.doapImplements = doapImplements;
+    }
+
+    public String getAbout() {
+        return about;
+    }
+
+    public String[] getDoapImplements() {
+        return doapImplements;
+    }
+}
@@ -0,0 +1,87 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.util.StringUtils;
+
+/**
+ * EDM webresource, only the fields that are needed to generate a manifest
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class EdmWebResource {
+
+    private final String about;
+    private final String isNextInSequence;
+    private final String textAttributionSnippet;
+    private final LanguageValues webResourceEdmRights;
+    private final String ebuCoreHasMimeType;
+    private final String[] svcsHasService;
+
+    @JsonCreator
+    @SuppressWarnings("squid:S00107") // constructor mirrors the json fields
+    public EdmWebResource(@JsonProperty("about") String about,
+                          @JsonProperty("isNextInSequence") String isNextInSequence,
+                          @JsonProperty("textAttributionSnippet") String textAttributionSnippet,
+                          @JsonProperty("webResourceEdmRights") LanguageValues webResourceEdmRights,
+                          @JsonProperty("ebuCoreHasMimeType") String ebuCoreHasMimeType,
+                          @JsonProperty("svcsHasService") String[] svcsHasService) {
+        this.about = about;
+        this.isNextInSequence = isNextInSequence;
+        this.textAttributionSnippet = textAttributionSnippet;
+        this.webResourceEdmRights = webResourceEdmRights;
+        this.ebuCoreHasMimeType = ebuCoreHasMimeType;
+        this.svcsHasService = svcsHasService;
+    }
+
+    /**
+     * Create new webresource (for testing)
+     * @param id
+     * @param isNextInSequence
+     */
+    public EdmWebResource(String id, String isNextInSequence) {
+        this(id, isNextInSequence, null, null, null, null);
+    }
+
+    /**
+     * @return the id of the webresource (in edm 'about' value)
+     */
+    public String getId() {
+        return about;
+    }
+
+    /**
+     * @return true if the webresource has a isNextInSequence value that is not empty
+     */
+    public boolean hasNextInSequence() {
+        return !StringUtils.isEmpty(isNextInSequence);
+    }
+
+    /**
+     * @return the isNextInSequence value, or null if there is none
+     */
+    public String getNextInSequence() {
+        return isNextInSequence;
+    }
+
+    public String getTextAttributionSnippet() {
+        return textAttributionSnippet;
+    }
+
+    public LanguageValues getWebResourceEdmRights() {
+        return webResourceEdmRights;
+    }
+
+    public String getEbuCoreHasMimeType() {
+        return ebuCoreHasMimeType;
+    }
+
+    public String[] getSvcsHasService() {
+        return svcsHasService;
+    }
+
+    @Override
+    public String toString() {
+        return about + " -> " + isNextInSequence;
+    }
+}
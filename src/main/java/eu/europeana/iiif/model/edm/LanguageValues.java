@@ -0,0 +1,92 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * EDM language values, e.g. {"en":["title1", "title2"], "def":["title3"]}. Instead of a map we store the languages
+ * and values in arrays (in the original order), because we only iterate over them and a record has many of these.
+ */
+@JsonDeserialize(using = LanguageValuesDeserializer.class)
+public final class LanguageValues implements Serializable {
+
+    private static final long serialVersionUID = -3094716583521978424L;
+
+    private final String[] languages;
+    private final String[][] values;
+
+    /**
+     * Create new language values
+     * @param languages array of languages
+     * @param values for each language an array of values
+     */
+    public LanguageValues(String[] languages, String[][] values) {
+        if (languages.length != values.length) {
+            throw new IllegalArgumentException("Number of languages and values differ");
+        }
+        this.languages = languages;
+        this.values = values;
+    }
+
+    /**
+     * @return number of languages
+     */
+    public int size() {
+        return languages.length;
+    }
+
+    /**
+     * @return true if there are no languages
+     */
+    public boolean isEmpty() {
+        return languages.length == 0;
+    }
+
+    /**
+     * @param index language index
+     * @return language with the provided index
+     */
+    public String getLanguage(int index) {
+        return languages[index];
+    }
+
+    /**
+     * @param index language index
+     * @return values of the language with the provided index
+     */
+    public String[] getValues(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param language language to look for
+     * @return values for the provided language, or null if there are no values for that language
+     */
+    public String[] getValues(String language) {
+        for (int i = 0; i < languages.length; i++) {
+            if (languages[i].equals(language)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return textual representation of the languages and values (for debugging purposes)
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append('(');
+        for (int i = 0; i < languages.length; i++) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append('{').append(languages[i]).append('=').append(Arrays.toString(values[i])).append('}');
+        }
+        s.append(')');
+        return s.toString();
+    }
+}
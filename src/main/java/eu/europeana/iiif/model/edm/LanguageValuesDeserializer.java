@@ -0,0 +1,61 @@
+package eu.europeana.iiif.model.edm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads EDM language values directly into arrays, so we don't create a map (and list) for each language field.
+ * A single value instead of an array of values is accepted as well.
+ */
+public class LanguageValuesDeserializer extends StdDeserializer<LanguageValues> {
+
+    private static final long serialVersionUID = 5014638473911564529L;
+
+    private static final String[] EMPTY = new String[0];
+
+    public LanguageValuesDeserializer() {
+        super(LanguageValues.class);
+    }
+
+    @Override
+    public LanguageValues deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartObjectToken()) {
+            return (LanguageValues) context.handleUnexpectedToken(LanguageValues.class, parser);
+        }
+        // most fields have only 1 language
+        List<String> languages = new ArrayList<>(2);
+        List<String[]> values = new ArrayList<>(2);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            languages.add(parser.getCurrentName());
+            values.add(readValues(parser, parser.nextToken()));
+        }
+        return new LanguageValues(languages.toArray(EMPTY), values.toArray(new String[values.size()][]));
+    }
+
+    private static String[] readValues(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_ARRAY) {
+            List<String> result = new ArrayList<>();
+            JsonToken valueToken = parser.nextToken();
+            while (valueToken != JsonToken.END_ARRAY) {
+                if (valueToken.isScalarValue() && valueToken != JsonToken.VALUE_NULL) {
+                    result.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+                valueToken = parser.nextToken();
+            }
+            return result.toArray(EMPTY);
+        }
+        if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+            return new String[]{ parser.getText() };
+        }
+        parser.skipChildren();
+        return EMPTY;
+    }
+}
@@ -0,0 +1,121 @@
+package eu.europeana.iiif.model.v2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import ioinformarics.oss.jackson.module.jsonld.annotation.JsonldType;
+
+import java.io.Serializable;
+
+/**
+ * A page of canvases of a sequence. For records with many canvases the manifest only contains the first page of
+ * canvases, the other pages are served separately (see also http://iiif.io/api/presentation/2.1/#paging)
+ */
+@JsonPropertyOrder({"id", "context"})
+@JsonldType("sc:Sequence")
+public class CanvasPage extends JsonLdId implements Serializable {
+
+    private static final long serialVersionUID = 3316270486458124557L;
+
+    @JsonIgnore
+    private String europeanaId; // for internal use only
+    @JsonIgnore
+    // we keep track of the isShownBy for internal reasons (it's used to check if fulltexts exists)
+    private String isShownBy;
+
+    @JsonProperty("@context")
+    private String context = "http://iiif.io/api/presentation/2/context.json";
+    private String within;
+    private int startIndex;
+    private int total;
+    private String prev;
+    private String next;
+    private Canvas[] canvases;
+
+    /**
+     * Create a new canvas page
+     * @param europeanaId consisting of dataset ID and record ID separated by a slash
+     * @param id id of the canvas page
+     * @param isShownBy edmIsShownBy value of the record
+     */
+    public CanvasPage(String europeanaId, String id, String isShownBy) {
+        super(id);
+        this.europeanaId = europeanaId;
+        this.isShownBy = isShownBy;
+    }
+
+    public String getEuropeanaId() {
+        return europeanaId;
+    }
+
+    public String getIsShownBy() {
+        return isShownBy;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    /**
+     * @return id of the sequence this page is part of
+     */
+    public String getWithin() {
+        return within;
+    }
+
+    public void setWithin(String within) {
+        this.within = within;
+    }
+
+    /**
+     * @return index of the first canvas on this page in the entire sequence (0-based)
+     */
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public void setStartIndex(int startIndex) {
+        this.startIndex = startIndex;
+    }
+
+    /**
+     * @return total number of canvases in the sequence
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * @return id of the previous canvas page, or null if this is the first page
+     */
+    public String getPrev() {
+        return prev;
+    }
+
+    public void setPrev(String prev) {
+        this.prev = prev;
+    }
+
+    /**
+     * @return id of the next canvas page, or null if this is the last page
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public Canvas[] getCanvases() {
+        return canvases;
+    }
+
+    public void setCanvases(Canvas[] canvases) {
+        this.canvases = canvases;
+    }
+}
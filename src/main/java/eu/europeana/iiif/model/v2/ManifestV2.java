@@ -23,6 +23,8 @@ public class ManifestV2 extends JsonLdId implements Serializable {
 
     @JsonIgnore
     private String europeanaId; // for internal use only
+    @JsonIgnore
+    private boolean fullTextUnknown; // for internal use only
 
     @JsonProperty("@context")
     private String context = "http://iiif.io/api/presentation/2/context.json";
@@ -52,6 +54,17 @@ public class ManifestV2 extends JsonLdId implements Serializable {
         return europeanaId;
     }
 
+    /**
+     * @return true if we couldn't check if a full text is available, so full text links may be missing
+     */
+    public boolean isFullTextUnknown() {
+        return fullTextUnknown;
+    }
+
+    public void setFullTextUnknown(boolean fullTextUnknown) {
+        this.fullTextUnknown = fullTextUnknown;
+    }
+
     public String getContext() {
         return context;
     }
@@ -21,6 +21,9 @@ public class Sequence extends JsonLdId implements Serializable {
     private String label = "Current Page Order";
     private String startCanvas;
     private Canvas[] canvases;
+    // only set if the canvases are split into pages
+    private Integer total;
+    private String next;
 
     public Sequence(String id, String isShownBy) {
         super(id);
@@ -50,4 +53,26 @@ public class Sequence extends JsonLdId implements Serializable {
     public void setCanvases(Canvas[] canvases) {
         this.canvases = canvases;
     }
+
+    /**
+     * @return total number of canvases in this sequence, or null if the canvases are not split into pages
+     */
+    public Integer getTotal() {
+        return total;
+    }
+
+    public void setTotal(Integer total) {
+        this.total = total;
+    }
+
+    /**
+     * @return id of the next canvas page, or null if the canvases are not split into pages
+     */
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
 }
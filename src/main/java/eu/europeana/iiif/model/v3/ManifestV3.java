@@ -17,6 +17,8 @@ public class ManifestV3 extends JsonLdIdType implements Serializable {
 
     @JsonIgnore
     private String europeanaId; // for internal use only
+    @JsonIgnore
+    private boolean fullTextUnknown; // for internal use only
 
     @JsonProperty("@context")
     private String[] context = {"http://www.w3.org/ns/anno.jsonld", "http://iiif.io/api/presentation/3/context.json"};
@@ -50,6 +52,17 @@ public class ManifestV3 extends JsonLdIdType implements Serializable {
         return europeanaId;
     }
 
+    /**
+     * @return true if we couldn't check if a full text is available, so full text links may be missing
+     */
+    public boolean isFullTextUnknown() {
+        return fullTextUnknown;
+    }
+
+    public void setFullTextUnknown(boolean fullTextUnknown) {
+        this.fullTextUnknown = fullTextUnknown;
+    }
+
     public String[] getContext() {
         return context;
     }
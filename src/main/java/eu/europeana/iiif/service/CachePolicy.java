@@ -0,0 +1,106 @@
+package eu.europeana.iiif.service;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the Cache-Control header of manifest and canvas page responses. There is a default policy, built from
+ * the configured max-age, s-maxage, stale-while-revalidate and stale-if-error values, and optionally a different
+ * policy per dataset (e.g. for datasets that are updated often).
+ */
+public class CachePolicy {
+
+    private static final String NO_CACHE = "no-cache";
+    private static final Pattern DATASET_ID = Pattern.compile("^[a-zA-Z0-9_]+$");
+
+    private final String defaultCacheControl;
+    private final Map<String, String> datasetCacheControl;
+
+    /**
+     * Create a new cache policy
+     * @param maxAge number of seconds browsers may cache a response, if negative we send 'no-cache'
+     * @param sMaxAge number of seconds shared caches (e.g. a CDN) may cache a response, ignored if negative
+     * @param staleWhileRevalidate number of seconds a stale response may be used while it's revalidated, ignored if
+     *                             negative
+     * @param staleIfError number of seconds a stale response may be used when revalidating fails, ignored if negative
+     * @param datasetPolicies optional, list of dataset ids and their Cache-Control value, separated by semicolons
+     *                        (e.g. "9200579=public, max-age=3600; 2021672=no-cache"). Empty entries are ignored.
+     * @throws IllegalStateException when a dataset policy has an illegal dataset id or an empty Cache-Control value
+     */
+    public CachePolicy(long maxAge, long sMaxAge, long staleWhileRevalidate, long staleIfError, String datasetPolicies) {
+        this.defaultCacheControl = createCacheControl(maxAge, sMaxAge, staleWhileRevalidate, staleIfError);
+        this.datasetCacheControl = parseDatasetPolicies(datasetPolicies);
+    }
+
+    private static String createCacheControl(long maxAge, long sMaxAge, long staleWhileRevalidate, long staleIfError) {
+        if (maxAge < 0) {
+            return NO_CACHE;
+        }
+        StringBuilder result = new StringBuilder("public, max-age=").append(maxAge);
+        if (sMaxAge >= 0) {
+            result.append(", s-maxage=").append(sMaxAge);
+        }
+        if (staleWhileRevalidate >= 0) {
+            result.append(", stale-while-revalidate=").append(staleWhileRevalidate);
+        }
+        if (staleIfError >= 0) {
+            result.append(", stale-if-error=").append(staleIfError);
+        }
+        return result.toString();
+    }
+
+    private static Map<String, String> parseDatasetPolicies(String datasetPolicies) {
+        if (StringUtils.isBlank(datasetPolicies)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new HashMap<>();
+        for (String policy : datasetPolicies.split(";")) {
+            if (StringUtils.isBlank(policy)) {
+                continue;
+            }
+            int separator = policy.indexOf('=');
+            String datasetId = (separator < 0 ? "" : policy.substring(0, separator).trim());
+            if (!DATASET_ID.matcher(datasetId).matches()) {
+                throw new IllegalStateException("Illegal dataset cache policy '" + policy.trim() + "'");
+            }
+            String cacheControl = policy.substring(separator + 1).trim();
+            if (cacheControl.isEmpty()) {
+                throw new IllegalStateException("Empty Cache-Control value in dataset cache policy '"
+                        + policy.trim() + "'");
+            }
+            result.put(datasetId, cacheControl);
+        }
+        return result;
+    }
+
+    /**
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @return Cache-Control value for responses about the provided record
+     */
+    public String getCacheControl(String recordId) {
+        if (datasetCacheControl.isEmpty()) {
+            return defaultCacheControl;
+        }
+        return datasetCacheControl.getOrDefault(getDatasetId(recordId), defaultCacheControl);
+    }
+
+    /**
+     * @return Cache-Control value for datasets that don't have their own policy
+     */
+    public String getDefaultCacheControl() {
+        return defaultCacheControl;
+    }
+
+    /**
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @return dataset id (without slashes)
+     */
+    public static String getDatasetId(String recordId) {
+        int end = recordId.indexOf('/', 1);
+        return recordId.substring(1, end < 0 ? recordId.length() : end);
+    }
+}
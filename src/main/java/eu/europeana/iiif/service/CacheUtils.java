@@ -9,6 +9,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -16,9 +19,11 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Utility class to facilitate handling If-Modified-Since, If-None-Match and If-Match request caching
+ * Utility class to facilitate handling If-Modified-Since, If-None-Match and If-Match request caching and serving
+ * pre-compressed responses
  * @author Patrick Ehlert
  * Created on 03-10-2018
  */
@@ -69,6 +74,36 @@ public class CacheUtils {
         return headers;
     }
 
+    /**
+     * Adds headers that tag a response with the record and its dataset, so a CDN can purge all responses of a record
+     * or dataset at once. We send both the Surrogate-Key header (space separated, used by e.g. Fastly) and the
+     * Cache-Tag header (comma separated, used by e.g. Cloudflare and Akamai)
+     * @param headers headers that should be sent back in the response
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     */
+    public static void addSurrogateKeys(HttpHeaders headers, String recordId) {
+        String datasetKey = getDatasetSurrogateKey(CachePolicy.getDatasetId(recordId));
+        String recordKey = getRecordSurrogateKey(recordId);
+        headers.add("Surrogate-Key", datasetKey + " " + recordKey);
+        headers.add("Cache-Tag", datasetKey + "," + recordKey);
+    }
+
+    /**
+     * @param datasetId dataset id (without slashes)
+     * @return surrogate key that identifies all responses of a dataset (e.g. dataset-9200579)
+     */
+    public static String getDatasetSurrogateKey(String datasetId) {
+        return "dataset-" + datasetId;
+    }
+
+    /**
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @return surrogate key that identifies all responses of a record (e.g. record-9200579-abc)
+     */
+    public static String getRecordSurrogateKey(String recordId) {
+        return "record" + recordId.replace('/', '-');
+    }
+
     /**
      * Formats the given date according to the RFC 1123 pattern (e.g. Thu, 4 Oct 2018 10:34:20 GMT)
      * @param lastModified
@@ -87,17 +122,34 @@ public class CacheUtils {
      */
     public static ResponseEntity checkCached(HttpServletRequest request, HttpHeaders headers,
                                               ZonedDateTime lastModified, String eTag) {
+        return checkCached(request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"),
+                request.getHeader("If-Match"), headers, lastModified, eTag);
+    }
+
+    /**
+     * Same as {@link #checkCached(HttpServletRequest, HttpHeaders, ZonedDateTime, String)}, but with the request header
+     * values provided separately (e.g. for asynchronous requests where the original request may no longer be available)
+     * @param ifNoneMatch value of the If-None-Match request header (can be null)
+     * @param ifModifiedSince value of the If-Modified-Since request header (can be null)
+     * @param ifMatch value of the If-Match request header (can be null)
+     * @param headers headers that should be sent back in the response
+     * @param lastModified ZonedDateTime that indicates the lastModified date of the requested data
+     * @param eTag String with the calculated eTag of the requested data
+     * @return ResponseEntity with 304 or 312 status if requested object has not changed, otherwise null
+     */
+    public static <T> ResponseEntity<T> checkCached(String ifNoneMatch, String ifModifiedSince, String ifMatch,
+                                                    HttpHeaders headers, ZonedDateTime lastModified, String eTag) {
         // chosen this implementation instead of the 'shallow' out-of-the-box spring boot version because that does not
         // offer the advantage of saving on processing time
-        ZonedDateTime requestLastModified = headerStringToDate(request.getHeader("If-Modified-Since"));
+        ZonedDateTime requestLastModified = headerStringToDate(ifModifiedSince);
         if((requestLastModified !=null && requestLastModified.compareTo(lastModified) > 0) ||
-                (StringUtils.isNotEmpty(request.getHeader("If-None-Match")) &&
-                        StringUtils.equalsIgnoreCase(request.getHeader("If-None-Match"), eTag))) {
+                (StringUtils.isNotEmpty(ifNoneMatch) &&
+                        StringUtils.equalsIgnoreCase(ifNoneMatch, eTag))) {
             // TODO Also we ignore possible multiple eTags for now
             return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
-        } else if (StringUtils.isNotEmpty(request.getHeader("If-Match")) &&
-                (!StringUtils.equalsIgnoreCase(request.getHeader("If-Match"), eTag) &&
-                        !StringUtils.equalsIgnoreCase(request.getHeader("If-Match"), "*"))) {
+        } else if (StringUtils.isNotEmpty(ifMatch) &&
+                (!StringUtils.equalsIgnoreCase(ifMatch, eTag) &&
+                        !StringUtils.equalsIgnoreCase(ifMatch, "*"))) {
             // Note that according to the specification we have to use strong ETags here (but for now we just ignore that)
             // see https://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.24
             // TODO Also we ignore possible multiple eTags for now
@@ -106,6 +158,55 @@ public class CacheUtils {
         return null;
     }
 
+    /**
+     * Check if a client accepts gzip encoded responses
+     * @param acceptEncoding value of the Accept-Encoding request header (can be null)
+     * @return true if gzip (or any encoding) is accepted with a quality value larger than 0
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (StringUtils.isEmpty(acceptEncoding)) {
+            return false;
+        }
+        for (String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.split(";");
+            String name = parts[0].trim();
+            if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name) || "*".equals(name)) {
+                return getQuality(parts) > 0;
+            }
+        }
+        return false;
+    }
+
+    private static double getQuality(String[] encodingParts) {
+        for (int i = 1; i < encodingParts.length; i++) {
+            String param = encodingParts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Gzip the provided data
+     * @param data data to compress
+     * @return gzip encoded data
+     */
+    public static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(result)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            // shouldn't happen, we write to memory
+            throw new UncheckedIOException(e);
+        }
+        return result.toByteArray();
+    }
+
     /**
      * Parses the date string received in a request header
      * @param dateString
@@ -0,0 +1,54 @@
+package eu.europeana.iiif.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that keeps a copy of all written bytes, as long as the total doesn't exceed a maximum. This way we can
+ * stream a response and still cache it if it isn't too large.
+ */
+class CappedCopyOutputStream extends FilterOutputStream {
+
+    private final int maxBytes;
+    private ByteArrayOutputStream copy;
+
+    CappedCopyOutputStream(OutputStream out, int maxBytes) {
+        super(out);
+        this.maxBytes = maxBytes;
+        this.copy = (maxBytes > 0 ? new ByteArrayOutputStream() : null);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (copy != null) {
+            if (copy.size() + 1 > maxBytes) {
+                copy = null;
+            } else {
+                copy.write(b);
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // FilterOutputStream writes byte by byte, so we write the entire array to the underlying stream ourselves
+        out.write(b, off, len);
+        if (copy != null) {
+            if (copy.size() + len > maxBytes) {
+                copy = null;
+            } else {
+                copy.write(b, off, len);
+            }
+        }
+    }
+
+    /**
+     * @return copy of all written bytes, or null if more than the maximum number of bytes were written
+     */
+    byte[] getCopy() {
+        return (copy == null ? null : copy.toByteArray());
+    }
+}
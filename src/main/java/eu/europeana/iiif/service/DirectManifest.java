@@ -0,0 +1,351 @@
+package eu.europeana.iiif.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import eu.europeana.iiif.model.Definitions;
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.LanguageValues;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Manifest that is written directly from the format-neutral manifest data when it's serialized, so no ManifestV2 or
+ * ManifestV3 object graph has to be generated and inspected by Jackson first. Because this class implements
+ * JsonSerializable it's serialized with the same object writer (and pretty printer) as the regular manifest objects.
+ *
+ * The output must be exactly the same as that of the corresponding ManifestV2 or ManifestV3 object (see
+ * EdmManifestMapping), so any change in the model classes or mapping has to be made here as well.
+ */
+public final class DirectManifest implements JsonSerializable {
+
+    private static final String CONTEXT_ANNOTATION = "http://www.w3.org/ns/anno.jsonld";
+    private static final String CONTEXT_IMAGE_V2 = "http://iiif.io/api/image/2/context.json";
+    private static final String TYPE_V2 = "@type";
+    private static final String ID_V2 = "@id";
+    private static final String TYPE_V3 = "type";
+    private static final String ID_V3 = "id";
+
+    private final ManifestSettings settings;
+    private final ManifestData data;
+    private final boolean v3;
+    private final IntFunction<String> fullTextUrls;
+    private final boolean fullTextUnknown;
+
+    private DirectManifest(ManifestSettings settings, ManifestData data, boolean v3, IntFunction<String> fullTextUrls,
+                           boolean fullTextUnknown) {
+        this.settings = settings;
+        this.data = data;
+        this.v3 = v3;
+        this.fullTextUrls = fullTextUrls;
+        this.fullTextUnknown = fullTextUnknown;
+    }
+
+    /**
+     * Create a new IIIF v2 manifest that is written directly from the provided data
+     * @param settings manifest settings object loaded from properties file
+     * @param data manifest data
+     * @param fullTextUrls function that returns the full text url for a page number, or null if no full text links
+     *                     should be added
+     * @return direct manifest
+     */
+    public static DirectManifest v2(ManifestSettings settings, ManifestData data, IntFunction<String> fullTextUrls) {
+        return v2(settings, data, fullTextUrls, false);
+    }
+
+    /**
+     * Create a new IIIF v2 manifest that is written directly from the provided data
+     * @param settings manifest settings object loaded from properties file
+     * @param data manifest data
+     * @param fullTextUrls function that returns the full text url for a page number, or null if no full text links
+     *                     should be added
+     * @param fullTextUnknown true if we couldn't check if a full text is available
+     * @return direct manifest
+     */
+    public static DirectManifest v2(ManifestSettings settings, ManifestData data, IntFunction<String> fullTextUrls,
+                                    boolean fullTextUnknown) {
+        return new DirectManifest(settings, data, false, fullTextUrls, fullTextUnknown);
+    }
+
+    /**
+     * Create a new IIIF v3 manifest that is written directly from the provided data
+     * @param settings manifest settings object loaded from properties file
+     * @param data manifest data
+     * @return direct manifest
+     */
+    public static DirectManifest v3(ManifestSettings settings, ManifestData data) {
+        return new DirectManifest(settings, data, true, null, false);
+    }
+
+    /**
+     * @return true if we couldn't check if a full text is available, so full text links may be missing
+     */
+    public boolean isFullTextUnknown() {
+        return fullTextUnknown;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        if (v3) {
+            writeManifestV3(gen);
+        } else {
+            writeManifestV2(gen);
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        // we don't use polymorphic type handling, so there is no type information to add
+        serialize(gen, serializers);
+    }
+
+    /**
+     * Writes the same fields, in the same order, as a serialized ManifestV2 object. JsonLd types come first, followed
+     * by the id, the context and all other (non-null) fields.
+     */
+    private void writeManifestV2(JsonGenerator gen) throws IOException {
+        String europeanaId = data.getEuropeanaId();
+        gen.writeStartObject();
+        gen.writeStringField(TYPE_V2, "sc:Manifest");
+        gen.writeStringField(ID_V2, EdmManifestMapping.getManifestId(europeanaId));
+        gen.writeStringField("@context", Definitions.MEDIA_TYPE_IIIF_V2);
+        // within is not generated for v2 yet (see EdmManifestMapping.getWithinV2)
+        writeLanguageObjectsV2(gen, "label", data.getLabel());
+        writeLanguageObjectsV2(gen, "description", data.getDescription());
+        writeMetaDataV2(gen);
+        if (data.getThumbnailId() != null) {
+            gen.writeObjectFieldStart("thumbnail");
+            gen.writeStringField(TYPE_V2, "dctypes:Image");
+            gen.writeStringField(ID_V2, data.getThumbnailId());
+            gen.writeEndObject();
+        }
+        writeStringField(gen, "navDate", data.getNavDate());
+        writeStringField(gen, "attribution", data.getAttribution());
+        writeStringField(gen, "license", data.getLicense());
+        gen.writeStringField("logo", Definitions.EUROPEANA_LOGO_URL);
+        writeDataSets(gen, europeanaId, ID_V2, null);
+        writeSequencesV2(gen, europeanaId);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes language values as an array of language objects. If the language is 'def' it is left out. Like in
+     * EdmManifestMapping nothing is written if there are no values at all.
+     */
+    private static void writeLanguageObjectsV2(JsonGenerator gen, String fieldName, LanguageValues languageValues)
+            throws IOException {
+        if (!hasValues(languageValues)) {
+            return;
+        }
+        gen.writeArrayFieldStart(fieldName);
+        for (int i = 0; i < languageValues.size(); i++) {
+            String language = languageValues.getLanguage(i);
+            for (String value : languageValues.getValues(i)) {
+                gen.writeStartObject();
+                if (!"def".equalsIgnoreCase(language)) {
+                    writeStringField(gen, "@language", language);
+                }
+                writeStringField(gen, "@value", value);
+                gen.writeEndObject();
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private static boolean hasValues(LanguageValues languageValues) {
+        if (languageValues == null) {
+            return false;
+        }
+        for (int i = 0; i < languageValues.size(); i++) {
+            if (languageValues.getValues(i).length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeMetaDataV2(JsonGenerator gen) throws IOException {
+        if (data.getMetaData() == null) {
+            return;
+        }
+        gen.writeArrayFieldStart("metadata");
+        for (Map.Entry<String, LanguageValues> entry : data.getMetaData().entrySet()) {
+            gen.writeStartObject();
+            writeStringField(gen, "label", entry.getKey());
+            writeLanguageObjectsV2(gen, "value", entry.getValue());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Writes the 3 datasets (json-ld, json and rdf/xml)
+     * @param type the type of a dataset, or null if no type should be written
+     */
+    private static void writeDataSets(JsonGenerator gen, String europeanaId, String idField, String type) throws IOException {
+        gen.writeArrayFieldStart("seeAlso");
+        writeDataSet(gen, EdmManifestMapping.getDatasetId(europeanaId, ".json-ld"), Definitions.MEDIA_TYPE_JSONLD, idField, type);
+        writeDataSet(gen, EdmManifestMapping.getDatasetId(europeanaId, ".json"), MediaType.APPLICATION_JSON_VALUE, idField, type);
+        writeDataSet(gen, EdmManifestMapping.getDatasetId(europeanaId, ".rdf"), Definitions.MEDIA_TYPE_RDF, idField, type);
+        gen.writeEndArray();
+    }
+
+    private static void writeDataSet(JsonGenerator gen, String id, String format, String idField, String type)
+            throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField(idField, id);
+        if (type != null) {
+            gen.writeStringField(TYPE_V3, type);
+        }
+        gen.writeStringField("format", format);
+        gen.writeStringField("profile", Definitions.EDM_SCHEMA_URL);
+        gen.writeEndObject();
+    }
+
+    /**
+     * There is only 1 sequence (if there are canvases). For very large records the sequence only contains the first
+     * page of canvases (see EdmManifestMapping.getSequencesV2)
+     */
+    private void writeSequencesV2(JsonGenerator gen, String europeanaId) throws IOException {
+        ManifestData.CanvasData[] canvasData = data.getCanvases();
+        if (canvasData.length == 0) {
+            return;
+        }
+        boolean paged = EdmManifestMapping.isCanvasPaged(settings, canvasData.length);
+        gen.writeArrayFieldStart("sequences");
+        gen.writeStartObject();
+        gen.writeStringField(TYPE_V2, "sc:Sequence");
+        gen.writeStringField(ID_V2, EdmManifestMapping.getSequenceId(europeanaId, 1));
+        gen.writeStringField("label", "Current Page Order");
+        gen.writeStringField("startCanvas", EdmManifestMapping.getCanvasId(europeanaId, 1));
+        gen.writeArrayFieldStart("canvases");
+        int to = (paged ? Math.min(settings.getCanvasPageSize(), canvasData.length) : canvasData.length);
+        for (int i = 0; i < to; i++) {
+            writeCanvasV2(gen, europeanaId, i + 1, canvasData[i]);
+        }
+        gen.writeEndArray();
+        if (paged) {
+            gen.writeNumberField("total", canvasData.length);
+            if (canvasData.length > settings.getCanvasPageSize()) {
+                gen.writeStringField("next", EdmManifestMapping.getCanvasPageId(europeanaId, 2));
+            }
+        }
+        gen.writeEndObject();
+        gen.writeEndArray();
+    }
+
+    private void writeCanvasV2(JsonGenerator gen, String europeanaId, int order, ManifestData.CanvasData canvasData)
+            throws IOException {
+        String canvasId = EdmManifestMapping.getCanvasId(europeanaId, order);
+        gen.writeStartObject();
+        gen.writeStringField(TYPE_V2, "sc:Canvas");
+        gen.writeStringField(ID_V2, canvasId);
+        gen.writeStringField("label", "p. " + order);
+        writeNumberField(gen, "height", settings.getCanvasHeight());
+        writeNumberField(gen, "width", settings.getCanvasWidth());
+        writeStringField(gen, "attribution", canvasData.getAttribution());
+        writeStringField(gen, "license", canvasData.getLicense());
+
+        gen.writeArrayFieldStart("images");
+        gen.writeStartObject();
+        gen.writeStringField(TYPE_V2, "oa:Annotation");
+        gen.writeStringField(ID_V2, EdmManifestMapping.getAnnotationId(europeanaId, order));
+        gen.writeStringField("motivation", "sc:painting");
+        gen.writeObjectFieldStart("resource");
+        gen.writeStringField(TYPE_V2, "dctypes:Image");
+        writeStringField(gen, ID_V2, canvasData.getWebResourceId());
+        writeStringField(gen, "format", canvasData.getMimeType());
+        if (canvasData.getServiceId() != null) {
+            gen.writeObjectFieldStart("service");
+            gen.writeStringField(ID_V2, canvasData.getServiceId());
+            gen.writeStringField("@context", CONTEXT_IMAGE_V2);
+            writeStringField(gen, "profile", canvasData.getServiceProfile());
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+        gen.writeStringField("on", canvasId);
+        gen.writeEndObject();
+        gen.writeEndArray();
+
+        if (fullTextUrls != null) {
+            gen.writeArrayFieldStart("otherContent");
+            gen.writeStartObject();
+            gen.writeStringField(ID_V2, fullTextUrls.apply(order));
+            gen.writeEndObject();
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes the same fields, in the same order, as a serialized ManifestV3 object
+     */
+    private void writeManifestV3(JsonGenerator gen) throws IOException {
+        String europeanaId = data.getEuropeanaId();
+        gen.writeStartObject();
+        gen.writeStringField(ID_V3, EdmManifestMapping.getManifestId(europeanaId));
+        gen.writeStringField(TYPE_V3, "Manifest");
+        gen.writeArrayFieldStart("@context");
+        gen.writeString(CONTEXT_ANNOTATION);
+        gen.writeString(Definitions.MEDIA_TYPE_IIIF_V3);
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("within");
+        for (String collection : data.getWithin()) {
+            gen.writeStartObject();
+            gen.writeStringField(ID_V3, collection);
+            gen.writeStringField(TYPE_V3, "Collection");
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        writeLanguageMapV3(gen, "label", data.getLabel());
+        writeLanguageMapV3(gen, "description", data.getDescription());
+        // metadata, thumbnail, attribution, rights and items are not generated for v3 yet (see EdmManifestMapping.getManifestV3)
+        writeStringField(gen, "navDate", data.getNavDate());
+        gen.writeArrayFieldStart("logo");
+        gen.writeStartObject();
+        gen.writeStringField(ID_V3, Definitions.EUROPEANA_LOGO_URL);
+        gen.writeStringField(TYPE_V3, "Image");
+        gen.writeEndObject();
+        gen.writeEndArray();
+        writeDataSets(gen, europeanaId, ID_V3, "Dataset");
+        gen.writeEndObject();
+    }
+
+    /**
+     * Writes language values as a language map, e.g. {"en":["title1", "title2"]}
+     */
+    private static void writeLanguageMapV3(JsonGenerator gen, String fieldName, LanguageValues languageValues)
+            throws IOException {
+        if (languageValues == null) {
+            return;
+        }
+        gen.writeObjectFieldStart(fieldName);
+        for (int i = 0; i < languageValues.size(); i++) {
+            gen.writeArrayFieldStart(languageValues.getLanguage(i));
+            for (String value : languageValues.getValues(i)) {
+                gen.writeString(value);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Like the object mapper (with NON_NULL inclusion) we leave out fields without a value
+     */
+    private static void writeStringField(JsonGenerator gen, String fieldName, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(fieldName, value);
+        }
+    }
+
+    private static void writeNumberField(JsonGenerator gen, String fieldName, Integer value) throws IOException {
+        if (value != null) {
+            gen.writeNumberField(fieldName, value);
+        }
+    }
+}
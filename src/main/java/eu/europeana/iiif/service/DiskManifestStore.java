@@ -0,0 +1,782 @@
+package eu.europeana.iiif.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Stores serialized manifests on disk, so they survive a restart and a new instance doesn't start with a cold cache.
+ *
+ * Manifests are appended to a log of fixed-size segment files that are memory-mapped, so reading a manifest doesn't
+ * require a system call. An in-memory index maps the manifest key (manifest eTag plus options) to the location of the
+ * manifest in the log. On startup the index is rebuilt by reading only the record headers of all segments.
+ * When the maximum size is reached, the oldest segment is removed. Manifests in that segment that were read since they
+ * were written are copied to the new segment first (up to half of its size), all others are dropped.
+ *
+ * Manifests can be stored together with the request they were generated for (see {@link StoredRequest}). After a
+ * restart that's used to restore the validator index and the stale manifests, so requests can be answered without
+ * retrieving the record first. Purges are stored as well, so purged records aren't restored.
+ *
+ * The store is safe for many concurrent readers. Manifests are written by a single background thread, so requests never
+ * wait for disk I/O or compaction. Until it's written, a manifest is read from memory.
+ */
+public class DiskManifestStore implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(DiskManifestStore.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // records with another magic number (e.g. of an older format) are ignored
+    private static final int MAGIC = 0x4d414e32;
+    // magic, crc, key length, request length, content type length, content length, gzip length (-1 = none) and
+    // creation time
+    private static final int HEADER_SIZE = 7 * Integer.BYTES + Long.BYTES;
+    private static final int CRC_OFFSET = Integer.BYTES;
+    private static final int KEY_LENGTH_OFFSET = 2 * Integer.BYTES;
+    private static final int REQUEST_LENGTH_OFFSET = 3 * Integer.BYTES;
+    private static final int CREATED_OFFSET = 7 * Integer.BYTES;
+    private static final int LENGTH_FIELDS = 5;
+    // a record with an empty key marks a purge, the request part has the purged record or dataset id
+    private static final String PURGE_KEY = "";
+    // maximum number of manifests waiting to be written, if there are more new manifests are not stored
+    private static final int MAX_PENDING_WRITES = 1000;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long ttl;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    // request key -> key of the last stored manifest of that request
+    private final Map<String, String> staleIndex = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    // manifests waiting to be written, so they can already be read
+    private final Map<String, ManifestCache.CachedManifest> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<Write> writeQueue = new ArrayBlockingQueue<>(MAX_PENDING_WRITES);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // only used by the writer thread (after loading)
+    private Segment activeSegment;
+    private ByteBuffer writeBuffer;
+
+    /**
+     * Opens the store in the provided directory and loads the index of all stored manifests
+     * @param directory directory containing the segment files, it's created if it doesn't exist
+     * @param maxBytes maximum total size in bytes of all segment files (at least 2 segments are kept)
+     * @param segmentBytes size in bytes of a single segment file, this is also the maximum size of a stored manifest
+     * @param ttl number of milliseconds after which a stored manifest expires
+     * @throws IOException when the directory or segment files can't be read or created
+     */
+    public DiskManifestStore(Path directory, long maxBytes, int segmentBytes, long ttl) throws IOException {
+        if (segmentBytes <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size should be larger than " + HEADER_SIZE + " bytes");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes));
+        this.ttl = ttl;
+        Files.createDirectories(directory);
+        load();
+        writer = new Thread(this::writeLoop, "manifest-store-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Maps all existing segments and reads their record headers into the index. The newest segment is used for writing.
+     */
+    private void load() throws IOException {
+        long start = System.currentTimeMillis();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files);
+
+        int writePosition = 0;
+        for (Path file : files) {
+            Segment segment = openSegment(getSegmentId(file), file);
+            segments.put(segment.id, segment);
+            writePosition = loadSegment(segment);
+        }
+        if (segments.isEmpty()) {
+            activeSegment = createSegment(1);
+            writePosition = 0;
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+        }
+        writeBuffer = activeSegment.buffer.duplicate();
+        writeBuffer.position(writePosition);
+        while (segments.size() > maxSegments) {
+            removeSegment(segments.firstEntry().getValue());
+        }
+        LOG.info("Loaded {} stored manifests ({} requests) from {} segments in {} ms", index.size(), staleIndex.size(),
+                segments.size(), System.currentTimeMillis() - start);
+    }
+
+    private static int getSegmentId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Unexpected file " + file + " in manifest store", e);
+        }
+    }
+
+    /**
+     * Adds the records in a segment to the index (later records replace earlier records with the same key) and
+     * applies the stored purges. Records with an invalid checksum (e.g. a record that was only partly written) are
+     * skipped, so they don't replace an earlier valid record.
+     * @return position after the last complete record
+     */
+    private int loadSegment(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        long now = System.currentTimeMillis();
+        while (position + HEADER_SIZE <= buffer.limit() && buffer.getInt(position) == MAGIC) {
+            int keyLength = buffer.getInt(position + KEY_LENGTH_OFFSET);
+            long length = getRecordLength(buffer, position);
+            if (keyLength < 0 || length < 0 || position + length > buffer.limit()) {
+                LOG.warn("Ignoring incomplete record in manifest store segment {} at position {}", segment.id, position);
+                break;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.limit(position + (int) length);
+            record.position(position);
+            if (record.getInt(position + CRC_OFFSET) != getCrc(record.slice())) {
+                LOG.warn("Ignoring corrupt record in manifest store segment {} at position {}", segment.id, position);
+                position += (int) length;
+                continue;
+            }
+            long created = buffer.getLong(position + CREATED_OFFSET);
+            byte[] key = new byte[keyLength];
+            byte[] request = new byte[buffer.getInt(position + REQUEST_LENGTH_OFFSET)];
+            ByteBuffer keyBuffer = buffer.duplicate();
+            keyBuffer.position(position + HEADER_SIZE);
+            keyBuffer.get(key);
+            keyBuffer.get(request);
+            if (keyLength == 0) {
+                removeRequests(new String(request, StandardCharsets.UTF_8));
+            } else if (now - created < ttl) {
+                addToIndex(new String(key, StandardCharsets.UTF_8), new Location(segment.id, position, (int) length,
+                        created, StoredRequest.decode(request)));
+            }
+            position += (int) length;
+        }
+        return position;
+    }
+
+    /**
+     * @return total length of the record at the provided position, or -1 if the lengths in the header are invalid
+     */
+    private static long getRecordLength(ByteBuffer buffer, int position) {
+        long result = HEADER_SIZE;
+        for (int i = 0; i < LENGTH_FIELDS; i++) {
+            int length = buffer.getInt(position + KEY_LENGTH_OFFSET + i * Integer.BYTES);
+            if (length < -1 || (length == -1 && i < LENGTH_FIELDS - 1)) {
+                return -1;
+            }
+            result += Math.max(length, 0);
+        }
+        return result;
+    }
+
+    private void addToIndex(String key, Location location) {
+        index.put(key, location);
+        if (location.request != null) {
+            staleIndex.put(location.request.staleKey, key);
+        }
+    }
+
+    /**
+     * Removes the manifests of a record or dataset that were stored together with their request
+     * @return number of removed requests
+     */
+    private long removeRequests(String idPrefix) {
+        // request keys start with the record id followed by a space, so '/123' doesn't match records of dataset '/1234'
+        String prefix = (idPrefix.indexOf('/', 1) > 0 ? idPrefix + " " : idPrefix + "/");
+        index.values().removeIf(location -> location.request != null && location.request.staleKey.startsWith(prefix));
+        List<String> staleKeys = staleIndex.keySet().stream()
+                .filter(staleKey -> staleKey.startsWith(prefix))
+                .collect(Collectors.toList());
+        staleKeys.forEach(staleIndex::remove);
+        return staleKeys.size();
+    }
+
+    /**
+     * @param key manifest key
+     * @return stored manifest, or null if there is no (valid and unexpired) manifest for the provided key
+     */
+    public ManifestCache.CachedManifest get(String key) {
+        ManifestCache.CachedManifest written = pending.get(key);
+        if (written != null && !isExpired(written.getCreated())) {
+            hitCount.increment();
+            return written;
+        }
+        Location location = index.get(key);
+        Segment segment = (location == null ? null : segments.get(location.segmentId));
+        if (segment == null || isExpired(location.created)) {
+            if (location != null) {
+                index.remove(key, location);
+            }
+            missCount.increment();
+            return null;
+        }
+        ByteBuffer record = segment.buffer.duplicate();
+        record.limit(location.offset + location.length);
+        record.position(location.offset);
+        ManifestCache.CachedManifest result = readRecord(key, record.slice(), location.created);
+        if (result == null) {
+            LOG.warn("Stored manifest {} is corrupt", key);
+            index.remove(key, location);
+            missCount.increment();
+            return null;
+        }
+        location.accessed = true;
+        hitCount.increment();
+        return result;
+    }
+
+    private boolean isExpired(long created) {
+        return System.currentTimeMillis() - created >= ttl;
+    }
+
+    /**
+     * Reads and verifies a record
+     * @return manifest, or null if the record is corrupt or has another key
+     */
+    private static ManifestCache.CachedManifest readRecord(String key, ByteBuffer record, long created) {
+        if (record.getInt(0) != MAGIC || record.getInt(CRC_OFFSET) != getCrc(record)) {
+            return null;
+        }
+        record.position(KEY_LENGTH_OFFSET);
+        int keyLength = record.getInt();
+        int requestLength = record.getInt();
+        int contentTypeLength = record.getInt();
+        int contentLength = record.getInt();
+        int gzipLength = record.getInt();
+        record.position(HEADER_SIZE);
+        byte[] recordKey = new byte[keyLength];
+        record.get(recordKey);
+        if (!key.equals(new String(recordKey, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        record.position(record.position() + requestLength);
+        byte[] contentType = new byte[contentTypeLength];
+        record.get(contentType);
+        byte[] content = new byte[contentLength];
+        record.get(content);
+        byte[] gzip = null;
+        if (gzipLength >= 0) {
+            gzip = new byte[gzipLength];
+            record.get(gzip);
+        }
+        return new ManifestCache.CachedManifest(content, gzip, new String(contentType, StandardCharsets.UTF_8),
+                created);
+    }
+
+    /**
+     * @return checksum of everything in the record after the checksum field
+     */
+    private static int getCrc(ByteBuffer record) {
+        ByteBuffer data = record.duplicate();
+        data.position(KEY_LENGTH_OFFSET);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Add or replace a manifest in the store. The manifest is written in the background, if too many manifests are
+     * waiting to be written it's not stored. Manifests that are larger than the segment size are not stored either.
+     * @param key manifest key
+     * @param manifest manifest to store
+     */
+    public void put(String key, ManifestCache.CachedManifest manifest) {
+        put(key, manifest, null);
+    }
+
+    /**
+     * Add or replace a manifest in the store, together with the request it was generated for
+     * @param key manifest key
+     * @param manifest manifest to store
+     * @param request request and validators of the manifest, null if unknown
+     */
+    public void put(String key, ManifestCache.CachedManifest manifest, StoredRequest request) {
+        if (closed) {
+            return;
+        }
+        byte[] gzip = manifest.getGzipContent();
+        if (HEADER_SIZE + manifest.getContent().length + (gzip == null ? 0 : gzip.length) > segmentBytes) {
+            LOG.debug("Manifest {} is too large for the manifest store", key);
+            return;
+        }
+        pending.put(key, manifest);
+        if (!writeQueue.offer(new Write(key, manifest, request, null))) {
+            pending.remove(key, manifest);
+            LOG.debug("Too many manifests waiting to be stored, not storing {}", key);
+        }
+    }
+
+    /**
+     * Writes manifests until the store is closed
+     */
+    private void writeLoop() {
+        while (true) {
+            Write write;
+            try {
+                write = writeQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (write.done != null) {
+                if (write.last) {
+                    activeSegment.buffer.force();
+                }
+                write.done.countDown();
+                if (write.last) {
+                    return;
+                }
+            } else if (write.purge != null) {
+                writePurge(write.purge);
+            } else if (pending.get(write.key) == write.manifest) {
+                // if the manifest was replaced while it was waiting, we only write the newer one
+                writeManifest(write.key, write.manifest, write.request);
+                pending.remove(write.key, write.manifest);
+            }
+        }
+    }
+
+    /**
+     * Waits until all manifests that were added before are written to the (memory-mapped) segment files
+     */
+    public void flush() {
+        waitForWriter(false);
+    }
+
+    private void waitForWriter(boolean last) {
+        if (!writer.isAlive()) {
+            return;
+        }
+        Write marker = new Write(last);
+        try {
+            writeQueue.put(marker);
+            marker.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeManifest(String key, ManifestCache.CachedManifest manifest, StoredRequest request) {
+        byte[] contentType = (manifest.getContentType() == null ? new byte[0]
+                : manifest.getContentType().getBytes(StandardCharsets.UTF_8));
+        try {
+            int offset = writeRecord(key.getBytes(StandardCharsets.UTF_8),
+                    (request == null ? new byte[0] : request.encode()), contentType, manifest.getContent(),
+                    manifest.getGzipContent(), manifest.getCreated());
+            if (offset >= 0) {
+                addToIndex(key, new Location(activeSegment.id, offset, writeBuffer.position() - offset,
+                        manifest.getCreated(), request));
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error storing manifest {}", key, e);
+        }
+    }
+
+    private void writePurge(String idPrefix) {
+        try {
+            writeRecord(PURGE_KEY.getBytes(StandardCharsets.UTF_8), idPrefix.getBytes(StandardCharsets.UTF_8),
+                    new byte[0], new byte[0], null, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            LOG.error("Error storing purge of {}", idPrefix, e);
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if it doesn't fit
+     * @return offset of the record in the active segment, or -1 if it wasn't written
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    private int writeRecord(byte[] key, byte[] request, byte[] contentType, byte[] content, byte[] gzip,
+                            long created) {
+        long length = (long) HEADER_SIZE + key.length + request.length + contentType.length + content.length
+                + (gzip == null ? 0 : gzip.length);
+        if (length > segmentBytes) {
+            LOG.debug("Record {} is too large ({} bytes) for the manifest store",
+                    new String(key, StandardCharsets.UTF_8), length);
+            return -1;
+        }
+        try {
+            while (writeBuffer.remaining() < length) {
+                rollSegment((int) length);
+            }
+        } catch (IOException e) {
+            LOG.warn("Error creating new manifest store segment", e);
+            return -1;
+        }
+        int offset = writeBuffer.position();
+        writeBuffer.putInt(MAGIC);
+        writeBuffer.putInt(0);
+        writeBuffer.putInt(key.length);
+        writeBuffer.putInt(request.length);
+        writeBuffer.putInt(contentType.length);
+        writeBuffer.putInt(content.length);
+        writeBuffer.putInt(gzip == null ? -1 : gzip.length);
+        writeBuffer.putLong(created);
+        writeBuffer.put(key);
+        writeBuffer.put(request);
+        writeBuffer.put(contentType);
+        writeBuffer.put(content);
+        if (gzip != null) {
+            writeBuffer.put(gzip);
+        }
+        ByteBuffer record = writeBuffer.duplicate();
+        record.limit(writeBuffer.position());
+        record.position(offset);
+        writeBuffer.putInt(offset + CRC_OFFSET, getCrc(record.slice()));
+        return offset;
+    }
+
+    /**
+     * Returns the last stored manifest of a request, as stale manifest. Its age is the time since it was stored (we
+     * don't know if it was revalidated later).
+     * @param staleKey request key
+     * @return stale manifest, or null if there is no (unexpired) manifest of the request
+     */
+    public StaleManifestCache.StaleManifest getStale(String staleKey) {
+        String key = staleIndex.get(staleKey);
+        if (key == null) {
+            return null;
+        }
+        Location location = index.get(key);
+        if (location == null || location.request == null) {
+            // the manifest was removed during compaction
+            staleIndex.remove(staleKey, key);
+            return null;
+        }
+        ManifestCache.CachedManifest manifest = get(key);
+        if (manifest == null) {
+            return null;
+        }
+        return new StaleManifestCache.StaleManifest(manifest, location.request.eTag, location.request.lastModified,
+                location.created);
+    }
+
+    /**
+     * Adds the validators of the last stored manifest of each request to the validator index. They count as indexed
+     * when the manifest was stored, so they don't live longer than they would have without a restart.
+     * @param validatorIndex index to add the validators to
+     * @return number of added validators
+     */
+    public long restoreValidators(ValidatorIndex validatorIndex) {
+        long result = 0;
+        for (String key : staleIndex.values()) {
+            Location location = index.get(key);
+            if (location != null && location.request != null && location.request.lastModified != null
+                    && validatorIndex.put(location.request.recordId, location.request.variant,
+                    new ValidatorIndex.Validators(location.request.eTag, location.request.lastModified),
+                    location.created)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the manifests of a record or dataset that were stored together with their request, so they aren't
+     * restored anymore (also not after a restart)
+     * @param idPrefix either a record id ("/datasetid/recordid") or a dataset id ("/datasetid")
+     * @return number of removed requests
+     */
+    public long invalidate(String idPrefix) {
+        long result = removeRequests(idPrefix);
+        if (!closed && !writeQueue.offer(new Write(null, null, null, idPrefix))) {
+            LOG.warn("Too many manifests waiting to be stored, purge of {} is not stored", idPrefix);
+        }
+        return result;
+    }
+
+    /**
+     * Starts writing in a new segment. If there are too many segments, the oldest one is compacted into the new segment
+     * @param reserved number of bytes that must remain available in the new segment after compaction
+     */
+    private void rollSegment(int reserved) throws IOException {
+        activeSegment.buffer.force();
+        activeSegment = createSegment(activeSegment.id + 1);
+        writeBuffer = activeSegment.buffer.duplicate();
+        while (segments.size() > maxSegments) {
+            compact(segments.firstEntry().getValue(), Math.min(segmentBytes / 2, segmentBytes - reserved));
+        }
+    }
+
+    /**
+     * Copies manifests of the provided segment that are still in use (i.e. that were read since they were written) to
+     * the active segment and removes the segment
+     * @param budget maximum number of bytes that are copied
+     */
+    private void compact(Segment segment, int budget) {
+        int copied = 0;
+        int dropped = 0;
+        int available = budget;
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            Location location = entry.getValue();
+            if (location.segmentId != segment.id) {
+                continue;
+            }
+            if (location.accessed && location.length <= available && !isExpired(location.created)) {
+                ByteBuffer record = segment.buffer.duplicate();
+                record.limit(location.offset + location.length);
+                record.position(location.offset);
+                int offset = writeBuffer.position();
+                writeBuffer.put(record);
+                available -= location.length;
+                index.replace(entry.getKey(), location,
+                        new Location(activeSegment.id, offset, location.length, location.created, location.request));
+                copied++;
+            } else {
+                index.remove(entry.getKey(), location);
+                dropped++;
+            }
+        }
+        LOG.debug("Compacted manifest store segment {}: {} manifests copied, {} dropped", segment.id, copied, dropped);
+        removeSegment(segment);
+    }
+
+    private void removeSegment(Segment segment) {
+        segments.remove(segment.id);
+        index.values().removeIf(location -> location.segmentId == segment.id);
+        // on most platforms the file can be deleted while readers still use the mapped buffer
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            LOG.warn("Error deleting manifest store segment {}", segment.file, e);
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path file = directory.resolve(String.format("%010d", id) + SEGMENT_SUFFIX);
+        Segment result;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            result = new Segment(id, file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+        segments.put(id, result);
+        return result;
+    }
+
+    private Segment openSegment(int id, Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long size = Math.min(raf.length(), Integer.MAX_VALUE);
+            return new Segment(id, file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * @return number of times a manifest was found in the store
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return number of times a manifest was not found in the store
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of stored manifests
+     */
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * @return total size in bytes of all segment files
+     */
+    public long getBytes() {
+        long result = 0;
+        for (Segment segment : segments.values()) {
+            result += segment.buffer.capacity();
+        }
+        return result;
+    }
+
+    /**
+     * Writes all pending manifests to disk and stops accepting new manifests. Stored manifests can still be read.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            waitForWriter(true);
+        }
+    }
+
+    /**
+     * A manifest or purge that is waiting to be written, or a marker to wait for the writer (done is not null)
+     */
+    private static final class Write {
+        private final String key;
+        private final ManifestCache.CachedManifest manifest;
+        private final StoredRequest request;
+        private final String purge;
+        private final CountDownLatch done;
+        private final boolean last;
+
+        private Write(String key, ManifestCache.CachedManifest manifest, StoredRequest request, String purge) {
+            this.key = key;
+            this.manifest = manifest;
+            this.request = request;
+            this.purge = purge;
+            this.done = null;
+            this.last = false;
+        }
+
+        private Write(boolean last) {
+            this.key = null;
+            this.manifest = null;
+            this.request = null;
+            this.purge = null;
+            this.done = new CountDownLatch(1);
+            this.last = last;
+        }
+    }
+
+    /**
+     * A memory-mapped segment file
+     */
+    private static final class Segment {
+        private final int id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        private Segment(int id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Location of a stored manifest
+     */
+    private static final class Location {
+        private final int segmentId;
+        private final int offset;
+        private final int length;
+        private final long created;
+        private final StoredRequest request;
+        // set when the manifest is read, so we know it's worth keeping during compaction
+        private volatile boolean accessed;
+
+        private Location(int segmentId, int offset, int length, long created, StoredRequest request) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+            this.created = created;
+            this.request = request;
+        }
+    }
+
+    /**
+     * The request a manifest was generated for and the validators of the manifest
+     */
+    public static final class StoredRequest {
+
+        private static final String SEPARATOR = "\n";
+
+        private final String staleKey;
+        private final String recordId;
+        private final String variant;
+        private final String eTag;
+        private final ZonedDateTime lastModified;
+
+        /**
+         * Create a new stored request
+         * @param staleKey request key (see ManifestController)
+         * @param recordId Europeana record id in the form of "/datasetid/recordid"
+         * @param variant identifies the Record API and the type of response (see ValidatorIndex)
+         * @param eTag ETag of the manifest
+         * @param lastModified Last-Modified date of the manifest (record update timestamp)
+         */
+        public StoredRequest(String staleKey, String recordId, String variant, String eTag,
+                             ZonedDateTime lastModified) {
+            this.staleKey = staleKey;
+            this.recordId = recordId;
+            this.variant = variant;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        private byte[] encode() {
+            return String.join(SEPARATOR, staleKey, recordId, variant, eTag,
+                    (lastModified == null ? "" : lastModified.toString())).getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return decoded request, or null if there is none (or if it can't be decoded)
+         */
+        private static StoredRequest decode(byte[] data) {
+            String[] fields = new String(data, StandardCharsets.UTF_8).split(SEPARATOR, -1);
+            if (fields.length != 5) {
+                return null;
+            }
+            try {
+                return new StoredRequest(fields[0], fields[1], fields[2], fields[3],
+                        (fields[4].isEmpty() ? null : ZonedDateTime.parse(fields[4])));
+            } catch (DateTimeParseException e) {
+                LOG.warn("Ignoring stored request {} with invalid Last-Modified date", fields[0], e);
+                return null;
+            }
+        }
+
+        public String getStaleKey() {
+            return staleKey;
+        }
+
+        public String getRecordId() {
+            return recordId;
+        }
+
+        public String getVariant() {
+            return variant;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public ZonedDateTime getLastModified() {
+            return lastModified;
+        }
+    }
+}
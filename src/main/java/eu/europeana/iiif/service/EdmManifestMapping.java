@@ -1,10 +1,16 @@
 package eu.europeana.iiif.service;
 
-import com.jayway.jsonpath.JsonPath;
 import eu.europeana.iiif.model.Definitions;
 import eu.europeana.iiif.model.EdmDateUtils;
-import eu.europeana.iiif.model.WebResource;
+import eu.europeana.iiif.model.ManifestData;
 import eu.europeana.iiif.model.WebResourceSorter;
+import eu.europeana.iiif.model.edm.EdmAggregation;
+import eu.europeana.iiif.model.edm.EdmEuropeanaAggregation;
+import eu.europeana.iiif.model.edm.EdmProxy;
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.model.edm.EdmService;
+import eu.europeana.iiif.model.edm.EdmWebResource;
+import eu.europeana.iiif.model.edm.LanguageValues;
 import eu.europeana.iiif.model.v2.LanguageObject;
 import eu.europeana.iiif.model.v2.ManifestV2;
 import eu.europeana.iiif.model.v3.Collection;
@@ -22,12 +28,14 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * This class contains all the methods for mapping EDM record data to IIIF Manifest data for both IIIF v2 and v3
@@ -45,57 +53,107 @@ public final class EdmManifestMapping {
     }
 
     /**
-     * Generates a IIIF v2 manifest based on the provided (parsed) json document
+     * Extracts all data that is needed for a manifest from the provided record. The result is format-neutral, it can
+     * be rendered as both a IIIF v2 and v3 manifest.
+     * @param record record data
+     * @return manifest data
+     */
+    public static ManifestData getManifestData(EdmRecord record) {
+        String europeanaId = getEuropeanaId(record);
+        ManifestData data = new ManifestData(europeanaId);
+        data.setWithin(getWithin(record));
+        // titles and descriptions are used for both label and description, so we read them only once
+        List<LanguageValues> titles = getProxyValues(record, EdmProxy::getDcTitle);
+        List<LanguageValues> descriptions = getProxyValues(record, EdmProxy::getDcDescription);
+        if (titles.isEmpty()) {
+            data.setLabel(mergeLanguageValues(descriptions));
+        } else {
+            data.setLabel(mergeLanguageValues(titles));
+            data.setDescription(mergeLanguageValues(descriptions));
+        }
+        data.setMetaData(getMetaData(record));
+        data.setThumbnailId(getThumbnailId(record));
+        data.setNavDate(getNavDate(europeanaId, record));
+        data.setAttribution(getAttribution(europeanaId, record));
+        data.setLicense(getLicense(europeanaId, record));
+        String edmIsShownBy = getIsShownBy(europeanaId, record);
+        data.setIsShownBy(edmIsShownBy);
+        data.setCanvases(getCanvases(europeanaId, edmIsShownBy, record));
+        return data;
+    }
+
+    /**
+     * Generates a IIIF v2 manifest based on the provided record
+     * @param settings manifest settings object loaded from properties file
+     * @param record record data
+     * @return IIIF Manifest v2 object
+     */
+    public static ManifestV2 getManifestV2(ManifestSettings settings, EdmRecord record) {
+        return getManifestV2(settings, getManifestData(record));
+    }
+
+    /**
+     * Generates a IIIF v2 manifest based on the provided manifest data
      * @param settings manifest settings object loaded from properties file
-     * @param jsonDoc parsed json document
+     * @param data manifest data
      * @return IIIF Manifest v2 object
      */
-    public static ManifestV2 getManifestV2(ManifestSettings settings, Object jsonDoc) {
-        String europeanaId = getEuropeanaId(jsonDoc);
+    public static ManifestV2 getManifestV2(ManifestSettings settings, ManifestData data) {
+        String europeanaId = data.getEuropeanaId();
         ManifestV2 manifest = new ManifestV2(europeanaId, getManifestId(europeanaId));
-        manifest.setWithin(getWithinV2(jsonDoc));
-        manifest.setLabel(getLabelsV2(jsonDoc));
-        manifest.setDescription(getDescriptionV2(jsonDoc));
-        manifest.setMetadata(getMetaDataV2(jsonDoc));
-        manifest.setThumbnail(getThumbnailImageV2(settings, europeanaId, jsonDoc));
-        manifest.setNavDate(getNavDate(europeanaId, jsonDoc));
-        manifest.setAttribution(getAttributionV2(europeanaId, jsonDoc));
-        manifest.setLicense(getLicense(europeanaId, jsonDoc));
+        manifest.setWithin(getWithinV2(data));
+        manifest.setLabel(getLabelsV2(data));
+        manifest.setDescription(getDescriptionV2(data));
+        manifest.setMetadata(getMetaDataV2(data));
+        manifest.setThumbnail(getThumbnailImageV2(data));
+        manifest.setNavDate(data.getNavDate());
+        manifest.setAttribution(data.getAttribution());
+        manifest.setLicense(data.getLicense());
         manifest.setSeeAlso(getDataSetsV2(europeanaId));
-        manifest.setSequences(getSequencesV2(settings, europeanaId, jsonDoc));
+        manifest.setSequences(getSequencesV2(settings, data));
         return manifest;
     }
 
     /**
-     * Generates a IIIF v3 manifest based on the provided (parsed) json document
+     * Generates a IIIF v3 manifest based on the provided record
      * @param settings manifest settings object loaded from properties file
-     * @param jsonDoc parsed json document
+     * @param record record data
      * @return IIIF Manifest v3 object
      */
-    public static ManifestV3 getManifestV3(ManifestSettings settings, Object jsonDoc) {
-        String europeanaId = getEuropeanaId(jsonDoc);
+    public static ManifestV3 getManifestV3(ManifestSettings settings, EdmRecord record) {
+        return getManifestV3(settings, getManifestData(record));
+    }
+
+    /**
+     * Generates a IIIF v3 manifest based on the provided manifest data
+     * @param settings manifest settings object loaded from properties file
+     * @param data manifest data
+     * @return IIIF Manifest v3 object
+     */
+    public static ManifestV3 getManifestV3(ManifestSettings settings, ManifestData data) {
+        String europeanaId = data.getEuropeanaId();
         ManifestV3 manifest = new ManifestV3(europeanaId, getManifestId(europeanaId));
-        manifest.setWithin(EdmManifestMapping.getWithinV3(jsonDoc));
-        manifest.setLabel(EdmManifestMapping.getLabelsV3(jsonDoc));
-        manifest.setDescription(EdmManifestMapping.getDescriptionV3(jsonDoc));
+        manifest.setWithin(getWithinV3(data));
+        manifest.setLabel(getLabelsV3(data));
+        manifest.setDescription(getDescriptionV3(data));
         // TODO implement rest of v3 that is currently commented out
-        //manifest.setMetaData(EdmManifestMapping.getMetaDataV3());
-        //manifest.setThumbnail(getThumbnailImageV3(settings, europeanaId, jsonDoc));
-        manifest.setNavDate(getNavDate(europeanaId, jsonDoc));
-        //manifest.setAttributionV3(getAttributionV3(europeanaId, jsonDoc));
-        //manifest.setRights(getRights(europeanaId, jsonDoc));
+        //manifest.setMetaData(EdmManifestMapping.getMetaDataV3(data));
+        //manifest.setThumbnail(getThumbnailImageV3(data));
+        manifest.setNavDate(data.getNavDate());
+        //manifest.setAttributionV3(getAttributionV3(data));
+        //manifest.setRights(getRights(data));
         manifest.setSeeAlso(getDataSetsV3(europeanaId));
-        //manifest.setSequences(getSequencesV3(settings, europeanaId, jsonDoc));
+        //manifest.setSequences(getSequencesV3(settings, data));
         return manifest;
     }
 
     /**
      * Extract the Europeana object ID from the 'about' field.
-     * @param jsonDoc parsed json document
+     * @param record record data
      * @return string containing the Europeana ID of the object (dataset ID and record ID separated by a slash)
      */
-    public static String getEuropeanaId(Object jsonDoc) {
-        return JsonPath.parse(jsonDoc).read("$.object.about", String.class);
+    public static String getEuropeanaId(EdmRecord record) {
+        return record.getAbout();
     }
 
     /**
@@ -127,6 +185,16 @@ public final class EdmManifestMapping {
         return Definitions.CANVAS_ID.replace(Definitions.ID_PLACEHOLDER, europeanaId).concat(Integer.toString(order));
     }
 
+    /**
+     * Create a canvas page ID
+     * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
+     * @param page page number (first page is 1)
+     * @return String containing the canvas page ID
+     */
+    public static String getCanvasPageId(String europeanaId, int page) {
+        return Definitions.CANVAS_PAGE_ID.replace(Definitions.ID_PLACEHOLDER, europeanaId).concat(Integer.toString(page));
+    }
+
     /**
      * Create an annotation ID
      * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
@@ -146,75 +214,117 @@ public final class EdmManifestMapping {
         return Definitions.DATASET_ID_BASE_URL + europeanaId + postFix;
     }
 
+    /**
+     * Returns the ids of the collections (The European Library) that the record is part of
+     * @param record record data
+     * @return array of collection ids (empty if there are none)
+     */
+    public static String[] getWithin(EdmRecord record) {
+        List<String> result = new ArrayList<>();
+        for (LanguageValues isPartOf : getProxyValues(record, EdmProxy::getDctermsIsPartOf)) {
+            String[] collections = isPartOf.getValues("def");
+            if (collections == null) {
+                continue;
+            }
+            for (String collection : collections) {
+                if (collection.toLowerCase(Locale.getDefault()).startsWith("http://data.theeuropeanlibrary.org")
+                        || collection.toLowerCase(Locale.getDefault()).startsWith("https://data.theeuropeanlibrary.org")) {
+                    result.add(collection);
+                }
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
     /**
      *
-     * @param jsonDoc parsed json document
+     * @param data manifest data
      * @return
      */
-    public static String getWithinV2(Object jsonDoc) {
+    public static String getWithinV2(ManifestData data) {
         // TODO wait until V2 implementation for 'within' is clear
         return null;
     }
 
     /**
-     * @param jsonDoc parsed json document
+     * @param data manifest data
      * @return
      */
-    public static Collection[] getWithinV3(Object jsonDoc) {
-        List<Collection> result = new ArrayList<>();
-        // TODO I think we can incorporate the startsWith into the JsonPath read
-        List<String> collections = JsonPath.parse(jsonDoc).read("$.object.proxies[*].dctermsIsPartOf.def[*]", List.class);
-        for (String collection : collections) {
-            if (collection.toLowerCase(Locale.getDefault()).startsWith("http://data.theeuropeanlibrary.org")
-                    || collection.toLowerCase(Locale.getDefault()).startsWith("https://data.theeuropeanlibrary.org")) {
-                result.add(new Collection(collection));
-            }
+    public static Collection[] getWithinV3(ManifestData data) {
+        String[] within = data.getWithin();
+        Collection[] result = new Collection[within.length];
+        for (int i = 0; i < within.length; i++) {
+            result[i] = new Collection(within[i]);
         }
-        return result.toArray(new Collection[result.size()]);
+        return result;
     }
 
     /**
-     * We first check all proxies for a title. If there are no titles, then we check the description fields
-     * @param jsonDoc parsed json document
+     * Returns the label of the manifest. When extracting manifest data we first check all proxies for a title. If
+     * there are no titles, then we use the description fields
+     * @param data manifest data
      * @return
      */
-    public static LanguageMap getLabelsV3(Object jsonDoc)  {
-        LanguageMap[] maps = JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcTitle", LanguageMap[].class);
-        if (maps == null || maps.length == 0) {
-            maps = JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcDescription", LanguageMap[].class);
-        }
-        return mergeLanguageMaps(maps);
+    public static LanguageMap getLabelsV3(ManifestData data)  {
+        return toLanguageMap(data.getLabel());
     }
 
     /**
-     * We first check all proxies for a title. If there are no titles, then we check the description fields
-     * @param jsonDoc parsed json document
+     * Returns the label of the manifest. When extracting manifest data we first check all proxies for a title. If
+     * there are no titles, then we use the description fields
+     * @param data manifest data
      * @return array of LanguageObject
      */
-    public static LanguageObject[] getLabelsV2(Object jsonDoc) {
-        // we read everything in as LanguageMap[] because that best matches the EDM implementation, then we convert to LanguageObjects[]
-        LanguageMap labelsV3 = getLabelsV3(jsonDoc);
-        if (labelsV3 == null) {
+    public static LanguageObject[] getLabelsV2(ManifestData data) {
+        return toLanguageObjects(data.getLabel());
+    }
+
+    /**
+     * Returns the values from the proxy.dcDescription fields, but only if they aren't used as a label yet.
+     * @param data manifest data
+     * @return
+     */
+    public static LanguageMap getDescriptionV3(ManifestData data) {
+        return toLanguageMap(data.getDescription());
+    }
+
+    /**
+     * Returns the values from the proxy.dcDescription fields, but only if they aren't used as a label yet.
+     * @param data manifest data
+     * @return
+     */
+    public static LanguageObject[] getDescriptionV2(ManifestData data) {
+        return toLanguageObjects(data.getDescription());
+    }
+
+    /**
+     * This converts language values to a LanguageMap (v3)
+     */
+    private static LanguageMap toLanguageMap(LanguageValues languageValues) {
+        if (languageValues == null) {
             return null;
         }
-        return EdmManifestMapping.langMapsToObjects(labelsV3);
+        LanguageMap result = new LanguageMap();
+        for (int i = 0; i < languageValues.size(); i++) {
+            result.put(languageValues.getLanguage(i), languageValues.getValues(i));
+        }
+        return result;
     }
 
     /**
-     * This converts a LanguageMap array (v3) to a LanguageObject array (v2).
+     * This converts language values to a LanguageObject array (v2).
      */
-    private static LanguageObject[] langMapsToObjects(LinkedHashMap<String, String[]> map) {
-        if (map == null) {
+    private static LanguageObject[] toLanguageObjects(LanguageValues languageValues) {
+        if (languageValues == null) {
             return null;
         }
         List<LanguageObject> result = new ArrayList<>();
-            for (Map.Entry<String, String[]> entry : map.entrySet()) {
-                String language = entry.getKey();
-                String[] values = entry.getValue();
-                for (String value: values) {
-                    result.add(new LanguageObject(language, value));
-                }
+        for (int i = 0; i < languageValues.size(); i++) {
+            String language = languageValues.getLanguage(i);
+            for (String value : languageValues.getValues(i)) {
+                result.add(new LanguageObject(language, value));
             }
+        }
         if (result.isEmpty()) {
             return null;
         }
@@ -222,138 +332,141 @@ public final class EdmManifestMapping {
     }
 
     /**
-     * This merges an array of languagemaps into a single languagemap. We also check for empty maps and return null if
-     * the provided array is empty
+     * Returns the values of the provided proxy field for all proxies that have that field
      */
-    private static LanguageMap mergeLanguageMaps(LanguageMap[] maps) {
-        if (maps == null || maps.length == 0) {
-            return null;
-        } else if (maps.length == 1) {
-            return maps[0];
-        }
-        LanguageMap result = new LanguageMap();
-        for (LanguageMap map : maps) {
-            // we should not have duplicate keys in our data, but we check for that if debug is enabled
-            if (LOG.isDebugEnabled()) {
-                for(String key : map.keySet()) {
-                    if (result.keySet().contains(key)) {
-                        LOG.warn("Duplicate key found when merging language maps: key = {}", key);
-                    }
-                }
+    private static List<LanguageValues> getProxyValues(EdmRecord record, Function<EdmProxy, LanguageValues> field) {
+        List<LanguageValues> result = new ArrayList<>(record.getProxies().length);
+        for (EdmProxy proxy : record.getProxies()) {
+            LanguageValues values = field.apply(proxy);
+            if (values != null) {
+                result.add(values);
             }
-            result.putAll(map);
         }
         return result;
     }
 
     /**
-     * Returns the values from the proxy.dcDescription fields, but only if they aren't used as a label yet.
-     * @param jsonDoc parsed json document
-     * @return
+     * This merges a list of language values into a single language values object. If a language occurs more than once
+     * the last values are used. We return null if the provided list is empty
      */
-    public static LanguageMap getDescriptionV3(Object jsonDoc) {
-        if (JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcTitle", LanguageMap[].class).length > 0) {
-            return mergeLanguageMaps(JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcDescription", LanguageMap[].class));
+    private static LanguageValues mergeLanguageValues(List<LanguageValues> languageValues) {
+        if (languageValues.isEmpty()) {
+            return null;
+        } else if (languageValues.size() == 1) {
+            return languageValues.get(0);
         }
-        return null;
+        Map<String, String[]> result = new LinkedHashMap<>();
+        for (LanguageValues values : languageValues) {
+            for (int i = 0; i < values.size(); i++) {
+                String key = values.getLanguage(i);
+                // we should not have duplicate keys in our data, but we check for that if debug is enabled
+                if (LOG.isDebugEnabled() && result.containsKey(key)) {
+                    LOG.warn("Duplicate key found when merging language maps: key = {}", key);
+                }
+                result.put(key, values.getValues(i));
+            }
+        }
+        return new LanguageValues(result.keySet().toArray(new String[result.size()]),
+                result.values().toArray(new String[result.size()][]));
     }
 
     /**
-     * Returns the values from the proxy.dcDescription fields, but only if they aren't used as a label yet.
-     * @param jsonDoc parsed json document
-     * @return
+     * Reads the dcDate, dcFormat, dcRelation, dcType, dcLanguage and dcSource values from all proxies and puts them in a
+     * map with the appropriate label
+     * @param record record data
+     * @return map with labels and values, or null if there is no metadata
      */
-    public static LanguageObject[] getDescriptionV2(Object jsonDoc) {
-        // we read everything in as LanguageMap[] because that best matches the EDM implementation, then we convert to LanguageObjects[]
-        LanguageMap descriptionsV3 = getDescriptionV3(jsonDoc);
-        if (descriptionsV3 == null) {
+    public static LinkedHashMap<String, LanguageValues> getMetaData(EdmRecord record) {
+        LinkedHashMap<String, LanguageValues> result = new LinkedHashMap<>();
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcDate), "date");
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcFormat), "format");
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcRelation), "relation");
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcType), "type");
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcLanguage), "language");
+        addMetaData(result, getProxyValues(record, EdmProxy::getDcSource), "source");
+        if (result.isEmpty()) {
             return null;
         }
-        return EdmManifestMapping.langMapsToObjects(getDescriptionV3(jsonDoc));
+        return result;
     }
 
     /**
-     * Reads the dcDate, dcFormat, dcRelation, dcType, dcLanguage and dcSource values from all proxies and puts them in a
-     * map with the appropriate label
-     * @param jsonDoc parsed json document
-     * @return
+     * The metadata values of all proxies are combined into one language values object per label. Unlike labels and
+     * descriptions a language can occur more than once here. Languages without values are left out.
      */
-    public static eu.europeana.iiif.model.v2.MetaData[] getMetaDataV2(Object jsonDoc) {
-        Map<String, List<LanguageObject>> data = new LinkedHashMap<>();
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcDate", LanguageMap[].class), "date");
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcFormat", LanguageMap[].class), "format");
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcRelation", LanguageMap[].class), "relation");
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcType", LanguageMap[].class), "type");
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcLanguage", LanguageMap[].class), "language");
-        addMetaData(data, JsonPath.parse(jsonDoc).read("$.object.proxies[*].dcSource", LanguageMap[].class), "source");
-
-        List<eu.europeana.iiif.model.v2.MetaData> result = new LinkedList<>();
-        for (Map.Entry<String, List<LanguageObject>> entry : data.entrySet()) {
-            String label = entry.getKey();
-            List<LanguageObject> values = entry.getValue();
-            result.add(new eu.europeana.iiif.model.v2.MetaData(label, values.toArray(new LanguageObject[values.size()])));
+    private static void addMetaData(Map<String, LanguageValues> metaData, List<LanguageValues> dataToAdd, String fieldName) {
+        List<String> languages = new ArrayList<>();
+        List<String[]> values = new ArrayList<>();
+        for (LanguageValues languageValues : dataToAdd) {
+            for (int i = 0; i < languageValues.size(); i++) {
+                if (languageValues.getValues(i).length > 0) {
+                    languages.add(languageValues.getLanguage(i));
+                    values.add(languageValues.getValues(i));
+                }
+            }
         }
+        if (!languages.isEmpty()) {
+            metaData.put(fieldName, new LanguageValues(languages.toArray(new String[languages.size()]),
+                    values.toArray(new String[values.size()][])));
+        }
+    }
 
-        if (result.isEmpty()) {
+    /**
+     * Converts the metadata to v2 metadata objects. Note that for v2 if the language is 'def' we leave it out
+     * @param data manifest data
+     * @return
+     */
+    public static eu.europeana.iiif.model.v2.MetaData[] getMetaDataV2(ManifestData data) {
+        if (data.getMetaData() == null) {
             return null;
         }
+        List<eu.europeana.iiif.model.v2.MetaData> result = new ArrayList<>(data.getMetaData().size());
+        for (Map.Entry<String, LanguageValues> entry : data.getMetaData().entrySet()) {
+            result.add(new eu.europeana.iiif.model.v2.MetaData(entry.getKey(), toLanguageObjects(entry.getValue())));
+        }
         return result.toArray(new eu.europeana.iiif.model.v2.MetaData[result.size()]);
     }
 
     /**
-     * We read in metadata as a LanguageMap[], but we need to convert it to Map consisting of labels and List<LanguageObjects>
-     * Also if the key is 'def' we should leave that out (for v2)
-     */
-    private static void addMetaData(Map<String, List<LanguageObject>> metaData, LanguageMap[] dataToAdd, String fieldName) {
-        for (LanguageMap map : dataToAdd) {
-            for (Map.Entry<String, String[]> entry : map.entrySet()) {
-                String language = entry.getKey();
-                String[] values = entry.getValue();
-                for (String value: values) {
-                    List<LanguageObject> langObjects;
-                    if (!metaData.keySet().contains(fieldName)) {
-                        langObjects = new ArrayList<>();
-                        metaData.put(fieldName, langObjects);
-                    } else {
-                        langObjects = metaData.get(fieldName);
-                    }
-                    langObjects.add(new LanguageObject(language, value));
-                }
-            }
+     * Return the id of the thumbnail as defined in 'europeanaAggregation.edmPreview'
+     * @param record record data
+     * @return thumbnail id, or null if no edmPreview was found
+     */
+    public static String getThumbnailId(EdmRecord record) {
+        EdmEuropeanaAggregation europeanaAggregation = record.getEuropeanaAggregation();
+        String thumbnailId = (europeanaAggregation == null ? null : europeanaAggregation.getEdmPreview());
+        if (StringUtils.isEmpty(thumbnailId)) {
+            return null;
         }
+        return thumbnailId;
     }
 
     /**
-     * Return an with the id of the thumbnail as defined in 'europeanaAggregation.edmPreview'
-     * @param settings manifest settings object loaded from properties file
-     * @param jsonDoc parsed json document
-     * @return Image object, or null if no edmPreview was found
+     * Return an image with the id of the thumbnail
+     * @param data manifest data
+     * @return Image object, or null if there is no thumbnail
      */
-    public static eu.europeana.iiif.model.v2.Image getThumbnailImageV2(ManifestSettings settings, String europeanaId, Object jsonDoc) {
-        String[] thumbnailIds = JsonPath.parse(jsonDoc).read("$.object.europeanaAggregation[?(@.edmPreview)].edmPreview", String[].class);
-        String thumbnailId = (String) getFirstValueArray("thumbnail ids", europeanaId, thumbnailIds);
-        if (StringUtils.isEmpty(thumbnailId)) {
+    public static eu.europeana.iiif.model.v2.Image getThumbnailImageV2(ManifestData data) {
+        if (data.getThumbnailId() == null) {
             return null;
         }
         // TODO ?? implement width based on image = large/medium
-        return new eu.europeana.iiif.model.v2.Image(thumbnailId, null, null);
+        return new eu.europeana.iiif.model.v2.Image(data.getThumbnailId(), null, null);
     }
 
     /**
      * Return the first dctermsIssued date we can find in a proxy
      * Note that we assume that the desired value is in a mapping with a 'def' key
      * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
-     * @param jsonDoc parsed json document
+     * @param record record data
      * @return date string in xsd:datetime format (i.e. YYYY-MM-DDThh:mm:ssZ)
      */
-    public static String getNavDate(String europeanaId, Object jsonDoc) {
+    public static String getNavDate(String europeanaId, EdmRecord record) {
         LocalDate navDate = null;
-        LanguageMap[] proxiesLangDates = JsonPath.parse(jsonDoc).read("$.object.proxies[*].dctermsIssued", LanguageMap[].class);
-        for (LanguageMap langDates : proxiesLangDates) {
-            for (String[] dates : langDates.values()) {
+        for (LanguageValues langDates : getProxyValues(record, EdmProxy::getDctermsIssued)) {
+            for (int i = 0; i < langDates.size(); i++) {
                 // we assume there is only 1 value here
-                String date = (String) getFirstValueArray("navDate", europeanaId, dates);
-                // TODO make EdmDateStringToDate handle more different date strings (see EA-990)
+                String date = (String) getFirstValueArray("navDate", europeanaId, langDates.getValues(i));
                 navDate = EdmDateUtils.dateStringToDate(date);
                 if (navDate != null) {
                     break;
@@ -375,15 +488,18 @@ public final class EdmManifestMapping {
      * Return attribution text as a String
      * We take the value from the first 'textAttributionSnippet' field of a webResource we find in any aggregation.
      * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
-     * @param jsonDoc parsed json document
+     * @param record record data
      * @return
      */
-    public static String getAttributionV2(String europeanaId, Object jsonDoc) {
-        String[] attributions = JsonPath.parse(jsonDoc).read("$.object.aggregations[*].webResources[*].textAttributionSnippet", String[].class);
+    public static String getAttribution(String europeanaId, EdmRecord record) {
         // since there are usually many webresources we simply just pick the first one and ignore if there are others.
-        String attribution = (String) getFirstValueArray(null, europeanaId, attributions);
-        if (!StringUtils.isEmpty(attribution)) {
-            return attribution;
+        for (EdmAggregation aggregation : record.getAggregations()) {
+            for (EdmWebResource webResource : aggregation.getWebResources()) {
+                String attribution = webResource.getTextAttributionSnippet();
+                if (attribution != null) {
+                    return StringUtils.isEmpty(attribution) ? null : attribution;
+                }
+            }
         }
         return null;
     }
@@ -392,20 +508,25 @@ public final class EdmManifestMapping {
      * Return the first license description we find in any 'aggregation.edmRights' field. Note that we first try the europeanaAggregation and if
      * that doesn't contain an edmRights, we check the other aggregations
      * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
-     * @param jsonDoc parsed json document
+     * @param record record data
      * @return
      */
-    public static String getLicense(String europeanaId, Object jsonDoc) {
+    public static String getLicense(String europeanaId, EdmRecord record) {
         // edmRights may not exists in the europeanaAggregation
-        LanguageMap[] licenseMaps = JsonPath.parse(jsonDoc).read("$.object.europeanaAggregation[?(@.edmRights)].edmRights", LanguageMap[].class);
-        LanguageMap licenseMap = (LanguageMap) getFirstValueArray("licenseMap", europeanaId, licenseMaps);
-        if (licenseMap == null || licenseMap.values().isEmpty()) {
-            LanguageMap[] licenses = JsonPath.parse(jsonDoc).read("$.object.aggregations[*].edmRights", LanguageMap[].class);
-            licenseMap = (LanguageMap) getFirstValueArray("license", europeanaId, licenses);
+        EdmEuropeanaAggregation europeanaAggregation = record.getEuropeanaAggregation();
+        LanguageValues license = (europeanaAggregation == null ? null : europeanaAggregation.getEdmRights());
+        if (license == null || license.isEmpty()) {
+            List<LanguageValues> licenses = new ArrayList<>(record.getAggregations().length);
+            for (EdmAggregation aggregation : record.getAggregations()) {
+                if (aggregation.getEdmRights() != null) {
+                    licenses.add(aggregation.getEdmRights());
+                }
+            }
+            license = (LanguageValues) getFirstValueArray("license", europeanaId, licenses.toArray());
         }
 
-        if (licenseMap != null && !licenseMap.values().isEmpty()) {
-            return (String) getFirstValueArray("license text", europeanaId, licenseMap.values().iterator().next());
+        if (license != null && !license.isEmpty()) {
+            return (String) getFirstValueArray("license text", europeanaId, license.getValues(0));
         }
         return null;
     }
@@ -438,137 +559,239 @@ public final class EdmManifestMapping {
 
     /**
      *
-     * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
      * @param settings manifest settings object loaded from properties file*
-     * @param jsonDoc parsed json document
+     * @param data manifest data
      * @return
      */
-    public static eu.europeana.iiif.model.v2.Sequence[] getSequencesV2(ManifestSettings settings, String europeanaId, Object jsonDoc) {
-        String edmIsShownBy = (String) getFirstValueArray("edmIsShownBy", europeanaId,
-                JsonPath.parse(jsonDoc).read("$.object.aggregations[*].edmIsShownBy", String[].class));
-        List<WebResource> webResources = getWebResources(edmIsShownBy, jsonDoc);
-        Map<String, Object>[] services = JsonPath.parse(jsonDoc).read("$.object[?(@.services)].services[*]", Map[].class);
+    public static eu.europeana.iiif.model.v2.Sequence[] getSequencesV2(ManifestSettings settings, ManifestData data) {
+        ManifestData.CanvasData[] canvasData = data.getCanvases();
+        if (canvasData.length == 0) {
+            return null;
+        }
+        String europeanaId = data.getEuropeanaId();
+
+        // there should be only 1 sequence, so order number is always 1
+        eu.europeana.iiif.model.v2.Sequence[] result = new eu.europeana.iiif.model.v2.Sequence[1];
+        result[0] = new eu.europeana.iiif.model.v2.Sequence(getSequenceId(europeanaId, 1), data.getIsShownBy());
+        result[0].setStartCanvas(getCanvasId(europeanaId, 1));
+        if (isCanvasPaged(settings, canvasData.length)) {
+            // for very large records we only include the first page of canvases, the rest is served separately
+            result[0].setCanvases(getCanvasesV2(settings, europeanaId, canvasData, 0,
+                    Math.min(settings.getCanvasPageSize(), canvasData.length)));
+            result[0].setTotal(canvasData.length);
+            if (canvasData.length > settings.getCanvasPageSize()) {
+                result[0].setNext(getCanvasPageId(europeanaId, 2));
+            }
+        } else {
+            result[0].setCanvases(getCanvasesV2(settings, europeanaId, canvasData, 0, canvasData.length));
+        }
+        return result;
+    }
+
+    /**
+     * Generates a single page of canvases. Only the canvases on the requested page are generated, the sorted canvas
+     * data of the entire record is provided by the (cached) manifest data.
+     * @param settings manifest settings object loaded from properties file
+     * @param data manifest data
+     * @param page number of the requested page (first page is 1)
+     * @return canvas page, or null if the record's canvases are not split into pages or the page doesn't exist
+     */
+    public static eu.europeana.iiif.model.v2.CanvasPage getCanvasPageV2(ManifestSettings settings, ManifestData data, int page) {
+        ManifestData.CanvasData[] canvasData = data.getCanvases();
+        if (!isCanvasPaged(settings, canvasData.length)) {
+            return null;
+        }
+        int pageSize = settings.getCanvasPageSize();
+        int pages = (canvasData.length + pageSize - 1) / pageSize;
+        if (page < 1 || page > pages) {
+            return null;
+        }
+
+        String europeanaId = data.getEuropeanaId();
+        int startIndex = (page - 1) * pageSize;
+        eu.europeana.iiif.model.v2.CanvasPage result = new eu.europeana.iiif.model.v2.CanvasPage(europeanaId,
+                getCanvasPageId(europeanaId, page), data.getIsShownBy());
+        result.setWithin(getSequenceId(europeanaId, 1));
+        result.setStartIndex(startIndex);
+        result.setTotal(canvasData.length);
+        if (page > 1) {
+            result.setPrev(getCanvasPageId(europeanaId, page - 1));
+        }
+        if (page < pages) {
+            result.setNext(getCanvasPageId(europeanaId, page + 1));
+        }
+        result.setCanvases(getCanvasesV2(settings, europeanaId, canvasData, startIndex,
+                Math.min(startIndex + pageSize, canvasData.length)));
+        return result;
+    }
+
+    /**
+     * @return true if the canvases of a record should be split into pages
+     */
+    static boolean isCanvasPaged(ManifestSettings settings, int nrCanvases) {
+        int threshold = settings.getCanvasPagingThreshold();
+        return threshold > 0 && settings.getCanvasPageSize() > 0 && nrCanvases > threshold;
+    }
+
+    /**
+     * Generates the canvases for the provided range of canvas data (from inclusive, to exclusive)
+     */
+    private static eu.europeana.iiif.model.v2.Canvas[] getCanvasesV2(ManifestSettings settings, String europeanaId,
+                                                                     ManifestData.CanvasData[] canvasData, int from, int to) {
+        eu.europeana.iiif.model.v2.Canvas[] canvases = new eu.europeana.iiif.model.v2.Canvas[to - from];
+        for (int i = from; i < to; i++) {
+            canvases[i - from] = getCanvasV2(settings, europeanaId, i + 1, canvasData[i]);
+        }
+        return canvases;
+    }
+
+    /**
+     * Generates a new canvas, but note that we do not fill the otherContent (Full-Text) here. That is done later
+     */
+    private static eu.europeana.iiif.model.v2.Canvas getCanvasV2(ManifestSettings settings,
+                                                                 String europeanaId,
+                                                                 int order,
+                                                                 ManifestData.CanvasData canvasData) {
+        eu.europeana.iiif.model.v2.Canvas c = new eu.europeana.iiif.model.v2.Canvas(settings, getCanvasId(europeanaId, order), order);
+        c.setLabel("p. "+order);
+        c.setAttribution(canvasData.getAttribution());
+        c.setLicense(canvasData.getLicense());
+
+        c.setImages(new eu.europeana.iiif.model.v2.Annotation[1]);
+        c.getImages()[0] = new eu.europeana.iiif.model.v2.Annotation(getAnnotationId(europeanaId, order));
+        c.getImages()[0].setOn(c.getId());
+
+        eu.europeana.iiif.model.v2.AnnotationBody body = new eu.europeana.iiif.model.v2.AnnotationBody(canvasData.getWebResourceId());
+        body.setFormat(canvasData.getMimeType());
+        if (canvasData.getServiceId() != null) {
+            eu.europeana.iiif.model.v2.Service service = new eu.europeana.iiif.model.v2.Service(canvasData.getServiceId());
+            service.setProfile(canvasData.getServiceProfile());
+            body.setService(service);
+        }
+        c.getImages()[0].setResource(body);
+        return c;
+    }
+
+    /**
+     * Returns the data for all canvases, in the order in which they should be rendered
+     * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
+     * @param edmIsShownBy edmIsShownBy value of the record
+     * @param record record data
+     * @return array of canvas data (empty if there are no canvases)
+     */
+    public static ManifestData.CanvasData[] getCanvases(String europeanaId, String edmIsShownBy, EdmRecord record) {
+        List<EdmWebResource> webResources = getWebResources(edmIsShownBy, record);
 
         // create canvases in a particular order
-        List<WebResource> sorted;
+        List<EdmWebResource> sorted;
         try {
             sorted = WebResourceSorter.sort(webResources);
         } catch (DataInconsistentException e) {
             LOG.error("Error trying to sort webresources for {}. Cause: {}", europeanaId, e);
             sorted = webResources;
         }
-        int order = 1;
-        List<eu.europeana.iiif.model.v2.Canvas> canvases = new LinkedList<>();
-        for (WebResource webResource: sorted) {
-            canvases.add(getCanvas(settings, europeanaId, order, webResource, services));
-            order++;
+        ManifestData.CanvasData[] result = new ManifestData.CanvasData[sorted.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getCanvasData(europeanaId, sorted.get(i), record.getServices());
         }
+        return result;
+    }
 
-        if (!canvases.isEmpty()) {
-            // there should be only 1 sequence, so order number is always 1
-            eu.europeana.iiif.model.v2.Sequence[] result = new eu.europeana.iiif.model.v2.Sequence[1];
-            result[0] = new eu.europeana.iiif.model.v2.Sequence(getSequenceId(europeanaId, 1), edmIsShownBy);
-            result[0].setStartCanvas(getCanvasId(europeanaId, 1));
-            result[0].setCanvases(canvases.toArray(new eu.europeana.iiif.model.v2.Canvas[canvases.size()]));
-            return result;
+    /**
+     * Returns the edmIsShownBy value of the (first) aggregation
+     * @param europeanaId consisting of dataset ID and record ID separated by a slash (string should have a leading slash and not trailing slash)
+     * @param record record data
+     * @return edmIsShownBy value, or null if there is none
+     */
+    public static String getIsShownBy(String europeanaId, EdmRecord record) {
+        List<String> isShownBy = new ArrayList<>(record.getAggregations().length);
+        for (EdmAggregation aggregation : record.getAggregations()) {
+            if (aggregation.getEdmIsShownBy() != null) {
+                isShownBy.add(aggregation.getEdmIsShownBy());
+            }
         }
-        return null;
+        return (String) getFirstValueArray("edmIsShownBy", europeanaId, isShownBy.toArray());
     }
 
     /**
      * We should only generate a canvas for webresources that are either in the edmIsShownBy or in the hasViews
      * @param edmIsShownBy
-     * @param jsonDoc
+     * @param record
      * @return list of webresourcs that are either edmIsShownBy or hasView
      */
-    private static List<WebResource> getWebResources(String edmIsShownBy, Object jsonDoc) {
-
-        String[][] hasViews = JsonPath.parse(jsonDoc).read("$.object.aggregations[*].hasView", String[][].class);
-
-        List<String> validWebResources = new ArrayList<>();
+    private static List<EdmWebResource> getWebResources(String edmIsShownBy, EdmRecord record) {
+        Set<String> validWebResources = new HashSet<>();
         validWebResources.add(edmIsShownBy);
-        for (String[] hasView : hasViews) {
-            validWebResources.addAll(Arrays.asList(hasView));
+        for (EdmAggregation aggregation : record.getAggregations()) {
+            if (aggregation.getHasView() != null) {
+                Collections.addAll(validWebResources, aggregation.getHasView());
+            }
         }
 
         // get all webresources and check if they are edmIsShownBy or hasView
-        WebResource[] webResources = JsonPath.parse(jsonDoc).read("$.object.aggregations[*].webResources[*]", WebResource[].class);
-        List<WebResource> result = new ArrayList<>();
-        for (WebResource wr : webResources) {
-            if (validWebResources.contains(wr.getId())) {
-                result.add(wr);
-                LOG.trace("Valid webresource {} ", wr.getId());
-            } else {
-                LOG.debug("Skipping webresource {}", wr.getId());
+        List<EdmWebResource> result = new ArrayList<>();
+        for (EdmAggregation aggregation : record.getAggregations()) {
+            for (EdmWebResource wr : aggregation.getWebResources()) {
+                if (validWebResources.contains(wr.getId())) {
+                    result.add(wr);
+                    LOG.trace("Valid webresource {} ", wr.getId());
+                } else {
+                    LOG.debug("Skipping webresource {}", wr.getId());
+                }
             }
         }
         return result;
     }
 
     /**
-     * Generates a new canvas, but note that we do not fill the otherContent (Full-Text) here. That is done later
+     * Extracts the canvas data from a webresource
      */
-    private static eu.europeana.iiif.model.v2.Canvas getCanvas(ManifestSettings settings,
-                                                               String europeanaId,
-                                                               int order,
-                                                               WebResource webResource,
-                                                               Map<String, Object>[] services) {
-        eu.europeana.iiif.model.v2.Canvas c = new eu.europeana.iiif.model.v2.Canvas(settings, getCanvasId(europeanaId, order), order);
-
-        c.setLabel("p. "+order);
-
-        String attributionText = (String) webResource.get("textAttributionSnippet");
-        if (!StringUtils.isEmpty(attributionText)){
-            c.setAttribution(attributionText);
+    private static ManifestData.CanvasData getCanvasData(String europeanaId, EdmWebResource webResource, EdmService[] services) {
+        String attribution = webResource.getTextAttributionSnippet();
+        if (StringUtils.isEmpty(attribution)) {
+            attribution = null;
         }
 
-        LinkedHashMap<String, ArrayList<String>> license = (LinkedHashMap<String, ArrayList<String>>) webResource.get("webResourceEdmRights");
-        if (license != null && !license.values().isEmpty()) {
-            c.setLicense(license.values().iterator().next().get(0));
+        String license = null;
+        LanguageValues rights = webResource.getWebResourceEdmRights();
+        if (rights != null && !rights.isEmpty() && rights.getValues(0).length > 0) {
+            license = rights.getValues(0)[0];
         }
 
-        c.setImages(new eu.europeana.iiif.model.v2.Annotation[1]);
-        c.getImages()[0] = new eu.europeana.iiif.model.v2.Annotation(getAnnotationId(europeanaId, order));
-        c.getImages()[0].setOn(c.getId());
-
-        eu.europeana.iiif.model.v2.AnnotationBody body = new eu.europeana.iiif.model.v2.AnnotationBody((String) webResource.get("about"));
-        String ebuCoreMimeType = (String) webResource.get("ebuCoreHasMimeType");
-        if (!StringUtils.isEmpty(ebuCoreMimeType)) {
-            body.setFormat(ebuCoreMimeType);
+        String mimeType = webResource.getEbuCoreHasMimeType();
+        if (StringUtils.isEmpty(mimeType)) {
+            mimeType = null;
         }
 
-        List<String> serviceIds = (List<String>) webResource.get("svcsHasService");
-        if (serviceIds != null && !serviceIds.isEmpty()) {
-            String serviceId = (String) getFirstValueArray("service", europeanaId, serviceIds.toArray());
+        String serviceId = null;
+        String serviceProfile = null;
+        String[] serviceIds = webResource.getSvcsHasService();
+        if (serviceIds != null && serviceIds.length > 0) {
+            serviceId = (String) getFirstValueArray("service", europeanaId, serviceIds);
             LOG.trace("WebResource {} has serviceId {}", webResource.getId(), serviceId);
-            eu.europeana.iiif.model.v2.Service service = new eu.europeana.iiif.model.v2.Service(serviceId);
-            service.setProfile(lookupServiceDoapImplements(services, serviceId, europeanaId));
-            body.setService(service);
+            serviceProfile = lookupServiceDoapImplements(services, serviceId, europeanaId);
         } else {
             LOG.debug("No serviceId for webresource {}", webResource.getId());
         }
-        c.getImages()[0].setResource(body);
-        return c;
+        return new ManifestData.CanvasData(webResource.getId(), attribution, license, mimeType, serviceId, serviceProfile);
     }
 
     /**
      * Check if the array of services contains a service with the provided serviceId. If so we retrieve the doapImplements
      * field from that service;
      */
-    private static String lookupServiceDoapImplements(Map<String, Object>[] services, String serviceId, String europeanaId) {
+    private static String lookupServiceDoapImplements(EdmService[] services, String serviceId, String europeanaId) {
         String result = null;
-        for (Map<String, Object> s : services) {
-            String sId = (String) s.get("about");
+        for (EdmService s : services) {
+            String sId = s.getAbout();
             if (sId != null && sId.equalsIgnoreCase(serviceId)) {
-                // Note: there is a problem with cardinality of the doapImplements field. It should be a String, but at the moment
-                // it is defined in EDM as a String[]. So we need to check what we get here.
-                Object doapImplements = s.get("doapImplements");
-                if (doapImplements == null) {
+                // Note: the doapImplements field should be a String, but at the moment it is defined in EDM as a String[].
+                // EdmService accepts both, so we simply take the first value here.
+                String[] doapImplements = s.getDoapImplements();
+                if (doapImplements == null || doapImplements.length == 0) {
                     LOG.warn("Record {} has service {} with no doapImplements field", europeanaId, serviceId);
-                } else if (doapImplements instanceof List) {
-                    result = ((List<String>) doapImplements).get(0);
                 } else {
-                    result = (String) doapImplements;
+                    result = doapImplements[0];
                 }
                 break;
             }
@@ -598,12 +821,12 @@ public final class EdmManifestMapping {
     }
 
     /**
-     * Parses record information in json format and returns the record's 'timestamp_update' value
-     * @param json
+     * Returns the record's 'timestamp_update' value
+     * @param record record data
      * @return LocalDateTime object with the record's 'timestamp_update' value (UTC)
      */
-    public static ZonedDateTime getRecordTimestampUpdate(String json) {
-       String date = JsonPath.parse(json).read("$.object.timestamp_update", String.class);
+    public static ZonedDateTime getRecordTimestampUpdate(EdmRecord record) {
+       String date = record.getTimestampUpdate();
        if (StringUtils.isEmpty(date)) {
            return null;
        }
@@ -0,0 +1,71 @@
+package eu.europeana.iiif.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import eu.europeana.iiif.model.edm.EdmRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads record json (as returned by the Record API) into an EdmRecord object. There are two ways to do this:
+ * <ul>
+ *     <li>streaming: the record is read in a single pass directly from the json stream. Fields that are not part of
+ *     the EdmRecord classes are skipped without being materialized.</li>
+ *     <li>tree: the entire record json is parsed into a tree first, then the EdmRecord is read from that tree.</li>
+ * </ul>
+ * We use our own object mapper for this, so the serialization settings of the manifest object mapper (e.g. field
+ * visibility) don't affect how records are read.
+ */
+public class EdmRecordReader {
+
+    private static final String RECORD_FIELD = "object";
+
+    private final ObjectMapper mapper;
+    private final ObjectReader recordReader;
+    private final ObjectReader streamingRecordReader;
+
+    /**
+     * Create a new record reader
+     * @param lenient if true we also accept a single value where an array is expected (and vice versa), so records
+     *                with an unexpected field cardinality can still be read
+     */
+    public EdmRecordReader(boolean lenient) {
+        this.mapper = new ObjectMapper();
+        ObjectReader reader = mapper.readerFor(EdmRecord.class);
+        if (lenient) {
+            reader = reader.with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY,
+                    DeserializationFeature.UNWRAP_SINGLE_VALUE_ARRAYS);
+        }
+        this.recordReader = reader;
+        this.streamingRecordReader = recordReader.at("/" + RECORD_FIELD);
+    }
+
+    /**
+     * Reads a record in a single pass, directly from the json stream
+     * @param json record json
+     * @return EdmRecord object
+     * @throws IOException when the json can't be read or parsed
+     */
+    public EdmRecord readStreaming(InputStream json) throws IOException {
+        return streamingRecordReader.readValue(json);
+    }
+
+    /**
+     * Parses the entire record json into a tree and reads the record from that tree
+     * @param json record json
+     * @return EdmRecord object
+     * @throws IOException when the json can't be read or parsed
+     */
+    public EdmRecord readTree(InputStream json) throws IOException {
+        JsonNode tree = mapper.readTree(json);
+        JsonNode record = (tree == null ? null : tree.get(RECORD_FIELD));
+        if (record == null) {
+            throw new JsonMappingException(null, "No '" + RECORD_FIELD + "' field found in record json");
+        }
+        return recordReader.readValue(record);
+    }
+}
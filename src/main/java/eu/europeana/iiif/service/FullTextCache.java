@@ -0,0 +1,122 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the results of full text availability checks. Whether a full text exists rarely changes, so confirmed answers
+ * (exists or doesn't exist) can be kept for a long time. When we couldn't check (e.g. because of a timeout) the result
+ * is unknown; those results are only kept briefly, so we don't hammer a Full-Text API that is in trouble but we do
+ * check again soon.
+ */
+public class FullTextCache {
+
+    /**
+     * Result of a full text availability check
+     */
+    public enum Availability {
+        EXISTS(Boolean.TRUE), NOT_EXISTS(Boolean.FALSE), UNKNOWN(null);
+
+        private final Boolean exists;
+
+        Availability(Boolean exists) {
+            this.exists = exists;
+        }
+
+        /**
+         * @return true if the full text exists, false if it doesn't exist, null if unknown
+         */
+        public Boolean exists() {
+            return exists;
+        }
+
+        /**
+         * @param exists true if the full text exists, false if it doesn't exist, null if unknown
+         * @return corresponding availability value
+         */
+        public static Availability of(Boolean exists) {
+            if (exists == null) {
+                return UNKNOWN;
+            }
+            return exists ? EXISTS : NOT_EXISTS;
+        }
+    }
+
+    private final Cache<String, Availability> cache;
+
+    /**
+     * Create a new full text cache
+     * @param maxEntries maximum number of cached results
+     * @param ttlExists number of milliseconds we keep a result that a full text exists
+     * @param ttlNotExists number of milliseconds we keep a result that a full text doesn't exist
+     * @param ttlUnknown number of milliseconds we keep a result that we couldn't check (0 = don't keep)
+     */
+    public FullTextCache(long maxEntries, long ttlExists, long ttlNotExists, long ttlUnknown) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, Availability>() {
+                    @Override
+                    public long expireAfterCreate(String key, Availability value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(getTtl(value));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Availability value, long currentTime, long currentDuration) {
+                        return TimeUnit.MILLISECONDS.toNanos(getTtl(value));
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Availability value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    private long getTtl(Availability value) {
+                        switch (value) {
+                            case EXISTS:
+                                return ttlExists;
+                            case NOT_EXISTS:
+                                return ttlNotExists;
+                            default:
+                                return ttlUnknown;
+                        }
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param fullTextUrl url that was checked
+     * @return cached availability, or null if there is no cached result for the provided url
+     */
+    public Availability get(String fullTextUrl) {
+        return cache.getIfPresent(fullTextUrl);
+    }
+
+    /**
+     * Store the result of a full text availability check
+     * @param fullTextUrl url that was checked
+     * @param exists true if the full text exists, false if it doesn't exist, null if unknown
+     */
+    public void put(String fullTextUrl, Boolean exists) {
+        cache.put(fullTextUrl, Availability.of(exists));
+    }
+
+    /**
+     * @return hit, miss and eviction statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return approximate number of cached results
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,197 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps serialized manifests, so we don't have to generate a manifest again if the record hasn't changed. Manifests are
+ * identified by the manifest eTag (which is based on record id, record timestamp, app version and IIIF version) plus
+ * the options that influence the generated manifest (e.g. full text).
+ *
+ * The cache is bounded by the total size in bytes of all manifests. Manifests also expire after a configured time,
+ * because the availability of full texts can change without the record changing.
+ */
+public class ManifestCache {
+
+    private final Cache<String, CachedManifest> cache;
+
+    /**
+     * Create a new manifest cache
+     * @param maxBytes maximum total size in bytes of all cached manifests
+     * @param ttl number of milliseconds after which a cached manifest expires
+     */
+    public ManifestCache(long maxBytes, long ttl) {
+        this(maxBytes, ttl, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new manifest cache
+     * @param maxBytes maximum total size in bytes of all cached manifests
+     * @param ttl number of milliseconds after which a cached manifest expires
+     * @param executor executor used for eviction and other maintenance tasks
+     */
+    ManifestCache(long maxBytes, long ttl, Executor executor) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedManifest manifest) -> manifest.getSize())
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .executor(executor)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key manifest key
+     * @return cached manifest, or null if there is no cached manifest for the provided key
+     */
+    public CachedManifest get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Add or replace a manifest in the cache
+     * @param key manifest key
+     * @param manifest manifest to store
+     */
+    public void put(String key, CachedManifest manifest) {
+        cache.put(key, manifest);
+    }
+
+    /**
+     * Remove a manifest from the cache (if present)
+     * @param key manifest key
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Perform pending maintenance operations (e.g. evictions)
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return approximate number of manifests in the cache
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return approximate total size in bytes of all manifests in the cache
+     */
+    public long getWeightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Serialized manifest, optionally also gzip encoded, and its content type
+     */
+    public static class CachedManifest {
+
+        private final byte[] content;
+        private final byte[] gzipContent;
+        private final String contentType;
+        private final long created;
+        private final boolean fullTextUnknown;
+
+        /**
+         * Create a new cached manifest
+         * @param content serialized manifest
+         * @param contentType content type of the serialized manifest
+         */
+        public CachedManifest(byte[] content, String contentType) {
+            this(content, null, contentType);
+        }
+
+        /**
+         * Create a new cached manifest
+         * @param content serialized manifest
+         * @param gzipContent gzip encoded serialized manifest (can be null)
+         * @param contentType content type of the serialized manifest
+         */
+        public CachedManifest(byte[] content, byte[] gzipContent, String contentType) {
+            this(content, gzipContent, contentType, false);
+        }
+
+        /**
+         * Create a new cached manifest
+         * @param content serialized manifest
+         * @param gzipContent gzip encoded serialized manifest (can be null)
+         * @param contentType content type of the serialized manifest
+         * @param fullTextUnknown true if we couldn't check if a full text is available when the manifest was generated
+         */
+        public CachedManifest(byte[] content, byte[] gzipContent, String contentType, boolean fullTextUnknown) {
+            this(content, gzipContent, contentType, System.currentTimeMillis(), fullTextUnknown);
+        }
+
+        /**
+         * Create a cached manifest that was generated earlier (e.g. one that was loaded from disk)
+         */
+        CachedManifest(byte[] content, byte[] gzipContent, String contentType, long created) {
+            this(content, gzipContent, contentType, created, false);
+        }
+
+        private CachedManifest(byte[] content, byte[] gzipContent, String contentType, long created,
+                               boolean fullTextUnknown) {
+            this.content = content;
+            this.gzipContent = gzipContent;
+            this.contentType = contentType;
+            this.created = created;
+            this.fullTextUnknown = fullTextUnknown;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        /**
+         * @return gzip encoded serialized manifest, or null if not available
+         */
+        public byte[] getGzipContent() {
+            return gzipContent;
+        }
+
+        /**
+         * @return total size in bytes of the serialized manifest (plain and encoded)
+         */
+        public int getSize() {
+            return content.length + (gzipContent == null ? 0 : gzipContent.length);
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return time (in milliseconds since epoch) when this manifest was generated
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * @return true if we couldn't check if a full text is available when this manifest was generated, so full text
+         * links may be missing. Such manifests shouldn't be cached.
+         */
+        public boolean isFullTextUnknown() {
+            return fullTextUnknown;
+        }
+    }
+}
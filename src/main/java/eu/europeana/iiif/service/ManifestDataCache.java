@@ -0,0 +1,80 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.EdmRecord;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the format-neutral manifest data that was extracted from records. When a record is requested again (for example
+ * as a IIIF v3 manifest after it was requested as v2) we only have to render the cached data.
+ * Data is cached per Record API, record id and record update timestamp, so an updated record is always extracted
+ * again and records of different Record APIs (e.g. test environments) are never mixed up. Records without an update
+ * timestamp are not cached.
+ */
+public class ManifestDataCache {
+
+    private final Cache<String, ManifestData> cache;
+
+    /**
+     * Create a new manifest data cache
+     * @param maxEntries maximum number of cached manifest data objects
+     * @param ttl number of milliseconds we keep manifest data
+     */
+    public ManifestDataCache(long maxEntries, long ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached manifest data of the provided record. If there is nothing cached yet, the data is extracted
+     * with the provided function and cached. Concurrent requests for the same record wait for a single extraction.
+     * @param record record data
+     * @param extractor function that extracts the manifest data from the record
+     * @return manifest data
+     */
+    public ManifestData get(EdmRecord record, Function<EdmRecord, ManifestData> extractor) {
+        String key = getKey(record);
+        if (key == null) {
+            return extractor.apply(record);
+        }
+        return cache.get(key, k -> extractor.apply(record));
+    }
+
+    /**
+     * @param record record data
+     * @return cached manifest data, or null if there is no cached data for the provided record
+     */
+    public ManifestData getIfPresent(EdmRecord record) {
+        String key = getKey(record);
+        return (key == null ? null : cache.getIfPresent(key));
+    }
+
+    private static String getKey(EdmRecord record) {
+        if (record.getTimestampUpdate() == null) {
+            return null;
+        }
+        return record.getRecordApi() + " " + record.getAbout() + " " + record.getTimestampUpdate();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return approximate number of cached manifest data objects
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
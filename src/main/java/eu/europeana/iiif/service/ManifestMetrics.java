@@ -0,0 +1,101 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.http.pool.PoolStats;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes manifest service statistics (e.g. http connection pool usage and cache hits) via the Spring actuator /metrics
+ * endpoint
+ */
+public class ManifestMetrics implements PublicMetrics {
+
+    private static final String POOL_PREFIX = "httpclient.pool";
+    private static final String ASYNC_POOL_PREFIX = "httpclient.async-pool";
+    private static final String RECORD_CACHE_PREFIX = "cache.record";
+    private static final String MANIFEST_CACHE_PREFIX = "cache.manifest";
+    private static final String FULLTEXT_CACHE_PREFIX = "cache.fulltext";
+    private static final String MANIFEST_DATA_CACHE_PREFIX = "cache.manifest-data";
+    private static final String VALIDATOR_INDEX_PREFIX = "cache.validators";
+    private static final String MANIFEST_STORE_PREFIX = "store.manifest";
+    private static final String STALE_MANIFEST_CACHE_PREFIX = "cache.stale-manifest";
+
+    private ManifestService manifestService;
+
+    public ManifestMetrics(ManifestService manifestService) {
+        this.manifestService = manifestService;
+    }
+
+    /**
+     * @see PublicMetrics#metrics()
+     */
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> result = new ArrayList<>();
+        addPoolStats(result, POOL_PREFIX, manifestService.getConnectionPoolStats());
+        for (Map.Entry<String, PoolStats> routeStats : manifestService.getConnectionPoolRouteStats().entrySet()) {
+            addPoolStats(result, POOL_PREFIX + ".route." + routeStats.getKey(), routeStats.getValue());
+        }
+        addPoolStats(result, ASYNC_POOL_PREFIX, manifestService.getAsyncConnectionPoolStats());
+        RecordCache recordCache = manifestService.getRecordCache();
+        if (recordCache != null) {
+            addCacheStats(result, RECORD_CACHE_PREFIX, recordCache.getStats(), recordCache.size());
+            result.add(new Metric<>(RECORD_CACHE_PREFIX + ".bytes", recordCache.getWeightedSize()));
+            result.add(new Metric<>(RECORD_CACHE_PREFIX + ".not-modified", recordCache.getNotModifiedCount()));
+        }
+        ManifestCache manifestCache = manifestService.getManifestCache();
+        if (manifestCache != null) {
+            addCacheStats(result, MANIFEST_CACHE_PREFIX, manifestCache.getStats(), manifestCache.size());
+            result.add(new Metric<>(MANIFEST_CACHE_PREFIX + ".bytes", manifestCache.getWeightedSize()));
+        }
+        StaleManifestCache staleManifestCache = manifestService.getStaleManifestCache();
+        if (staleManifestCache != null) {
+            addCacheStats(result, STALE_MANIFEST_CACHE_PREFIX, staleManifestCache.getStats(), staleManifestCache.size());
+            result.add(new Metric<>(STALE_MANIFEST_CACHE_PREFIX + ".bytes", staleManifestCache.getWeightedSize()));
+        }
+        DiskManifestStore manifestStore = manifestService.getManifestStore();
+        if (manifestStore != null) {
+            result.add(new Metric<>(MANIFEST_STORE_PREFIX + ".hit", manifestStore.getHitCount()));
+            result.add(new Metric<>(MANIFEST_STORE_PREFIX + ".miss", manifestStore.getMissCount()));
+            result.add(new Metric<>(MANIFEST_STORE_PREFIX + ".size", manifestStore.size()));
+            result.add(new Metric<>(MANIFEST_STORE_PREFIX + ".bytes", manifestStore.getBytes()));
+        }
+        FullTextCache fullTextCache = manifestService.getFullTextCache();
+        if (fullTextCache != null) {
+            addCacheStats(result, FULLTEXT_CACHE_PREFIX, fullTextCache.getStats(), fullTextCache.size());
+        }
+        ManifestDataCache manifestDataCache = manifestService.getManifestDataCache();
+        if (manifestDataCache != null) {
+            addCacheStats(result, MANIFEST_DATA_CACHE_PREFIX, manifestDataCache.getStats(), manifestDataCache.size());
+        }
+        ValidatorIndex validatorIndex = manifestService.getValidatorIndex();
+        if (validatorIndex != null) {
+            addCacheStats(result, VALIDATOR_INDEX_PREFIX, validatorIndex.getStats(), validatorIndex.size());
+        }
+        return result;
+    }
+
+    private static void addCacheStats(List<Metric<?>> metrics, String prefix, CacheStats stats, long size) {
+        metrics.add(new Metric<>(prefix + ".hit", stats.hitCount()));
+        metrics.add(new Metric<>(prefix + ".miss", stats.missCount()));
+        metrics.add(new Metric<>(prefix + ".eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(prefix + ".size", size));
+    }
+
+    private static void addPoolStats(List<Metric<?>> metrics, String prefix, PoolStats stats) {
+        if (stats == null) {
+            return;
+        }
+        metrics.add(new Metric<>(prefix + ".leased", stats.getLeased()));
+        metrics.add(new Metric<>(prefix + ".pending", stats.getPending()));
+        metrics.add(new Metric<>(prefix + ".available", stats.getAvailable()));
+        metrics.add(new Metric<>(prefix + ".max", stats.getMax()));
+    }
+
+}
@@ -3,18 +3,21 @@ package eu.europeana.iiif.service;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
-import com.jayway.jsonpath.spi.json.JsonProvider;
-import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
-import com.jayway.jsonpath.spi.mapper.MappingProvider;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixProperty;
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.model.v2.CanvasPage;
 import eu.europeana.iiif.model.v2.FullText;
 import eu.europeana.iiif.model.v2.ManifestV2;
 import eu.europeana.iiif.model.v3.AnnotationPage;
 import eu.europeana.iiif.model.v3.ManifestV3;
+import eu.europeana.iiif.service.exception.CanvasPageNotFoundException;
 import eu.europeana.iiif.service.exception.FullTextCheckException;
 import eu.europeana.iiif.service.exception.IIIFException;
 import eu.europeana.iiif.service.exception.InvalidApiKeyException;
@@ -22,26 +25,61 @@ import eu.europeana.iiif.service.exception.RecordNotFoundException;
 import eu.europeana.iiif.service.exception.RecordParseException;
 import eu.europeana.iiif.service.exception.RecordRetrieveException;
 import ioinformarics.oss.jackson.module.jsonld.JsonldModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 /**
  * Service that loads record data, uses that to generate a Manifest object and serializes the manifest in JSON-LD
@@ -54,41 +92,90 @@ public class ManifestService {
 
     private static final Logger LOG = LogManager.getLogger(ManifestService.class);
 
+    // maximum number of blocking full text checks waiting for a thread
+    private static final int FULLTEXT_CHECK_QUEUE_SIZE = 1000;
+
     // create a single objectMapper for efficiency purposes (see https://github.com/FasterXML/jackson-docs/wiki/Presentation:-Jackson-Performance)
     private static ObjectMapper mapper = new ObjectMapper();
 
     private ManifestSettings settings;
-    private CloseableHttpClient httpClient = HttpClients.createDefault();
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
 
-    public ManifestService(ManifestSettings settings) {
-        this.settings = settings;
-        // configure jsonpath: we use jsonpath in combination with Jackson because that makes it easier to know what
-        // type of objects are returned (see also https://stackoverflow.com/a/40963445)
-        com.jayway.jsonpath.Configuration.setDefaults(new com.jayway.jsonpath.Configuration.Defaults() {
+    // for asynchronous requests we use a non-blocking http client and a separate thread pool for generating manifests
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient asyncHttpClient;
+    private ExecutorService mappingExecutor;
+    // blocking full text checks wait in their own (I/O) thread pool, so the mapping thread pool is only used for cpu work
+    private ExecutorService fullTextExecutor;
+    private RequestConfig asyncRecordRequestConfig;
+    private RequestConfig asyncFullTextRequestConfig;
+    // purge requests are done with the regular http client, but they shouldn't wait for a hanging CDN indefinitely
+    private RequestConfig cdnPurgeRequestConfig;
 
-            private final JsonProvider jsonProvider = new JacksonJsonNodeJsonProvider();
-            private final MappingProvider mappingProvider = new JacksonMappingProvider();
+    // reads record json into EdmRecord objects
+    private EdmRecordReader recordReader;
 
-            @Override
-            public JsonProvider jsonProvider() {
-                return jsonProvider;
-            }
+    // recently retrieved records and their validators, so we can do conditional requests to the Record API
+    private RecordCache recordCache;
+    // serialized manifests, so we don't have to generate a manifest again if the record didn't change
+    private ManifestCache manifestCache;
+    // last served manifest per request, so we can serve it stale while revalidating or when the Record API fails
+    private StaleManifestCache staleManifestCache;
+    // optional, serialized manifests stored on disk so they survive a restart
+    private DiskManifestStore manifestStore;
+    // results of full text availability checks
+    private FullTextCache fullTextCache;
+    // format-neutral manifest data, so a request for another IIIF version of a record doesn't have to extract it again
+    private ManifestDataCache manifestDataCache;
+    // validators of generated responses, so we can answer conditional requests without retrieving the record
+    private ValidatorIndex validatorIndex;
+    // Cache-Control values per dataset
+    private CachePolicy cachePolicy;
 
-            @Override
-            public MappingProvider mappingProvider() {
-                return mappingProvider;
-            }
+    // Spring proxy of this service, so our own calls to @HystrixCommand methods go through Hystrix as well
+    @Autowired
+    @Lazy
+    private ManifestService proxy;
 
-            @Override
-            public Set<Option> options() {
-                if (settings.getSuppressParseException()) {
-                    // we want to be fault tolerant in production, but for testing we may want to disable this option
-                    return EnumSet.of(Option.SUPPRESS_EXCEPTIONS);
-                } else {
-                    return EnumSet.noneOf(Option.class);
-                }
-            }
-        });
+    public ManifestService(ManifestSettings settings) {
+        this.settings = settings;
+
+        // we use a single pooled http client for all Record API and Full-Text API requests, so connections are reused
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.getHttpMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getHttpMaxConnectionsPerRoute());
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(settings.getHttpKeepAlive()))
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.getHttpIdleEviction(), TimeUnit.MILLISECONDS)
+                .build();
+        initAsyncHttpClient(settings);
+        cdnPurgeRequestConfig = createRequestConfig(settings.getCdnPurgeTimeout());
+        mappingExecutor = Executors.newFixedThreadPool(settings.getAsyncMappingThreads());
+        fullTextExecutor = new ThreadPoolExecutor(settings.getFullTextCheckThreads(), settings.getFullTextCheckThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(FULLTEXT_CHECK_QUEUE_SIZE));
+        recordCache = new RecordCache(settings.getRecordCacheMaxBytes(), settings.getRecordCacheTtl(),
+                settings.getApiKeyCacheTtl());
+        manifestCache = new ManifestCache(settings.getManifestCacheMaxBytes(), settings.getManifestCacheTtl());
+        manifestStore = openManifestStore(settings);
+        staleManifestCache = new StaleManifestCache(settings.getStaleManifestMaxBytes(), settings.getStaleManifestTtl(),
+                settings.getStaleManifestWhileRevalidate(), settings.getStaleManifestIfError());
+        fullTextCache = new FullTextCache(settings.getFullTextCacheMaxEntries(), settings.getFullTextCacheTtlExists(),
+                settings.getFullTextCacheTtlNotExists(), settings.getFullTextCacheTtlUnknown());
+        manifestDataCache = new ManifestDataCache(settings.getManifestDataCacheMaxEntries(),
+                settings.getManifestDataCacheTtl());
+        validatorIndex = new ValidatorIndex(settings.getValidatorIndexMaxEntries(), settings.getValidatorIndexTtl());
+        if (manifestStore != null) {
+            LOG.info("Restored {} indexed validators from manifest store", manifestStore.restoreValidators(validatorIndex));
+        }
+        cachePolicy = new CachePolicy(settings.getCacheControlMaxAge(), settings.getCacheControlSMaxAge(),
+                settings.getCacheControlStaleWhileRevalidate(), settings.getCacheControlStaleIfError(),
+                settings.getCacheControlDatasets());
+
+        // for production we want to be fault tolerant when reading record data, but for testing we may want to disable this
+        recordReader = new EdmRecordReader(settings.getSuppressParseException());
 
         // configure Jackson serialization
         mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
@@ -96,24 +183,412 @@ public class ManifestService {
         mapper.registerModule(new JsonldModule());
     }
 
+    /**
+     * Opens the disk manifest store, if configured. If the store can't be opened we continue without it.
+     */
+    private static DiskManifestStore openManifestStore(ManifestSettings settings) {
+        if (StringUtils.isEmpty(settings.getManifestStoreDirectory())) {
+            return null;
+        }
+        try {
+            return new DiskManifestStore(Paths.get(settings.getManifestStoreDirectory()),
+                    settings.getManifestStoreMaxBytes(), settings.getManifestStoreSegmentBytes(),
+                    settings.getManifestCacheTtl());
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error opening manifest store in {}, continuing without it", settings.getManifestStoreDirectory(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Use the keep-alive duration sent by the server, but if there isn't any we use our own default value
+     * (instead of keeping the connection alive indefinitely)
+     */
+    private static ConnectionKeepAliveStrategy createKeepAliveStrategy(long defaultKeepAlive) {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (keepAlive > 0) {
+                return keepAlive;
+            }
+            return defaultKeepAlive;
+        };
+    }
+
+    /**
+     * Setup the non-blocking http client that is used for asynchronous manifest requests. We use the same pool settings
+     * as for the regular http client
+     */
+    private void initAsyncHttpClient(ManifestSettings settings) {
+        try {
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Error creating asynchronous http client", e);
+        }
+        asyncConnectionManager.setMaxTotal(settings.getHttpMaxConnectionsTotal());
+        asyncConnectionManager.setDefaultMaxPerRoute(settings.getHttpMaxConnectionsPerRoute());
+        asyncHttpClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(settings.getHttpKeepAlive()))
+                .build();
+        asyncHttpClient.start();
+
+        asyncRecordRequestConfig = createRequestConfig(settings.getAsyncRecordApiTimeout());
+        asyncFullTextRequestConfig = createRequestConfig(settings.getAsyncFullTextApiTimeout());
+    }
+
+    private static RequestConfig createRequestConfig(int timeout) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Close the http clients and all connections in the pools
+     */
+    @PreDestroy
+    public void close() {
+        mappingExecutor.shutdown();
+        fullTextExecutor.shutdown();
+        if (manifestStore != null) {
+            manifestStore.close();
+        }
+        try {
+            httpClient.close();
+            asyncHttpClient.close();
+        } catch (IOException e) {
+            LOG.warn("Error closing http client", e);
+        }
+    }
+
     protected ObjectMapper getJsonMapper() {
         return mapper;
     }
 
+    /**
+     * @return total statistics of the http client connection pool (leased, pending and available connections)
+     */
+    public PoolStats getConnectionPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return http client connection pool statistics per route, the key is the host name (and port) of the route
+     */
+    public Map<String, PoolStats> getConnectionPoolRouteStats() {
+        Map<String, PoolStats> result = new LinkedHashMap<>();
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            result.put(route.getTargetHost().toHostString(), connectionManager.getStats(route));
+        }
+        return result;
+    }
+
+    /**
+     * @return record cache (for statistics)
+     */
+    public RecordCache getRecordCache() {
+        return recordCache;
+    }
+
+    /**
+     * @return manifest cache (for statistics)
+     */
+    public ManifestCache getManifestCache() {
+        return manifestCache;
+    }
+
+    /**
+     * @return stale manifest cache (for statistics)
+     */
+    public StaleManifestCache getStaleManifestCache() {
+        return staleManifestCache;
+    }
+
+    /**
+     * Stale manifests and indexed validators are only used for api keys that the Record API accepted recently (see
+     * api-key-cache.ttl-ms), otherwise we would bypass the api key check
+     */
+    private boolean isApiKeyAccepted(String wsKey, URL recordApiUrl) {
+        return recordCache.isApiKeyValid(getRecordApiBaseUrl(recordApiUrl) + " " + wsKey, settings.getApiKeyCacheTtl());
+    }
+
+    /**
+     * Returns the last served manifest of a request if it's stale, but may still be served while it's revalidated.
+     * Only if the provided api key was accepted by the Record API recently (otherwise we would bypass the api key check)
+     * @param key request key, this should identify the record, Record API, IIIF version and all options that influence
+     *            the generated manifest
+     * @param wsKey api key to send to record API
+     * @param recordApiUrl if not null the alternative Record API address that is used
+     * @return stale manifest, or null if there is none that can be served while revalidating
+     */
+    public StaleManifestCache.StaleManifest getStaleWhileRevalidate(String key, String wsKey, URL recordApiUrl) {
+        if (!isApiKeyAccepted(wsKey, recordApiUrl)) {
+            return null;
+        }
+        restoreStaleManifest(key);
+        return staleManifestCache.getStaleWhileRevalidate(key);
+    }
+
+    /**
+     * Returns the last served manifest of a request, to be used when the record can't be retrieved. As we can't check
+     * the api key in that case, only if the provided api key was accepted by the Record API recently (unless configured
+     * to serve stale manifests to any api key with a valid format)
+     * @param key request key
+     * @param wsKey api key to send to record API
+     * @param recordApiUrl if not null the alternative Record API address that is used
+     * @return last served manifest, or null if there is none, if it's too old or if the api key wasn't accepted recently
+     */
+    public StaleManifestCache.StaleManifest getStaleIfError(String key, String wsKey, URL recordApiUrl) {
+        if (!settings.isStaleManifestIfErrorAnyApiKey() && !isApiKeyAccepted(wsKey, recordApiUrl)) {
+            return null;
+        }
+        restoreStaleManifest(key);
+        return staleManifestCache.getStaleIfError(key);
+    }
+
+    /**
+     * After a restart the stale manifest cache is empty, so we look for the last stored manifest of the request in the
+     * disk manifest store (if used)
+     */
+    private void restoreStaleManifest(String key) {
+        if (manifestStore == null || staleManifestCache.contains(key)) {
+            return;
+        }
+        StaleManifestCache.StaleManifest stored = manifestStore.getStale(key);
+        if (stored != null) {
+            LOG.debug("Restored stale manifest {} from manifest store", key);
+            staleManifestCache.putIfAbsent(key, stored);
+        }
+    }
+
+    /**
+     * Keep the manifest that was served for a request (after its record was retrieved)
+     * @param key request key
+     * @param manifest serialized manifest
+     * @param eTag ETag of the manifest
+     * @param lastModified Last-Modified date of the manifest (record update timestamp)
+     */
+    public void cacheStaleManifest(String key, ManifestCache.CachedManifest manifest, String eTag,
+                                   ZonedDateTime lastModified) {
+        if (manifest.isFullTextUnknown()) {
+            return;
+        }
+        staleManifestCache.put(key, new StaleManifestCache.StaleManifest(manifest, eTag, lastModified));
+    }
+
+    /**
+     * @return disk manifest store (for statistics), or null if the store isn't used
+     */
+    public DiskManifestStore getManifestStore() {
+        return manifestStore;
+    }
+
+    /**
+     * @return full text availability cache (for statistics)
+     */
+    public FullTextCache getFullTextCache() {
+        return fullTextCache;
+    }
+
+    /**
+     * @return manifest data cache (for statistics)
+     */
+    public ManifestDataCache getManifestDataCache() {
+        return manifestDataCache;
+    }
+
+    /**
+     * @return validator index (for statistics)
+     */
+    public ValidatorIndex getValidatorIndex() {
+        return validatorIndex;
+    }
+
+    /**
+     * Returns the validators of a previously generated response, but only if the provided api key was accepted by the
+     * Record API recently (otherwise we would bypass the api key check)
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param wsKey api key to send to record API
+     * @param recordApiUrl if not null the alternative Record API address that was used
+     * @param variant type of response (e.g. IIIF version)
+     * @return indexed validators, or null if there are none (or if we can't use them)
+     */
+    public ValidatorIndex.Validators getIndexedValidators(String recordId, String wsKey, URL recordApiUrl, String variant) {
+        if (!isApiKeyAccepted(wsKey, recordApiUrl)) {
+            return null;
+        }
+        return validatorIndex.get(recordId, getValidatorVariant(recordApiUrl, variant));
+    }
+
+    /**
+     * Store the validators of a generated response, so subsequent conditional requests can be answered without
+     * retrieving the record
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param recordApiUrl if not null the alternative Record API address that was used
+     * @param variant type of response (e.g. IIIF version)
+     * @param eTag ETag of the response
+     * @param lastModified Last-Modified date of the response (record update timestamp)
+     */
+    public void indexValidators(String recordId, URL recordApiUrl, String variant, String eTag,
+                                ZonedDateTime lastModified) {
+        if (lastModified != null) {
+            validatorIndex.put(recordId, getValidatorVariant(recordApiUrl, variant),
+                    new ValidatorIndex.Validators(eTag, lastModified));
+        }
+    }
+
+    /**
+     * Removes the indexed validators, cached records and stale manifests of a record or of all records in a dataset,
+     * so the next request retrieves the (updated) record data again
+     * @param idPrefix either a record id ("/datasetid/recordid") or a dataset id ("/datasetid")
+     * @return number of removed validators
+     */
+    public long invalidateValidators(String idPrefix) {
+        String recordPath = settings.getRecordApiPath() + idPrefix;
+        boolean dataset = idPrefix.indexOf('/', 1) < 0;
+        recordCache.invalidateIf(key -> dataset ? key.contains(recordPath + "/") : key.endsWith(recordPath));
+        // stale manifests don't depend on the record version, so they would still be served after an update
+        long stale = staleManifestCache.invalidate(idPrefix);
+        if (manifestStore != null) {
+            // otherwise they would be restored from disk
+            manifestStore.invalidate(idPrefix);
+        }
+        long result = validatorIndex.invalidate(idPrefix);
+        LOG.info("Invalidated {} indexed validators and {} stale manifests for {}", result, stale, idPrefix);
+        return result;
+    }
+
+    private String getValidatorVariant(URL recordApiUrl, String variant) {
+        return getRecordApiBaseUrl(recordApiUrl) + " " + variant;
+    }
+
+    /**
+     * @param datasetId dataset id (without slashes)
+     * @return ids of the records of the dataset that were requested recently (i.e. that have indexed validators)
+     */
+    public Set<String> getIndexedRecordIds(String datasetId) {
+        return validatorIndex.getRecordIds(datasetId);
+    }
+
+    /**
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @return Cache-Control value for responses about the provided record
+     */
+    public String getCacheControl(String recordId) {
+        return cachePolicy.getCacheControl(recordId);
+    }
+
+    /**
+     * Asks the CDN to remove all responses that are tagged with the provided surrogate key
+     * @param surrogateKey surrogate key of a record or dataset (see {@link CacheUtils#addSurrogateKeys})
+     * @return true if the CDN accepted the purge request, false if it didn't or if no CDN purge url is configured
+     */
+    public boolean purgeCdn(String surrogateKey) {
+        String purgeUrl = settings.getCdnPurgeUrl();
+        if (StringUtils.isEmpty(purgeUrl)) {
+            return false;
+        }
+        HttpPost request = new HttpPost(purgeUrl.replace("<key>", surrogateKey));
+        request.setConfig(cdnPurgeRequestConfig);
+        String purgeHeader = settings.getCdnPurgeHeader();
+        int separator = (purgeHeader == null ? -1 : purgeHeader.indexOf(':'));
+        if (separator > 0) {
+            request.setHeader(purgeHeader.substring(0, separator).trim(), purgeHeader.substring(separator + 1).trim());
+        }
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int responseCode = response.getStatusLine().getStatusCode();
+            EntityUtils.consume(response.getEntity());
+            LOG.info("CDN purge of {}, status code = {}", surrogateKey, responseCode);
+            return responseCode >= HttpStatus.SC_OK && responseCode < HttpStatus.SC_MULTIPLE_CHOICES;
+        } catch (IOException e) {
+            LOG.warn("Error purging {} from CDN", surrogateKey, e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns a previously generated and serialized manifest
+     * @param key manifest key, this should identify the record version, IIIF version and all options that influence
+     *            the generated manifest
+     * @return cached manifest, or null if there is no cached manifest for the provided key
+     */
+    public ManifestCache.CachedManifest getCachedManifest(String key) {
+        ManifestCache.CachedManifest result = manifestCache.get(key);
+        if (result == null && manifestStore != null) {
+            result = manifestStore.get(key);
+            if (result != null) {
+                manifestCache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store a serialized manifest so it can be reused for subsequent requests. Manifests for which we couldn't check
+     * if a full text is available are not stored; the failed check is only cached for a short time (see
+     * fulltext-cache.ttl-unknown-ms) and the manifest shouldn't outlive it.
+     * @param key manifest key, this should identify the record version, IIIF version and all options that influence
+     *            the generated manifest
+     * @param manifest serialized manifest
+     */
+    public void cacheManifest(String key, ManifestCache.CachedManifest manifest) {
+        cacheManifest(key, manifest, null);
+    }
+
+    /**
+     * Store a serialized manifest together with the request it was generated for. If the disk manifest store is used,
+     * the request and the validators are stored with the manifest, so after a restart the validator index and stale
+     * manifests can be restored without retrieving the record.
+     * @param key manifest key
+     * @param manifest serialized manifest
+     * @param staleKey request key (see {@link #cacheStaleManifest})
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param recordApiUrl if not null the alternative Record API address that was used
+     * @param variant type of response (e.g. IIIF version)
+     * @param eTag ETag of the manifest
+     * @param lastModified Last-Modified date of the manifest (record update timestamp)
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    public void cacheManifest(String key, ManifestCache.CachedManifest manifest, String staleKey, String recordId,
+                              URL recordApiUrl, String variant, String eTag, ZonedDateTime lastModified) {
+        cacheManifest(key, manifest, new DiskManifestStore.StoredRequest(staleKey, recordId,
+                getValidatorVariant(recordApiUrl, variant), eTag, lastModified));
+    }
+
+    private void cacheManifest(String key, ManifestCache.CachedManifest manifest,
+                               DiskManifestStore.StoredRequest request) {
+        if (manifest.isFullTextUnknown()) {
+            LOG.debug("Not caching manifest {}, full text availability is unknown", key);
+            return;
+        }
+        manifestCache.put(key, manifest);
+        if (manifestStore != null) {
+            manifestStore.put(key, manifest, request);
+        }
+    }
+
+    /**
+     * @return total statistics of the asynchronous http client connection pool
+     */
+    public PoolStats getAsyncConnectionPoolStats() {
+        return asyncConnectionManager.getTotalStats();
+    }
+
     /**
      * Return record information in Json format from the default configured Record API
      *
      * @param recordId Europeana record id in the form of "/datasetid/recordid" (so with leading slash and without trailing slash)
      * @param wsKey api key to send to record API
      *
-     * @return record information in json format
+     * @return record data
      * @throws IIIFException (
      *      IllegalArgumentException if a parameter has an illegal format,
      *      InvalidApiKeyException if the provide key is not valid,
      *      RecordNotFoundException if there was a 404,
      *      RecordRetrieveException on all other problems)
      */
-    public String getRecordJson(String recordId, String wsKey) throws IIIFException {
+    public EdmRecord getRecordJson(String recordId, String wsKey) throws IIIFException {
         return getRecordJson(recordId, wsKey, null);
     }
 
@@ -123,8 +598,8 @@ public class ManifestService {
      * @param recordId Europeana record id in the form of "/datasetid/recordid" (so with leading slash and without trailing slash)
      * @param wsKey api key to send to record API
      * @param recordApiUrl if not null we will use the provided URL as the address of the Record API instead of the default configured address
-     *f
-     * @return record information in json format
+     *
+     * @return record data
      * @throws IIIFException (
      *      IllegalArgumentException if a parameter has an illegal format,
      *      InvalidApiKeyException if the provide key is not valid,
@@ -137,46 +612,198 @@ public class ManifestService {
             @HystrixProperty(name = "execution.isolation.thread.timeoutInMilliseconds", value = "30000"),
             @HystrixProperty(name = "fallback.enabled", value="false")
     })
-    public String getRecordJson(String recordId, String wsKey, URL recordApiUrl) throws IIIFException {
-        String result= null;
+    public EdmRecord getRecordJson(String recordId, String wsKey, URL recordApiUrl) throws IIIFException {
+        String cacheKey = getRecordCacheKey(recordId, recordApiUrl);
+        RecordCache.CachedRecord cached = recordCache.get(cacheKey);
+        if (isUsableWithoutRequest(cached, wsKey, recordApiUrl)) {
+            return cached.getDocument();
+        }
+        try (CloseableHttpResponse response = httpClient.execute(createRecordRequest(recordId, wsKey, recordApiUrl, cached))) {
+            return readRecordResponse(recordId, wsKey, recordApiUrl, cached, response);
+        } catch (IOException e) {
+            throw new RecordRetrieveException("Error retrieving record", e);
+        }
+    }
 
-        StringBuilder url;
-        if (recordApiUrl == null) {
-            url = new StringBuilder(settings.getRecordApiBaseUrl());
-        } else {
-            url = new StringBuilder(recordApiUrl.toString());
+    /**
+     * Return record information in Json format from an instance of the Record API, without blocking the calling thread.
+     * Note that this doesn't use Hystrix, the maximum duration of the request is set in the http client configuration.
+     *
+     * @param recordId Europeana record id in the form of "/datasetid/recordid" (so with leading slash and without trailing slash)
+     * @param wsKey api key to send to record API
+     * @param recordApiUrl if not null we will use the provided URL as the address of the Record API instead of the default configured address
+     * @return future containing the record data. If there is a problem, the future
+     * completes exceptionally with the same IIIFExceptions as {@link #getRecordJson(String, String, URL)}
+     */
+    public CompletableFuture<EdmRecord> getRecordJsonAsync(String recordId, String wsKey, URL recordApiUrl) {
+        RecordCache.CachedRecord cached = recordCache.get(getRecordCacheKey(recordId, recordApiUrl));
+        if (isUsableWithoutRequest(cached, wsKey, recordApiUrl)) {
+            return CompletableFuture.completedFuture(cached.getDocument());
         }
-        url.append(settings.getRecordApiPath());
-        url.append(recordId);
+        HttpGet request = createRecordRequest(recordId, wsKey, recordApiUrl, cached);
+        request.setConfig(asyncRecordRequestConfig);
+        // parsing is done in the mapping thread pool, so we don't block the http client's I/O threads
+        return executeAsync(request).handleAsync((response, error) -> {
+            if (error != null) {
+                throw new CompletionException(new RecordRetrieveException("Error retrieving record", error));
+            }
+            try {
+                return readRecordResponse(recordId, wsKey, recordApiUrl, cached, response);
+            } catch (IIIFException e) {
+                throw new CompletionException(e);
+            } catch (IOException e) {
+                throw new CompletionException(new RecordRetrieveException("Error retrieving record", e));
+            }
+        }, mappingExecutor);
+    }
+
+    private String getRecordUrl(String recordId, String wsKey, URL recordApiUrl) {
+        StringBuilder url = new StringBuilder(getRecordCacheKey(recordId, recordApiUrl));
         url.append(".json?wskey=");
         url.append(wsKey);
+        return url.toString();
+    }
 
-        try {
-            String recordUrl = url.toString();
-            try (CloseableHttpResponse response = httpClient.execute(new HttpGet(recordUrl))) {
-                int responseCode = response.getStatusLine().getStatusCode();
-                LOG.debug("Record request: {}, status code = {}", recordId, responseCode);
-                if (responseCode == HttpStatus.SC_UNAUTHORIZED) {
-                    throw new InvalidApiKeyException("API key is not valid");
-                } else if (responseCode == HttpStatus.SC_NOT_FOUND) {
-                    throw new RecordNotFoundException("Record with id '"+recordId+"' not found");
-                } else if (responseCode != HttpStatus.SC_OK) {
-                    throw new RecordRetrieveException("Error retrieving record: "+response.getStatusLine().getReasonPhrase());
-                }
+    /**
+     * Cached records are identified by the Record API address and record id (so without the api key)
+     */
+    private String getRecordCacheKey(String recordId, URL recordApiUrl) {
+        return getRecordApiBaseUrl(recordApiUrl) + settings.getRecordApiPath() + recordId;
+    }
 
-                HttpEntity entity = response.getEntity();
-                if (entity != null) {
-                    result = EntityUtils.toString(entity);
-                    LOG.debug("Record request: {}, response = {}", recordId, result);
-                    EntityUtils.consume(entity); // make sure entity is consumed fully so connection can be reused
-                } else {
-                    LOG.warn("Request entity = null");
-                }
+    private String getRecordApiBaseUrl(URL recordApiUrl) {
+        if (recordApiUrl == null) {
+            return settings.getRecordApiBaseUrl();
+        }
+        return recordApiUrl.toString();
+    }
+
+    /**
+     * A cached record can be used without contacting the Record API if it's still fresh, but only if the provided api
+     * key was accepted by that Record API recently (otherwise we would bypass the api key check)
+     */
+    private boolean isUsableWithoutRequest(RecordCache.CachedRecord cached, String wsKey, URL recordApiUrl) {
+        return recordCache.isFresh(cached) && recordCache.isApiKeyValid(getRecordApiBaseUrl(recordApiUrl) + " " + wsKey);
+    }
+
+    /**
+     * Creates a Record API request. If we have a cached version of the record, we add its validators so the Record API
+     * can tell us if the cached version is still up-to-date
+     */
+    private HttpGet createRecordRequest(String recordId, String wsKey, URL recordApiUrl, RecordCache.CachedRecord cached) {
+        HttpGet request = new HttpGet(getRecordUrl(recordId, wsKey, recordApiUrl));
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Checks the status code of a Record API response and parses the record data directly from the response stream.
+     * If the Record API responds with 304 Not Modified we return the cached record instead.
+     */
+    private EdmRecord readRecordResponse(String recordId, String wsKey, URL recordApiUrl, RecordCache.CachedRecord cached,
+                                         HttpResponse response) throws IIIFException, IOException {
+        EdmRecord result = null;
+        String cacheKey = getRecordCacheKey(recordId, recordApiUrl);
+        String apiKey = getRecordApiBaseUrl(recordApiUrl) + " " + wsKey;
+        int responseCode = response.getStatusLine().getStatusCode();
+        LOG.debug("Record request: {}, status code = {}", recordId, responseCode);
+        if (responseCode == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+            EntityUtils.consume(response.getEntity());
+            recordCache.setApiKeyValid(apiKey, true);
+            recordCache.notModified(cacheKey, cached);
+            return cached.getDocument();
+        } else if (responseCode == HttpStatus.SC_UNAUTHORIZED) {
+            recordCache.setApiKeyValid(apiKey, false);
+            throw new InvalidApiKeyException("API key is not valid");
+        } else if (responseCode == HttpStatus.SC_NOT_FOUND) {
+            recordCache.invalidate(cacheKey);
+            throw new RecordNotFoundException("Record with id '"+recordId+"' not found");
+        } else if (responseCode != HttpStatus.SC_OK) {
+            throw new RecordRetrieveException("Error retrieving record: "+response.getStatusLine().getReasonPhrase());
+        }
+
+        recordCache.setApiKeyValid(apiKey, true);
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            CountingInputStream content = new CountingInputStream(entity.getContent());
+            result = parseRecord(recordId, content);
+            if (result != null) {
+                // records of different Record APIs can have the same id and update timestamp, but different data
+                result = result.withRecordApi(getRecordApiBaseUrl(recordApiUrl));
             }
+            LOG.trace("Record request: {}, response = {}", recordId, result);
+            EntityUtils.consume(entity); // make sure entity is consumed fully so connection can be reused
+            long size = entity.getContentLength() >= 0 ? entity.getContentLength() : content.getCount();
+            cacheRecord(cacheKey, result, size, response);
+        } else {
+            LOG.warn("Request entity = null");
+        }
+        return result;
+    }
+
+    /**
+     * Stores the record in the cache, together with the validators that the Record API sent (if any)
+     */
+    private void cacheRecord(String cacheKey, EdmRecord record, long size, HttpResponse response) {
+        if (record == null) {
+            recordCache.invalidate(cacheKey);
+            return;
+        }
+        Header eTag = response.getFirstHeader(HttpHeaders.ETAG);
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        recordCache.put(cacheKey, new RecordCache.CachedRecord(record,
+                eTag == null ? null : eTag.getValue(),
+                lastModified == null ? null : lastModified.getValue(),
+                size));
+    }
+
+    /**
+     * Reads record json data into an EdmRecord object. We read the data only once, the same object is used for all
+     * subsequent processing (timestamp, mapping and full text check).
+     * If the streaming record parser is configured, the record is read directly from the json stream and all fields
+     * that are not needed for the mapping are skipped. Otherwise the entire json is parsed into a tree first.
+     */
+    private EdmRecord parseRecord(String recordId, InputStream json) throws IIIFException {
+        try {
+            if (settings.isRecordParserStreaming()) {
+                return recordReader.readStreaming(json);
+            }
+            return recordReader.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new RecordParseException("Error parsing data of record " + recordId + ": " + e.getMessage(), e);
         } catch (IOException e) {
-            throw new RecordRetrieveException("Error retrieving record", e);
+            throw new RecordRetrieveException("Error reading data of record " + recordId, e);
         }
+    }
+
+    /**
+     * Executes the provided request using the non-blocking http client
+     */
+    private CompletableFuture<HttpResponse> executeAsync(HttpUriRequest request) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        asyncHttpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
 
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
         return result;
     }
 
@@ -200,31 +827,57 @@ public class ManifestService {
      * Performs a HEAD request for a particular annotation page to see if the full text page exists or not
      * @param fullTextUrl url to which HEAD request is sent
      * @return true if it exists, false if it doesn't exists, null if we got no response
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
      */
-    @HystrixCommand(commandProperties = {
+    @HystrixCommand(ignoreExceptions = {InvalidApiKeyException.class}, commandProperties = {
             @HystrixProperty(name = "execution.isolation.thread.timeoutInMilliseconds", value = "5000"),
             @HystrixProperty(name = "fallback.enabled", value="true")
     }, fallbackMethod = "fallbackExistsFullText")
     public Boolean existsFullText(String fullTextUrl) throws IIIFException {
-        Boolean result;
-        try {
-            try (CloseableHttpResponse response = httpClient.execute(new HttpHead(fullTextUrl))) {
-                int responseCode = response.getStatusLine().getStatusCode();
-                LOG.debug("Full-Text head request: {}, status code = {}", fullTextUrl, responseCode);
-                if (responseCode == HttpStatus.SC_UNAUTHORIZED) {
-                    throw new InvalidApiKeyException("API key is not valid");
-                } else if (responseCode == HttpStatus.SC_NOT_FOUND) {
-                    result = Boolean.FALSE;
-                } else if (responseCode == HttpStatus.SC_OK) {
-                    result = Boolean.TRUE;
-                } else {
-                    throw new FullTextCheckException("Error checking if full text exists: "+response.getStatusLine().getReasonPhrase());
-                }
-            }
+        try (CloseableHttpResponse response = httpClient.execute(new HttpHead(fullTextUrl))) {
+            return readFullTextResponse(fullTextUrl, response);
         } catch (IOException e) {
             throw new FullTextCheckException("Error checking if full text exists", e);
         }
-        return result;
+    }
+
+    /**
+     * Performs a HEAD request for a particular annotation page without blocking the calling thread. The request
+     * timeout is set by the fulltext-api.async-timeout setting.
+     * @param fullTextUrl url to which HEAD request is sent
+     * @return future with true if it exists, false if it doesn't exists, null if we got no (proper) response. The
+     * future completes exceptionally with an InvalidApiKeyException when the Full-Text API doesn't accept our request
+     */
+    public CompletableFuture<Boolean> existsFullTextAsync(String fullTextUrl) {
+        HttpHead request = new HttpHead(fullTextUrl);
+        request.setConfig(asyncFullTextRequestConfig);
+        return executeAsync(request).handle((response, error) -> {
+            if (error != null) {
+                LOG.warn("Error checking if full text {} exists", fullTextUrl, error);
+                return null;
+            }
+            try {
+                return readFullTextResponse(fullTextUrl, response);
+            } catch (InvalidApiKeyException e) {
+                throw new CompletionException(e);
+            } catch (IIIFException e) {
+                LOG.warn("Error checking if full text {} exists", fullTextUrl, e);
+                return null;
+            }
+        });
+    }
+
+    private Boolean readFullTextResponse(String fullTextUrl, HttpResponse response) throws IIIFException {
+        int responseCode = response.getStatusLine().getStatusCode();
+        LOG.debug("Full-Text head request: {}, status code = {}", fullTextUrl, responseCode);
+        if (responseCode == HttpStatus.SC_UNAUTHORIZED) {
+            throw new InvalidApiKeyException("API key is not valid");
+        } else if (responseCode == HttpStatus.SC_NOT_FOUND) {
+            return Boolean.FALSE;
+        } else if (responseCode == HttpStatus.SC_OK) {
+            return Boolean.TRUE;
+        }
+        throw new FullTextCheckException("Error checking if full text exists: "+response.getStatusLine().getReasonPhrase());
     }
 
     @SuppressWarnings({"unused", "squid:S2447"}) // prevent false positive, method is used by hysterix as fallback
@@ -232,28 +885,67 @@ public class ManifestService {
         return null; // we return null, meaning that we were not able to check if a full text exists or not.
     }
 
+    /**
+     * Checks if a full text exists in the full text check thread pool, using a cached result if available. The request
+     * is done with the (blocking) Hystrix command, so it has a timeout, a circuit breaker and a fallback.
+     * @param fullTextUrl url to which HEAD request is sent
+     * @return future with true if it exists, false if it doesn't exists, null if we couldn't check (also when there are
+     * too many checks waiting already)
+     */
+    private CompletableFuture<Boolean> existsFullTextCached(String fullTextUrl) {
+        FullTextCache.Availability cached = fullTextCache.get(fullTextUrl);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.exists());
+        }
+        ManifestService hystrix = (proxy == null ? this : proxy);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Boolean result = hystrix.existsFullText(fullTextUrl);
+                    fullTextCache.put(fullTextUrl, result);
+                    return result;
+                } catch (IIIFException e) {
+                    throw new CompletionException(e);
+                }
+            }, fullTextExecutor);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Too many full text checks waiting, skipping check of {}", fullTextUrl);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Checks if a full text exists without blocking the calling thread, using a cached result if available.
+     * @param fullTextUrl url to which HEAD request is sent
+     * @return future with true if it exists, false if it doesn't exists, null if we couldn't check
+     */
+    private CompletableFuture<Boolean> existsFullTextCachedAsync(String fullTextUrl) {
+        FullTextCache.Availability cached = fullTextCache.get(fullTextUrl);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.exists());
+        }
+        return existsFullTextAsync(fullTextUrl).thenApply(result -> {
+            fullTextCache.put(fullTextUrl, result);
+            return result;
+        });
+    }
+
     /**
      * Generates a manifest object for IIIF v2 filled with data that is extracted from the provided JSON
-     * @param json record data in JSON format
+     * @param record record data
      * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
      *                   annotation page
      * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
      * @return Manifest v2 object
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
      */
-    public ManifestV2 generateManifestV2 (String json, boolean addFullText, URL fullTextApi)    {
+    public ManifestV2 generateManifestV2 (EdmRecord record, boolean addFullText, URL fullTextApi)
+            throws InvalidApiKeyException {
         long start = System.currentTimeMillis();
-        Object document = com.jayway.jsonpath.Configuration.defaultConfiguration().jsonProvider().parse(json);
-        ManifestV2 result = EdmManifestMapping.getManifestV2(settings, document);
-
-        if (addFullText) {
-            try {
-                fillInFullTextLinksV2(result, fullTextApi);
-            } catch (IIIFException ie) {
-                LOG.error("Error adding full text links", ie);
-            }
-        } else {
-            LOG.debug("Skipping full text link generation");
-        }
+        // the full text check runs in parallel with the mapping
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, false);
+        ManifestV2 result = createManifestV2(record);
+        fillInFullTextLinksV2(result, fullTextApi, joinFullTextCheck(fullTextExists));
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Generated in {} ms", System.currentTimeMillis() - start);
@@ -261,101 +953,312 @@ public class ManifestService {
         return result;
     }
 
+    /**
+     * Generates a manifest object for IIIF v2 using the thread pool for asynchronous requests. If a full text check
+     * is needed, this is done using the non-blocking http client.
+     * @param record record data
+     * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
+     *                   annotation page
+     * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
+     * @return future containing the Manifest v2 object
+     */
+    public CompletableFuture<ManifestV2> generateManifestV2Async(EdmRecord record, boolean addFullText, URL fullTextApi) {
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, true);
+        return CompletableFuture.supplyAsync(() -> createManifestV2(record), mappingExecutor)
+                .thenCombine(fullTextExists, (manifest, exists) -> fillInFullTextLinksV2(manifest, fullTextApi, exists));
+    }
+
+    /**
+     * Generates a single page of canvases for IIIF v2. This is only possible for records that have so many canvases
+     * that the manifest contains only the first page (see canvas.paging-threshold setting).
+     * @param record record data
+     * @param page number of the requested page (first page is 1)
+     * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
+     *                   annotation page
+     * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
+     * @return canvas page v2 object
+     * @throws CanvasPageNotFoundException when the record's canvases are not split into pages or the page doesn't exist
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
+     */
+    public CanvasPage generateCanvasPageV2(EdmRecord record, int page, boolean addFullText, URL fullTextApi)
+            throws CanvasPageNotFoundException, InvalidApiKeyException {
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, false);
+        CanvasPage result = EdmManifestMapping.getCanvasPageV2(settings, getManifestData(record), page);
+        if (result == null) {
+            throw new CanvasPageNotFoundException("Canvas page " + page + " not found for record "
+                    + EdmManifestMapping.getEuropeanaId(record));
+        }
+        if (isFullTextCandidate(result.getCanvases(), result.getIsShownBy())
+                && Boolean.TRUE.equals(joinFullTextCheck(fullTextExists))) {
+            addFullTextLinksV2(result.getEuropeanaId(), result.getCanvases(), fullTextApi);
+        }
+        return result;
+    }
+
+    private ManifestV2 createManifestV2(EdmRecord record) {
+        return EdmManifestMapping.getManifestV2(settings, getManifestData(record));
+    }
+
     /**
      * Generates a manifest object for IIIF v3 filled with data that is extracted from the provided JSON
-     * @param json record data in JSON format
+     * @param record record data
      * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
      *                   annotation page
      * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
      * @return Manifest v3 object
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
      */
-    public ManifestV3 generateManifestV3 (String json, boolean addFullText, URL fullTextApi)  {
+    public ManifestV3 generateManifestV3 (EdmRecord record, boolean addFullText, URL fullTextApi)
+            throws InvalidApiKeyException {
         long start = System.currentTimeMillis();
-        Object document = com.jayway.jsonpath.Configuration.defaultConfiguration().jsonProvider().parse(json);
-        ManifestV3 result = EdmManifestMapping.getManifestV3(settings, document);
+        // the full text check runs in parallel with the mapping
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, false);
+        ManifestV3 result = createManifestV3(record);
+        fillInFullTextLinksV3(result, fullTextApi, joinFullTextCheck(fullTextExists));
 
-        if (addFullText) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Generated in {} ms ", System.currentTimeMillis() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Generates a manifest object for IIIF v3 using the thread pool for asynchronous requests. If a full text check
+     * is needed, this is done using the non-blocking http client.
+     * @param record record data
+     * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
+     *                   annotation page
+     * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
+     * @return future containing the Manifest v3 object
+     */
+    public CompletableFuture<ManifestV3> generateManifestV3Async(EdmRecord record, boolean addFullText, URL fullTextApi) {
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, true);
+        return CompletableFuture.supplyAsync(() -> createManifestV3(record), mappingExecutor)
+                .thenCombine(fullTextExists, (manifest, exists) -> fillInFullTextLinksV3(manifest, fullTextApi, exists));
+    }
+
+    private ManifestV3 createManifestV3(EdmRecord record) {
+        return EdmManifestMapping.getManifestV3(settings, getManifestData(record));
+    }
+
+    /**
+     * Generates a IIIF v2 manifest that is written directly from the manifest data when it's serialized, so no
+     * ManifestV2 object is created (see manifest-writer setting). The serialized result is the same as that of
+     * {@link #generateManifestV2(EdmRecord, boolean, URL)}.
+     * @param record record data
+     * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
+     *                   annotation page
+     * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
+     * @return direct manifest, ready to be serialized
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
+     */
+    public DirectManifest generateDirectManifestV2(EdmRecord record, boolean addFullText, URL fullTextApi)
+            throws InvalidApiKeyException {
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, false);
+        ManifestData data = getManifestData(record);
+        Boolean exists = joinFullTextCheck(fullTextExists);
+        return DirectManifest.v2(settings, data, getFullTextUrls(data, fullTextApi, exists), exists == null);
+    }
+
+    /**
+     * Generates a IIIF v2 direct manifest using the thread pool for asynchronous requests. If a full text check is
+     * needed, this is done using the non-blocking http client.
+     * @param record record data
+     * @param addFullText if true then for each canvas we will check if a full text exists and add the link to it's
+     *                   annotation page
+     * @param fullTextApi optional, if provided this url will be used to check if a full text is available or not
+     * @return future containing the direct manifest
+     */
+    public CompletableFuture<DirectManifest> generateDirectManifestV2Async(EdmRecord record, boolean addFullText, URL fullTextApi) {
+        CompletableFuture<Boolean> fullTextExists = startFullTextCheck(record, addFullText, true);
+        return CompletableFuture.supplyAsync(() -> getManifestData(record), mappingExecutor)
+                .thenCombine(fullTextExists, (data, exists) ->
+                        DirectManifest.v2(settings, data, getFullTextUrls(data, fullTextApi, exists), exists == null));
+    }
+
+    /**
+     * Generates a IIIF v3 manifest that is written directly from the manifest data when it's serialized. Since v3
+     * manifests don't contain canvases yet, no full text check is done.
+     * @param record record data
+     * @return direct manifest, ready to be serialized
+     */
+    public DirectManifest generateDirectManifestV3(EdmRecord record) {
+        return DirectManifest.v3(settings, getManifestData(record));
+    }
+
+    /**
+     * Generates a IIIF v3 direct manifest using the thread pool for asynchronous requests
+     * @param record record data
+     * @return future containing the direct manifest
+     */
+    public CompletableFuture<DirectManifest> generateDirectManifestV3Async(EdmRecord record) {
+        return CompletableFuture.supplyAsync(() -> generateDirectManifestV3(record), mappingExecutor);
+    }
+
+    /**
+     * Returns a function that generates the full text url for a page, or null if no full text links should be added
+     */
+    private IntFunction<String> getFullTextUrls(ManifestData data, URL fullTextApi, Boolean fullTextExists) {
+        if (isFullTextCandidate(data.getCanvases(), data.getIsShownBy()) && Boolean.TRUE.equals(fullTextExists)) {
+            return pageNr -> generateFullTextUrl(data.getEuropeanaId(), Integer.toString(pageNr), fullTextApi);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the format-neutral manifest data of a record, from cache if possible
+     */
+    private ManifestData getManifestData(EdmRecord record) {
+        return manifestDataCache.get(record, EdmManifestMapping::getManifestData);
+    }
+
+    /**
+     * Serializes a manifest to JSON-LD using the thread pool for asynchronous requests
+     * @param m manifest
+     * @return future containing the JSON-LD string, completes exceptionally with a RecordParseException if there is a
+     * problem serializing
+     */
+    public CompletableFuture<String> serializeManifestAsync(Object m) {
+        return CompletableFuture.supplyAsync(() -> {
             try {
-                fillInFullTextLinksV3(result, fullTextApi);
-            } catch (IIIFException ie) {
-                LOG.error("Error adding full text links", ie);
+                return serializeManifest(m);
+            } catch (RecordParseException e) {
+                throw new CompletionException(e);
             }
-        } else {
+        }, mappingExecutor);
+    }
+
+    /**
+     * @param manifest generated manifest object (ManifestV2, ManifestV3 or DirectManifest)
+     * @return true if we couldn't check if a full text is available while generating the manifest
+     */
+    public static boolean isFullTextUnknown(Object manifest) {
+        if (manifest instanceof ManifestV2) {
+            return ((ManifestV2) manifest).isFullTextUnknown();
+        } else if (manifest instanceof ManifestV3) {
+            return ((ManifestV3) manifest).isFullTextUnknown();
+        } else if (manifest instanceof DirectManifest) {
+            return ((DirectManifest) manifest).isFullTextUnknown();
+        }
+        return false;
+    }
+
+    /**
+     * We don't want to check for all images if they are a fulltext because that takes too long, instead we check if
+     * the edmIsShownBy is a fulltext and if so assume all images are fulltexts.
+     * Note that the edmIsShownBy has to be a Europeana address!
+     */
+    private static boolean isFullTextCandidate(Object[] canvases, String isShownBy) {
+        return canvases != null && isFullTextCandidate(isShownBy);
+    }
+
+    private static boolean isFullTextCandidate(String isShownBy) {
+        return isShownBy != null && ValidateUtils.isEuropeanaUrl(isShownBy);
+    }
+
+    /**
+     * The edmIsShownBy is known as soon as the record is parsed, so we start checking if a full text exists right away.
+     * That way the check runs in parallel with the manifest mapping.
+     * @param async if true the check is done with the non-blocking http client, otherwise with the Hystrix command
+     * @return future with true if a full text exists, false if it doesn't exist or if no check was needed, null if we
+     * couldn't check
+     */
+    private CompletableFuture<Boolean> startFullTextCheck(EdmRecord record, boolean addFullText, boolean async) {
+        if (!addFullText) {
             LOG.debug("Skipping full text link generation");
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        String isShownBy = EdmManifestMapping.getIsShownBy(EdmManifestMapping.getEuropeanaId(record), record);
+        if (!isFullTextCandidate(isShownBy)) {
+            LOG.debug("Skipping fulltext check");
+            return CompletableFuture.completedFuture(Boolean.FALSE);
         }
+        return (async ? existsFullTextCachedAsync(isShownBy) : existsFullTextCached(isShownBy));
+    }
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Generated in {} ms ", System.currentTimeMillis() - start);
+    /**
+     * Waits for the result of a full text check
+     * @return true if a full text exists, false if it doesn't exist or if no check was needed, null if we couldn't check
+     * @throws InvalidApiKeyException when the Full-Text API doesn't accept our request
+     */
+    private static Boolean joinFullTextCheck(CompletableFuture<Boolean> fullTextExists) throws InvalidApiKeyException {
+        try {
+            return fullTextExists.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof InvalidApiKeyException) {
+                throw (InvalidApiKeyException) e.getCause();
+            }
+            LOG.warn("Error checking if full text exists", e.getCause());
+            return null;
         }
-        return result;
     }
 
     /**
-     * We generate all full text links in one place, so we can raise a timeout if retrieving the necessary
-     * data for all full texts is too slow.
+     * We generate all full text links in one place, after the manifest mapping and full text check are both done.
+     * @param fullTextExists result of the full text check for the edmIsShownBy
      * @return manifest with for each canvas one full text link provided that full text is available
      */
-    private ManifestV2 fillInFullTextLinksV2(ManifestV2 manifest, URL fullTextApi) throws IIIFException {
+    private ManifestV2 fillInFullTextLinksV2(ManifestV2 manifest, URL fullTextApi, Boolean fullTextExists) {
+        manifest.setFullTextUnknown(fullTextExists == null);
         if (manifest.getSequences() != null) {
             for (eu.europeana.iiif.model.v2.Sequence s : manifest.getSequences()) {
-
-                // we don't want to check for all images if they are a fulltext because that takes too long
-                // instead we check if the edmIsShownBy is a fulltext and if so assume all images are fulltexts
-                // note that the edmIsShownBy has to be a Europeana address!
-                if (s.getCanvases() != null && s.getIsShownBy() != null &&
-                        ValidateUtils.isEuropeanaUrl(s.getIsShownBy()) &&
-                        existsFullText(s.getIsShownBy())) {
-                    // add fulllink to all items
-                    for (eu.europeana.iiif.model.v2.Canvas c : s.getCanvases()) {
-                        String fullTextUrl = generateFullTextUrl(manifest.getEuropeanaId(),
-                                Integer.toString(c.getPageNr()),
-                                fullTextApi);
-                        // always 1 value in array
-                        FullText[] ft = new FullText[1];
-                        ft[0] = new FullText(fullTextUrl);
-                        c.setOtherContent(ft);
-                    }
+                if (isFullTextCandidate(s.getCanvases(), s.getIsShownBy()) && Boolean.TRUE.equals(fullTextExists)) {
+                    addFullTextLinksV2(manifest.getEuropeanaId(), s.getCanvases(), fullTextApi);
                 } else {
                     LOG.debug("Skipping fulltext check");
                 }
-
             }
         }
         return manifest;
     }
 
     /**
-     * We generate all full text links in one place, so we can raise a timeout if retrieving the necessary
-     * data for all full texts is too slow.
+     * Add a full text link to all provided canvases (of a sequence or canvas page)
+     */
+    private void addFullTextLinksV2(String europeanaId, eu.europeana.iiif.model.v2.Canvas[] canvases, URL fullTextApi) {
+        for (eu.europeana.iiif.model.v2.Canvas c : canvases) {
+            String fullTextUrl = generateFullTextUrl(europeanaId,
+                    Integer.toString(c.getPageNr()),
+                    fullTextApi);
+            // always 1 value in array
+            FullText[] ft = new FullText[1];
+            ft[0] = new FullText(fullTextUrl);
+            c.setOtherContent(ft);
+        }
+    }
+
+    /**
+     * We generate all full text links in one place, after the manifest mapping and full text check are both done.
+     * @param fullTextExists result of the full text check for the edmIsShownBy
      * @return manifest with for each canvas an additional annotationpage with full text link provided that full text is
      * available
      */
-    private ManifestV3 fillInFullTextLinksV3(ManifestV3 manifest, URL fullTextApi) throws IIIFException {
+    private ManifestV3 fillInFullTextLinksV3(ManifestV3 manifest, URL fullTextApi, Boolean fullTextExists) {
+        manifest.setFullTextUnknown(fullTextExists == null);
         if (manifest.getItems() != null) {
             for (eu.europeana.iiif.model.v3.Sequence s : manifest.getItems()) {
-
-                // we don't want to check for all images if they are a fulltext because that takes too long
-                // instead we check if the edmIsShownBy is a fulltext and if so assume all images are fulltexts
-                // note that the edmIsShownBy has to be a Europeana address!
-                if (s.getItems() != null && s.getIsShownBy() != null &&
-                        ValidateUtils.isEuropeanaUrl(s.getIsShownBy()) &&
-                        existsFullText(s.getIsShownBy())) {
-                    // add fulllink to all items
-                    for (eu.europeana.iiif.model.v3.Canvas c : s.getItems()) {
-                        String fullTextUrl = generateFullTextUrl(manifest.getEuropeanaId(),
-                                Integer.toString(c.getPageNr()),
-                                fullTextApi);
-                        addFullTextAnnotationPageV3(c, fullTextUrl);
-                    }
+                if (isFullTextCandidate(s.getItems(), s.getIsShownBy()) && Boolean.TRUE.equals(fullTextExists)) {
+                    addFullTextLinksV3(manifest, s, fullTextApi);
                 } else {
                     LOG.debug("Skipping fulltext check");
                 }
-
             }
         }
         return manifest;
     }
 
+    /**
+     * Add a full text annotation page to all canvases of the provided sequence
+     */
+    private void addFullTextLinksV3(ManifestV3 manifest, eu.europeana.iiif.model.v3.Sequence s, URL fullTextApi) {
+        for (eu.europeana.iiif.model.v3.Canvas c : s.getItems()) {
+            String fullTextUrl = generateFullTextUrl(manifest.getEuropeanaId(),
+                    Integer.toString(c.getPageNr()),
+                    fullTextApi);
+            addFullTextAnnotationPageV3(c, fullTextUrl);
+        }
+    }
+
     /**
      *  If there is a full text available we have to add a new annotation page with just the full text url as id
      */
@@ -379,15 +1282,41 @@ public class ManifestService {
      */
     public String serializeManifest(Object m) throws RecordParseException {
         try {
-            return mapper.
-                    writerWithDefaultPrettyPrinter().
-                    writeValueAsString(m);
+            return getWriter().writeValueAsString(m);
         }
         catch (IOException e) {
             throw new RecordParseException("Error serializing data: "+e.getMessage(), e);
         }
     }
 
+    /**
+     * Serialize manifest to JSON-LD and write it directly to the provided output stream (in UTF-8), so the serialized
+     * manifest doesn't have to be kept in memory. The output stream is not closed.
+     * @param m manifest
+     * @param out stream to write to
+     * @param maxCopyBytes if the serialized manifest is not larger than this, then a copy is returned (e.g. for caching)
+     * @return copy of the serialized manifest, or null if it was larger than maxCopyBytes
+     * @throws RecordParseException when there is a problem serializing or writing
+     */
+    public byte[] serializeManifest(Object m, OutputStream out, int maxCopyBytes) throws RecordParseException {
+        CappedCopyOutputStream copyStream = new CappedCopyOutputStream(out, maxCopyBytes);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(copyStream, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            getWriter().writeValue(generator, m);
+        }
+        catch (IOException e) {
+            throw new RecordParseException("Error serializing data: "+e.getMessage(), e);
+        }
+        return copyStream.getCopy();
+    }
+
+    /**
+     * Manifests are pretty printed, unless compact output is configured
+     */
+    private ObjectWriter getWriter() {
+        return (settings.isResponseCompact() ? mapper.writer() : mapper.writerWithDefaultPrettyPrinter());
+    }
+
     /**
      * @return ManifestSettings object containing settings loaded from properties file
      */
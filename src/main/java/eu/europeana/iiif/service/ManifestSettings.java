@@ -1,5 +1,6 @@
 package eu.europeana.iiif.service;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +37,8 @@ public class ManifestSettings {
     private String fullTextApiBaseUrl;
     @Value("${fulltext-api.path}")
     private String fullTextApiPath;
+    @Value("${fulltext-api.check-threads}")
+    private Integer fullTextCheckThreads = 10;
 
     @Value("${suppress-parse-exception}")
     private Boolean suppressParseException = Boolean.FALSE; // default value if we run this outside of Spring
@@ -44,6 +47,133 @@ public class ManifestSettings {
     private Integer canvasHeight;
     @Value("${canvas.width}")
     private Integer canvasWidth;
+    @Value("${canvas.paging-threshold}")
+    private Integer canvasPagingThreshold = 0; // default value if we run this outside of Spring
+    @Value("${canvas.page-size}")
+    private Integer canvasPageSize = 100;
+
+    // default values are used if we run this outside of Spring
+    @Value("${http-client.max-connections-total}")
+    private Integer httpMaxConnectionsTotal = 200;
+    @Value("${http-client.max-connections-per-route}")
+    private Integer httpMaxConnectionsPerRoute = 100;
+    @Value("${http-client.keep-alive-ms}")
+    private Long httpKeepAlive = 30_000L;
+    @Value("${http-client.idle-eviction-ms}")
+    private Long httpIdleEviction = 60_000L;
+
+    @Value("${async.record-api.timeout-ms}")
+    private Integer asyncRecordApiTimeout = 30_000;
+    @Value("${async.fulltext-api.timeout-ms}")
+    private Integer asyncFullTextApiTimeout = 5_000;
+    @Value("${async.mapping-threads}")
+    private Integer asyncMappingThreads = 0;
+
+    @Value("${record-parser}")
+    private String recordParser = "tree";
+
+    @Value("${record-cache.ttl-ms}")
+    private Long recordCacheTtl = 60_000L;
+    @Value("${record-cache.max-bytes}")
+    private Long recordCacheMaxBytes = 100L * 1024 * 1024;
+    @Value("${api-key-cache.ttl-ms}")
+    private Long apiKeyCacheTtl = 0L;
+
+    @Value("${manifest-cache.ttl-ms}")
+    private Long manifestCacheTtl = 3_600_000L;
+    @Value("${manifest-cache.max-bytes}")
+    private Long manifestCacheMaxBytes = 50L * 1024 * 1024;
+
+    @Value("${manifest-cache.gzip}")
+    private Boolean manifestCacheGzip = Boolean.TRUE;
+
+    @Value("${manifest-writer}")
+    private String manifestWriter = "objects";
+
+    @Value("${response.compact}")
+    private Boolean responseCompact = Boolean.FALSE;
+    @Value("${response.streaming}")
+    private Boolean responseStreaming = Boolean.FALSE;
+    @Value("${response.streaming.cache-max-bytes}")
+    private Integer responseStreamingCacheMaxBytes = 1024 * 1024;
+
+    @Value("${bulk.max-records}")
+    private Integer bulkMaxRecords = 100;
+    @Value("${bulk.parallelism}")
+    private Integer bulkParallelism = 10;
+    @Value("${bulk.timeout-ms}")
+    private Long bulkTimeout = 60_000L;
+
+    @Value("${fulltext-cache.max-entries}")
+    private Long fullTextCacheMaxEntries = 100_000L;
+    @Value("${fulltext-cache.ttl-exists-ms}")
+    private Long fullTextCacheTtlExists = 86_400_000L;
+    @Value("${fulltext-cache.ttl-not-exists-ms}")
+    private Long fullTextCacheTtlNotExists = 3_600_000L;
+    @Value("${fulltext-cache.ttl-unknown-ms}")
+    private Long fullTextCacheTtlUnknown = 30_000L;
+
+    @Value("${manifest-data-cache.max-entries}")
+    private Long manifestDataCacheMaxEntries = 10_000L;
+    @Value("${manifest-data-cache.ttl-ms}")
+    private Long manifestDataCacheTtl = 3_600_000L;
+
+    @Value("${stale-manifest.max-bytes}")
+    private Long staleManifestMaxBytes = 50L * 1024 * 1024;
+    @Value("${stale-manifest.ttl-ms}")
+    private Long staleManifestTtl = 60_000L;
+    @Value("${stale-manifest.while-revalidate-ms}")
+    private Long staleManifestWhileRevalidate = 300_000L;
+    @Value("${stale-manifest.if-error-ms}")
+    private Long staleManifestIfError = 86_400_000L;
+    @Value("${stale-manifest.if-error-any-api-key}")
+    private Boolean staleManifestIfErrorAnyApiKey = Boolean.FALSE;
+
+    @Value("${manifest-store.directory}")
+    private String manifestStoreDirectory = "";
+    @Value("${manifest-store.max-bytes}")
+    private Long manifestStoreMaxBytes = 1024L * 1024 * 1024;
+    @Value("${manifest-store.segment-bytes}")
+    private Integer manifestStoreSegmentBytes = 64 * 1024 * 1024;
+
+    @Value("${validator-index.max-entries}")
+    private Long validatorIndexMaxEntries = 500_000L;
+    @Value("${validator-index.ttl-ms}")
+    private Long validatorIndexTtl = 300_000L;
+
+    @Value("${warm-up.file}")
+    private String warmUpFile = "";
+    @Value("${warm-up.wskey}")
+    private String warmUpWskey = "";
+    @Value("${warm-up.top-n}")
+    private Integer warmUpTopN = 1000;
+    @Value("${warm-up.parallelism}")
+    private Integer warmUpParallelism = 4;
+    @Value("${warm-up.max-rate}")
+    private Integer warmUpMaxRate = 20;
+    @Value("${warm-up.ready-percentage}")
+    private Integer warmUpReadyPercentage = 80;
+
+    @Value("${admin.api-key}")
+    private String adminApiKey = "";
+
+    @Value("${cache-control.max-age}")
+    private Long cacheControlMaxAge = -1L;
+    @Value("${cache-control.s-maxage}")
+    private Long cacheControlSMaxAge = -1L;
+    @Value("${cache-control.stale-while-revalidate}")
+    private Long cacheControlStaleWhileRevalidate = -1L;
+    @Value("${cache-control.stale-if-error}")
+    private Long cacheControlStaleIfError = -1L;
+    @Value("${cache-control.datasets}")
+    private String cacheControlDatasets = "";
+
+    @Value("${cdn.purge-url}")
+    private String cdnPurgeUrl = "";
+    @Value("${cdn.purge-header}")
+    private String cdnPurgeHeader = "";
+    @Value("${cdn.purge-timeout-ms}")
+    private Integer cdnPurgeTimeout = 10_000;
 
     @Autowired
     private Environment environment;
@@ -77,8 +207,8 @@ public class ManifestSettings {
     }
 
     /**
-     * For production we want to suppress exceptions that arise from parsing record data, but for testing/debugging we
-     * want to see those exceptions
+     * For production we want to be lenient when reading record data (e.g. accept a single value where an array is
+     * expected), but for testing/debugging we want to see those exceptions
      */
     public Boolean getSuppressParseException() {
         return suppressParseException;
@@ -98,6 +228,408 @@ public class ManifestSettings {
         return canvasWidth;
     }
 
+    /**
+     * @return if a record has more canvases than this, the canvases are split into pages (0 = never)
+     */
+    public Integer getCanvasPagingThreshold() {
+        return canvasPagingThreshold;
+    }
+
+    /**
+     * @return maximum number of canvases per canvas page (also the number of canvases in a paged manifest)
+     */
+    public Integer getCanvasPageSize() {
+        return canvasPageSize;
+    }
+
+    /**
+     * @return maximum number of connections in the http client connection pool (for all routes together)
+     */
+    public Integer getHttpMaxConnectionsTotal() {
+        return httpMaxConnectionsTotal;
+    }
+
+    /**
+     * @return maximum number of connections in the http client connection pool for a single route (e.g. Record API)
+     */
+    public Integer getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    /**
+     * @return number of milliseconds we keep an idle connection alive if the server doesn't send a Keep-Alive header
+     */
+    public Long getHttpKeepAlive() {
+        return httpKeepAlive;
+    }
+
+    /**
+     * @return number of milliseconds after which idle connections are evicted from the connection pool
+     */
+    public Long getHttpIdleEviction() {
+        return httpIdleEviction;
+    }
+
+    /**
+     * @return number of threads that wait for blocking full text checks
+     */
+    public Integer getFullTextCheckThreads() {
+        return fullTextCheckThreads;
+    }
+
+    /**
+     * @return maximum duration in milliseconds of an asynchronous Record API request
+     */
+    public Integer getAsyncRecordApiTimeout() {
+        return asyncRecordApiTimeout;
+    }
+
+    /**
+     * @return maximum duration in milliseconds of an asynchronous Full-Text API request
+     */
+    public Integer getAsyncFullTextApiTimeout() {
+        return asyncFullTextApiTimeout;
+    }
+
+    /**
+     * @return number of threads used to generate and serialize manifests for asynchronous requests. If this is 0 (or
+     * less) then the number of available processors is used
+     */
+    public Integer getAsyncMappingThreads() {
+        if (asyncMappingThreads == null || asyncMappingThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return asyncMappingThreads;
+    }
+
+    /**
+     * @return true if record json should be read with the streaming extractor (only the fields needed for the mapping),
+     * false if the entire record json should be parsed into a tree
+     */
+    public boolean isRecordParserStreaming() {
+        return "streaming".equalsIgnoreCase(recordParser);
+    }
+
+    /**
+     * @return number of milliseconds a cached record is used without revalidating it with the Record API
+     */
+    public Long getRecordCacheTtl() {
+        return recordCacheTtl;
+    }
+
+    /**
+     * @return maximum total size in bytes of all cached record json
+     */
+    public Long getRecordCacheMaxBytes() {
+        return recordCacheMaxBytes;
+    }
+
+    /**
+     * @return number of milliseconds an api key that was accepted by the Record API is used for serving stale
+     * manifests and indexed validators. If this is 0 (or less) then the longest of the stale manifest, validator index
+     * and record cache periods is used, so api keys don't expire before the data they give access to
+     */
+    public Long getApiKeyCacheTtl() {
+        if (apiKeyCacheTtl != null && apiKeyCacheTtl > 0) {
+            return apiKeyCacheTtl;
+        }
+        long stalePeriod = Math.max(getStaleManifestWhileRevalidate(), getStaleManifestIfError());
+        return Math.max(getStaleManifestTtl() + stalePeriod, Math.max(getValidatorIndexTtl(), getRecordCacheTtl()));
+    }
+
+    /**
+     * @return number of milliseconds after which a cached manifest expires
+     */
+    public Long getManifestCacheTtl() {
+        return manifestCacheTtl;
+    }
+
+    /**
+     * @return maximum total size in bytes of all cached manifests
+     */
+    public Long getManifestCacheMaxBytes() {
+        return manifestCacheMaxBytes;
+    }
+
+    /**
+     * @return true if cached manifests should also be stored gzip encoded
+     */
+    public boolean isManifestCacheGzip() {
+        return Boolean.TRUE.equals(manifestCacheGzip);
+    }
+
+    /**
+     * @return true if manifests should be written directly from the manifest data, false if ManifestV2 or ManifestV3
+     * objects should be generated and serialized
+     */
+    public boolean isManifestWriterDirect() {
+        return "direct".equalsIgnoreCase(manifestWriter);
+    }
+
+    /**
+     * @return true if manifests should be serialized without whitespace, false if they should be pretty printed
+     */
+    public boolean isResponseCompact() {
+        return Boolean.TRUE.equals(responseCompact);
+    }
+
+    /**
+     * @return true if manifests should be serialized directly into the response instead of in memory first
+     */
+    public boolean isResponseStreaming() {
+        return Boolean.TRUE.equals(responseStreaming);
+    }
+
+    /**
+     * @return streamed manifests that are not larger than this (in bytes) are also stored in the manifest cache
+     */
+    public Integer getResponseStreamingCacheMaxBytes() {
+        return responseStreamingCacheMaxBytes;
+    }
+
+    /**
+     * @return maximum number of cached full text availability results
+     */
+    public Long getFullTextCacheMaxEntries() {
+        return fullTextCacheMaxEntries;
+    }
+
+    /**
+     * @return number of milliseconds we cache the result that a full text exists
+     */
+    public Long getFullTextCacheTtlExists() {
+        return fullTextCacheTtlExists;
+    }
+
+    /**
+     * @return number of milliseconds we cache the result that a full text doesn't exist
+     */
+    public Long getFullTextCacheTtlNotExists() {
+        return fullTextCacheTtlNotExists;
+    }
+
+    /**
+     * @return number of milliseconds we cache the result that we couldn't check if a full text exists
+     */
+    public Long getFullTextCacheTtlUnknown() {
+        return fullTextCacheTtlUnknown;
+    }
+
+    /**
+     * @return maximum number of cached manifest data objects
+     */
+    public Long getManifestDataCacheMaxEntries() {
+        return manifestDataCacheMaxEntries;
+    }
+
+    /**
+     * @return number of milliseconds we cache manifest data
+     */
+    public Long getManifestDataCacheTtl() {
+        return manifestDataCacheTtl;
+    }
+
+    /**
+     * @return maximum total size in bytes of all last served manifests that we keep for serving stale
+     */
+    public Long getStaleManifestMaxBytes() {
+        return staleManifestMaxBytes;
+    }
+
+    /**
+     * @return number of milliseconds after which a last served manifest is stale
+     */
+    public Long getStaleManifestTtl() {
+        return staleManifestTtl;
+    }
+
+    /**
+     * @return number of milliseconds after the ttl during which a stale manifest is served while it's revalidated
+     */
+    public Long getStaleManifestWhileRevalidate() {
+        return staleManifestWhileRevalidate;
+    }
+
+    /**
+     * @return number of milliseconds after the ttl during which a stale manifest is served if the record can't be
+     * retrieved
+     */
+    public Long getStaleManifestIfError() {
+        return staleManifestIfError;
+    }
+
+    /**
+     * @return true if a stale manifest is served to any api key with a valid format when the record can't be retrieved,
+     * false if only to api keys that were accepted by the Record API recently
+     */
+    public boolean isStaleManifestIfErrorAnyApiKey() {
+        return Boolean.TRUE.equals(staleManifestIfErrorAnyApiKey);
+    }
+
+    /**
+     * @return directory where manifests are stored on disk, if empty manifests are not stored on disk
+     */
+    public String getManifestStoreDirectory() {
+        return manifestStoreDirectory;
+    }
+
+    /**
+     * @return maximum total size in bytes of all manifests stored on disk
+     */
+    public Long getManifestStoreMaxBytes() {
+        return manifestStoreMaxBytes;
+    }
+
+    /**
+     * @return size in bytes of a single manifest store segment file (larger manifests are not stored)
+     */
+    public Integer getManifestStoreSegmentBytes() {
+        return manifestStoreSegmentBytes;
+    }
+
+    /**
+     * @return maximum number of indexed response validators
+     */
+    public Long getValidatorIndexMaxEntries() {
+        return validatorIndexMaxEntries;
+    }
+
+    /**
+     * @return number of milliseconds we answer conditional requests with indexed validators (0 = disabled)
+     */
+    public Long getValidatorIndexTtl() {
+        return validatorIndexTtl;
+    }
+
+    /**
+     * @return file with record ids or an access log that is used to warm up the manifest cache, if empty there is no
+     * warm-up
+     */
+    public String getWarmUpFile() {
+        return warmUpFile;
+    }
+
+    /**
+     * @return api key that is sent to the Record API during the warm-up
+     */
+    public String getWarmUpWskey() {
+        return warmUpWskey;
+    }
+
+    /**
+     * @return number of most requested manifests that are generated during the warm-up
+     */
+    public Integer getWarmUpTopN() {
+        return warmUpTopN;
+    }
+
+    /**
+     * @return number of manifests that are generated concurrently during the warm-up
+     */
+    public Integer getWarmUpParallelism() {
+        return warmUpParallelism;
+    }
+
+    /**
+     * @return maximum number of manifests per second that are generated during the warm-up (0 = unlimited)
+     */
+    public Integer getWarmUpMaxRate() {
+        return warmUpMaxRate;
+    }
+
+    /**
+     * @return percentage of the warm-up that needs to be processed before the application reports itself as healthy
+     */
+    public Integer getWarmUpReadyPercentage() {
+        return warmUpReadyPercentage;
+    }
+
+    /**
+     * @return key that is required for using the admin endpoints, if empty the admin endpoints are disabled
+     */
+    public String getAdminApiKey() {
+        return adminApiKey;
+    }
+
+    /**
+     * @return number of seconds browsers may cache a response, if negative responses are sent with 'no-cache'
+     */
+    public Long getCacheControlMaxAge() {
+        return cacheControlMaxAge;
+    }
+
+    /**
+     * @return number of seconds shared caches may cache a response, ignored if negative
+     */
+    public Long getCacheControlSMaxAge() {
+        return cacheControlSMaxAge;
+    }
+
+    /**
+     * @return number of seconds a stale response may be used while it's revalidated, ignored if negative
+     */
+    public Long getCacheControlStaleWhileRevalidate() {
+        return cacheControlStaleWhileRevalidate;
+    }
+
+    /**
+     * @return number of seconds a stale response may be used when revalidating fails, ignored if negative
+     */
+    public Long getCacheControlStaleIfError() {
+        return cacheControlStaleIfError;
+    }
+
+    /**
+     * @return dataset ids with their own Cache-Control value (e.g. "9200579=public, max-age=3600; 2021672=no-cache")
+     */
+    public String getCacheControlDatasets() {
+        return cacheControlDatasets;
+    }
+
+    /**
+     * @return url for purging a surrogate key from the CDN ('<key>' is replaced by the surrogate key), if empty we
+     * don't send purge requests
+     */
+    public String getCdnPurgeUrl() {
+        return cdnPurgeUrl;
+    }
+
+    /**
+     * @return optional header (e.g. "Fastly-Key: mykey") that is sent with CDN purge requests
+     */
+    public String getCdnPurgeHeader() {
+        return cdnPurgeHeader;
+    }
+
+    /**
+     * @return maximum duration in milliseconds of a CDN purge request
+     */
+    public Integer getCdnPurgeTimeout() {
+        return cdnPurgeTimeout;
+    }
+
+    /**
+     * @return maximum number of records in a bulk manifest request
+     */
+    public Integer getBulkMaxRecords() {
+        return bulkMaxRecords;
+    }
+
+    /**
+     * @return maximum number of records that are processed concurrently for a single bulk manifest request
+     */
+    public Integer getBulkParallelism() {
+        return bulkParallelism;
+    }
+
+    /**
+     * @return maximum number of milliseconds a bulk manifest request may take, records that are not done by then are
+     * reported as timed out
+     */
+    public Long getBulkTimeout() {
+        return bulkTimeout;
+    }
+
     /**
      * Note: this does not work when running the exploded build from the IDE because the values in the build.properties
      * are substituted only in the .war file. It returns 'default' in that case.
@@ -119,6 +651,40 @@ public class ManifestSettings {
         LOG.info("Manifest settings:");
         LOG.info("  Record API Url = {}{} ", this.getRecordApiBaseUrl(), this.getRecordApiPath());
         LOG.info("  Full-Text API Url = {}{} ", this.getFullTextApiBaseUrl(), this.getFullTextApiPath());
+        LOG.info("  Full-Text check threads = {}", this.getFullTextCheckThreads());
         LOG.info("  Suppress parse exceptions = {}", this.getSuppressParseException());
+        LOG.info("  Http connection pool max total = {}, max per route = {}", this.getHttpMaxConnectionsTotal(),
+                this.getHttpMaxConnectionsPerRoute());
+        LOG.info("  Canvas paging threshold = {}, page size = {}", this.getCanvasPagingThreshold(),
+                this.getCanvasPageSize());
+        LOG.info("  Record parser = {}", this.isRecordParserStreaming() ? "streaming" : "tree");
+        LOG.info("  Record cache ttl = {} ms, max size = {} bytes", this.getRecordCacheTtl(), this.getRecordCacheMaxBytes());
+        LOG.info("  Api key cache ttl = {} ms", this.getApiKeyCacheTtl());
+        LOG.info("  Manifest cache ttl = {} ms, max size = {} bytes", this.getManifestCacheTtl(),
+                this.getManifestCacheMaxBytes());
+        LOG.info("  Manifest cache gzip = {}", this.isManifestCacheGzip());
+        LOG.info("  Manifest writer = {}", this.isManifestWriterDirect() ? "direct" : "objects");
+        LOG.info("  Response compact = {}", this.isResponseCompact());
+        LOG.info("  Response streaming = {}, cache max size = {} bytes", this.isResponseStreaming(),
+                this.getResponseStreamingCacheMaxBytes());
+        LOG.info("  Manifest data cache ttl = {} ms, max entries = {}", this.getManifestDataCacheTtl(),
+                this.getManifestDataCacheMaxEntries());
+        LOG.info("  Stale manifest ttl = {} ms, while revalidate = {} ms, if error = {} ms, max size = {} bytes",
+                this.getStaleManifestTtl(), this.getStaleManifestWhileRevalidate(), this.getStaleManifestIfError(),
+                this.getStaleManifestMaxBytes());
+        LOG.info("  Stale manifest if error for any api key = {}", this.isStaleManifestIfErrorAnyApiKey());
+        LOG.info("  Manifest store directory = {}, max size = {} bytes, segment size = {} bytes",
+                this.getManifestStoreDirectory(), this.getManifestStoreMaxBytes(), this.getManifestStoreSegmentBytes());
+        LOG.info("  Validator index ttl = {} ms, max entries = {}", this.getValidatorIndexTtl(),
+                this.getValidatorIndexMaxEntries());
+        LOG.info("  Warm-up file = {}, top = {}, parallelism = {}, max rate = {}/s, ready at {}%",
+                this.getWarmUpFile(), this.getWarmUpTopN(), this.getWarmUpParallelism(), this.getWarmUpMaxRate(),
+                this.getWarmUpReadyPercentage());
+        LOG.info("  Admin endpoints enabled = {}", StringUtils.isNotEmpty(this.getAdminApiKey()));
+        LOG.info("  Cache-Control max-age = {}, s-maxage = {}, stale-while-revalidate = {}, stale-if-error = {}",
+                this.getCacheControlMaxAge(), this.getCacheControlSMaxAge(),
+                this.getCacheControlStaleWhileRevalidate(), this.getCacheControlStaleIfError());
+        LOG.info("  Cache-Control per dataset = {}", this.getCacheControlDatasets());
+        LOG.info("  CDN purge url = {}, timeout = {} ms", this.getCdnPurgeUrl(), this.getCdnPurgeTimeout());
     }
 }
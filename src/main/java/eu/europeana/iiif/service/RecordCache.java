@@ -0,0 +1,263 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import eu.europeana.iiif.model.edm.EdmRecord;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Keeps recently retrieved records together with the validators (ETag and/or Last-Modified) that the
+ * Record API returned for them. Records that are younger than the configured time-to-live are used as they are.
+ * Older records are revalidated: we send the validators along, so the Record API can respond with 304 Not Modified
+ * and we can reuse the record we already have.
+ *
+ * The cache is bounded by the total size (in bytes) of the record json that was downloaded. When the maximum is
+ * reached, records are evicted using Caffeine's (concurrent) eviction policy.
+ */
+public class RecordCache {
+
+    // we remember which api keys were accepted recently, so we don't serve cached records for invalid keys
+    private static final long MAX_API_KEYS = 10_000;
+
+    private final Cache<String, CachedRecord> cache;
+    // time when an api key was last accepted
+    private final Cache<String, Long> validApiKeys;
+    private final long ttl;
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    /**
+     * Create a new record cache
+     * @param maxBytes maximum total size in bytes of all cached records
+     * @param ttl number of milliseconds a record is used without revalidating it (0 = always revalidate)
+     */
+    public RecordCache(long maxBytes, long ttl) {
+        this(maxBytes, ttl, ttl);
+    }
+
+    /**
+     * Create a new record cache
+     * @param maxBytes maximum total size in bytes of all cached records
+     * @param ttl number of milliseconds a record is used without revalidating it (0 = always revalidate)
+     * @param apiKeyTtl number of milliseconds we remember that an api key was accepted
+     */
+    public RecordCache(long maxBytes, long ttl, long apiKeyTtl) {
+        this(maxBytes, ttl, apiKeyTtl, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a new record cache
+     * @param maxBytes maximum total size in bytes of all cached records
+     * @param ttl number of milliseconds a record is used without revalidating it (0 = always revalidate)
+     * @param apiKeyTtl number of milliseconds we remember that an api key was accepted
+     * @param executor executor used for eviction and other maintenance tasks
+     */
+    RecordCache(long maxBytes, long ttl, long apiKeyTtl, Executor executor) {
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedRecord record) -> (int) Math.min(record.getSize(), Integer.MAX_VALUE))
+                .executor(executor)
+                .recordStats()
+                .build();
+        this.validApiKeys = Caffeine.newBuilder()
+                .maximumSize(MAX_API_KEYS)
+                .expireAfterWrite(Math.max(Math.max(ttl, apiKeyTtl), 1), TimeUnit.MILLISECONDS)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * @param key record key (see {@link ManifestService})
+     * @return cached record (fresh or not), or null if there is no cached record for the provided key
+     */
+    public CachedRecord get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * @param record cached record
+     * @return true if the provided record is younger than the configured time-to-live
+     */
+    public boolean isFresh(CachedRecord record) {
+        return record != null && System.currentTimeMillis() - record.getFetchedAt() < ttl;
+    }
+
+    /**
+     * Add or replace a record in the cache
+     * @param key record key
+     * @param record record to store
+     */
+    public void put(String key, CachedRecord record) {
+        cache.put(key, record);
+    }
+
+    /**
+     * Register that the Record API confirmed that the cached record is still up-to-date, so it's fresh again
+     * @param key record key
+     * @param record cached record that was revalidated
+     */
+    public void notModified(String key, CachedRecord record) {
+        notModifiedCount.increment();
+        cache.put(key, record.renew());
+    }
+
+    /**
+     * Remove a record from the cache (if present)
+     * @param key record key
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * Remove all records with a matching key from the cache
+     * @param keyFilter returns true for the keys of the records that should be removed
+     */
+    public void invalidateIf(Predicate<String> keyFilter) {
+        cache.asMap().keySet().removeIf(keyFilter);
+    }
+
+    /**
+     * Register if an api key was accepted (or rejected) by a Record API
+     * @param apiKey Record API address and api key
+     * @param valid true if the api key was accepted, false if it was rejected
+     */
+    public void setApiKeyValid(String apiKey, boolean valid) {
+        if (valid) {
+            validApiKeys.put(apiKey, System.currentTimeMillis());
+        } else {
+            validApiKeys.invalidate(apiKey);
+        }
+    }
+
+    /**
+     * @param apiKey Record API address and api key
+     * @return true if the api key was accepted by the Record API within the record time-to-live, so fresh records can
+     * be used for it
+     */
+    public boolean isApiKeyValid(String apiKey) {
+        return isApiKeyValid(apiKey, Math.max(ttl, 1));
+    }
+
+    /**
+     * @param apiKey Record API address and api key
+     * @param maxAge maximum number of milliseconds since the api key was accepted (limited by the api key ttl)
+     * @return true if the api key was accepted by the Record API within the provided period
+     */
+    public boolean isApiKeyValid(String apiKey, long maxAge) {
+        Long accepted = validApiKeys.getIfPresent(apiKey);
+        return accepted != null && System.currentTimeMillis() - accepted < maxAge;
+    }
+
+    /**
+     * Perform pending maintenance operations (e.g. evictions)
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+        validApiKeys.cleanUp();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics (note that stale records that are revalidated also count as a hit)
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of times the Record API confirmed that a cached record was still up-to-date
+     */
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+
+    /**
+     * @return approximate number of records in the cache
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return approximate total size in bytes of all records in the cache
+     */
+    public long getWeightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Record data and the validators that the Record API sent with it
+     */
+    public static class CachedRecord {
+
+        private final EdmRecord document;
+        private final String eTag;
+        private final String lastModified;
+        private final long size;
+        private final long fetchedAt;
+
+        /**
+         * Create a new cached record
+         * @param document record data read from the record json
+         * @param eTag value of the ETag header sent by the Record API (can be null)
+         * @param lastModified value of the Last-Modified header sent by the Record API (can be null)
+         * @param size size in bytes of the record json
+         */
+        public CachedRecord(EdmRecord document, String eTag, String lastModified, long size) {
+            this(document, eTag, lastModified, size, System.currentTimeMillis());
+        }
+
+        private CachedRecord(EdmRecord document, String eTag, String lastModified, long size, long fetchedAt) {
+            this.document = document;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.fetchedAt = fetchedAt;
+        }
+
+        /**
+         * @return copy of this record with the current time as fetch time
+         */
+        CachedRecord renew() {
+            return new CachedRecord(document, eTag, lastModified, size);
+        }
+
+        public EdmRecord getDocument() {
+            return document;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return true if we can send a conditional request to check if this record is still up-to-date
+         */
+        public boolean hasValidators() {
+            return eTag != null || lastModified != null;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return time (in milliseconds since epoch) when this record was retrieved or last revalidated
+         */
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package eu.europeana.iiif.service;
+
+import eu.europeana.iiif.service.exception.IIIFException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes sure that concurrent calls for the same key are executed only once. The first caller executes the call, all
+ * callers that arrive while that call is still in progress wait for it and get the same result (or the same error).
+ * Once a call is finished, a new call for the same key is executed again.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Call that produces a result, or throws an IIIFException
+     * @param <V> result type
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IIIFException;
+    }
+
+    /**
+     * Execute the provided call, or wait for the result of an identical call that is already in progress
+     * @param key key identifying the call
+     * @param call call to execute
+     * @return result of the call
+     * @throws IIIFException when the (shared) call threw an IIIFException
+     */
+    @SuppressWarnings("squid:S1181") // we need to pass on all errors to waiting callers
+    public V execute(K key, Call<V> call) throws IIIFException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            V result = call.call();
+            future.complete(result);
+            return result;
+        } catch (IIIFException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) throws IIIFException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IIIFException) {
+                throw (IIIFException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start the provided asynchronous call, or return the future of an identical call that is already in progress
+     * @param key key identifying the call
+     * @param call supplier that starts the asynchronous call
+     * @return future with the result of the call
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<V> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException e) {
+            started = new CompletableFuture<>();
+            started.completeExceptionally(e);
+        }
+        started.whenComplete((result, error) -> {
+            inFlight.remove(key, future);
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return number of calls that are currently in progress
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,195 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the last manifest that was served for a manifest request (record, IIIF version and options), so it can be
+ * served again without retrieving the record:
+ * <ul>
+ *     <li>while it's revalidated in the background, if it's older than the time-to-live but not older than the
+ *     stale-while-revalidate period (stale-while-revalidate)</li>
+ *     <li>when the record can't be retrieved, if it's not older than the stale-if-error period (stale-if-error)</li>
+ * </ul>
+ * Unlike the {@link ManifestCache} the key doesn't depend on the record version, because we want to find the manifest
+ * before we know the current version. The cache is bounded by the total size in bytes of all manifests.
+ */
+public class StaleManifestCache {
+
+    private final Cache<String, StaleManifest> cache;
+    private final long ttl;
+    private final long staleWhileRevalidate;
+    private final long staleIfError;
+
+    /**
+     * Create a new stale manifest cache
+     * @param maxBytes maximum total size in bytes of all manifests
+     * @param ttl number of milliseconds after which a manifest is stale
+     * @param staleWhileRevalidate number of milliseconds after the ttl during which a stale manifest is served while
+     *                             it's revalidated (0 = never)
+     * @param staleIfError number of milliseconds after the ttl during which a stale manifest is served when the record
+     *                     can't be retrieved (0 = never)
+     */
+    public StaleManifestCache(long maxBytes, long ttl, long staleWhileRevalidate, long staleIfError) {
+        this.ttl = ttl;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.staleIfError = staleIfError;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, StaleManifest manifest) -> manifest.getManifest().getSize())
+                .expireAfterWrite(ttl + Math.max(staleWhileRevalidate, staleIfError), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key request key (see ManifestController)
+     * @return manifest if it's stale but may be served while it's revalidated, otherwise null
+     */
+    public StaleManifest getStaleWhileRevalidate(String key) {
+        StaleManifest result = cache.getIfPresent(key);
+        if (result == null) {
+            return null;
+        }
+        long age = result.getAge();
+        return (age >= ttl && age < ttl + staleWhileRevalidate ? result : null);
+    }
+
+    /**
+     * @param key request key (see ManifestController)
+     * @return manifest if it may be served because the record can't be retrieved, otherwise null
+     */
+    public StaleManifest getStaleIfError(String key) {
+        StaleManifest result = cache.getIfPresent(key);
+        if (result == null) {
+            return null;
+        }
+        return (result.getAge() < ttl + staleIfError ? result : null);
+    }
+
+    /**
+     * Add or replace the last served manifest of a request
+     * @param key request key
+     * @param manifest last served manifest
+     */
+    public void put(String key, StaleManifest manifest) {
+        cache.put(key, manifest);
+    }
+
+    /**
+     * Add the manifest of a request, unless there already is one (e.g. when restoring manifests from disk)
+     * @param key request key
+     * @param manifest last served manifest
+     */
+    public void putIfAbsent(String key, StaleManifest manifest) {
+        cache.asMap().putIfAbsent(key, manifest);
+    }
+
+    /**
+     * @param key request key
+     * @return true if there is a manifest for the request (stale or not)
+     */
+    public boolean contains(String key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    /**
+     * Remove all manifests of a record or dataset, e.g. because the record was updated and we shouldn't serve the old
+     * manifest anymore
+     * @param idPrefix either a record id ("/datasetid/recordid") or a dataset id ("/datasetid")
+     * @return number of removed manifests
+     */
+    public long invalidate(String idPrefix) {
+        // keys start with the record id followed by a space, so '/123' doesn't match records of dataset '/1234'
+        String prefix = (idPrefix.indexOf('/', 1) > 0 ? idPrefix + " " : idPrefix + "/");
+        List<String> keys = cache.asMap().keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .collect(Collectors.toList());
+        cache.invalidateAll(keys);
+        return keys.size();
+    }
+
+    /**
+     * @return hit, miss and eviction statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return approximate number of manifests in the cache
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return approximate total size in bytes of all manifests in the cache
+     */
+    public long getWeightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Serialized manifest together with its validators and the time we knew it was up-to-date
+     */
+    public static class StaleManifest {
+
+        private final ManifestCache.CachedManifest manifest;
+        private final String eTag;
+        private final ZonedDateTime lastModified;
+        private final long validatedAt;
+
+        /**
+         * Create a new stale manifest
+         * @param manifest serialized manifest
+         * @param eTag ETag of the manifest
+         * @param lastModified Last-Modified date of the manifest (record update timestamp)
+         */
+        public StaleManifest(ManifestCache.CachedManifest manifest, String eTag, ZonedDateTime lastModified) {
+            this(manifest, eTag, lastModified, System.currentTimeMillis());
+        }
+
+        /**
+         * Create a stale manifest that we knew was up-to-date at the provided time (e.g. one restored from disk)
+         * @param manifest serialized manifest
+         * @param eTag ETag of the manifest
+         * @param lastModified Last-Modified date of the manifest (record update timestamp)
+         * @param validatedAt time in milliseconds since epoch
+         */
+        public StaleManifest(ManifestCache.CachedManifest manifest, String eTag, ZonedDateTime lastModified,
+                             long validatedAt) {
+            this.manifest = manifest;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.validatedAt = validatedAt;
+        }
+
+        public ManifestCache.CachedManifest getManifest() {
+            return manifest;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public ZonedDateTime getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return number of milliseconds since we knew this manifest was up-to-date
+         */
+        public long getAge() {
+            return System.currentTimeMillis() - validatedAt;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package eu.europeana.iiif.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the validators (ETag and Last-Modified) of recently generated responses, so conditional requests can be
+ * answered with 304 Not Modified without retrieving and parsing the record first.
+ * Validators are stored per record id and variant (Record API address and IIIF version or canvas page). Because we
+ * don't know when a record changes, validators expire after the configured time-to-live or when they are invalidated
+ * explicitly (e.g. after a record or dataset was updated).
+ */
+public class ValidatorIndex {
+
+    private final Cache<String, Validators> cache;
+    private final long ttl;
+
+    /**
+     * Create a new validator index
+     * @param maxEntries maximum number of indexed validators
+     * @param ttl number of milliseconds we keep validators
+     */
+    public ValidatorIndex(long maxEntries, long ttl) {
+        this.ttl = ttl;
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        // validators expire after the ttl, unless they were indexed earlier (see put with indexedAt)
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new Expiry<String, Validators>() {
+                    @Override
+                    public long expireAfterCreate(String key, Validators value, long currentTime) {
+                        return ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Validators value, long currentTime,
+                                                  long currentDuration) {
+                        return ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Validators value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param variant identifies the Record API and the type of response (e.g. IIIF version)
+     * @return indexed validators, or null if there are none
+     */
+    public Validators get(String recordId, String variant) {
+        return cache.getIfPresent(getKey(recordId, variant));
+    }
+
+    /**
+     * Add or replace the validators of a response
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param variant identifies the Record API and the type of response (e.g. IIIF version)
+     * @param validators validators to store
+     */
+    public void put(String recordId, String variant, Validators validators) {
+        cache.put(getKey(recordId, variant), validators);
+    }
+
+    /**
+     * Add the validators of a response that were already known at the provided time (e.g. restored from disk), unless
+     * there are validators for the response already. They expire when they would have expired if they were added then.
+     * @param recordId Europeana record id in the form of "/datasetid/recordid"
+     * @param variant identifies the Record API and the type of response (e.g. IIIF version)
+     * @param validators validators to store
+     * @param indexedAt time in milliseconds since epoch
+     * @return true if the validators were added, false if they already expired or if there were validators already
+     */
+    public boolean put(String recordId, String variant, Validators validators, long indexedAt) {
+        long remaining = ttl - (System.currentTimeMillis() - indexedAt);
+        String key = getKey(recordId, variant);
+        if (remaining <= 0 || cache.asMap().putIfAbsent(key, validators) != null) {
+            return false;
+        }
+        cache.policy().expireVariably().ifPresent(expiration ->
+                expiration.setExpiresAfter(key, remaining, TimeUnit.MILLISECONDS));
+        return true;
+    }
+
+    /**
+     * Remove all validators of a record or dataset
+     * @param idPrefix either a record id ("/datasetid/recordid") or a dataset id ("/datasetid")
+     * @return number of removed validators
+     */
+    public long invalidate(String idPrefix) {
+        // record ids are always followed by a space, so '/123' doesn't match records of dataset '/1234'
+        String prefix = (idPrefix.indexOf('/', 1) > 0 ? idPrefix + " " : idPrefix + "/");
+        List<String> keys = cache.asMap().keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .collect(Collectors.toList());
+        cache.invalidateAll(keys);
+        return keys.size();
+    }
+
+    /**
+     * @param datasetId dataset id (without slashes)
+     * @return ids of all records of the dataset that have indexed validators
+     */
+    public Set<String> getRecordIds(String datasetId) {
+        String prefix = "/" + datasetId + "/";
+        return cache.asMap().keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .map(key -> key.substring(0, key.indexOf(' ')))
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static String getKey(String recordId, String variant) {
+        return recordId + " " + variant;
+    }
+
+    /**
+     * @return hit, miss and eviction statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return approximate number of indexed validators
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * ETag and Last-Modified value of a response
+     */
+    public static class Validators {
+
+        private final String eTag;
+        private final ZonedDateTime lastModified;
+
+        public Validators(String eTag, ZonedDateTime lastModified) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public ZonedDateTime getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package eu.europeana.iiif.service.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception that is thrown when a requested canvas page doesn't exist
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class CanvasPageNotFoundException extends IIIFException {
+
+    public CanvasPageNotFoundException(String msg, Throwable t) {
+        super(msg, t);
+    }
+
+    public CanvasPageNotFoundException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * @return false because we don't want to explicitly log this type of exception
+     */
+    @Override
+    public boolean doLog() {
+        return false;
+    }
+}
@@ -0,0 +1,161 @@
+package eu.europeana.iiif.web;
+
+import eu.europeana.iiif.service.CacheUtils;
+import eu.europeana.iiif.service.ManifestService;
+import eu.europeana.iiif.service.ValidateUtils;
+import eu.europeana.iiif.service.exception.IIIFException;
+import eu.europeana.iiif.service.exception.InvalidApiKeyException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rest controller for administrative tasks, e.g. telling the service (and the CDN) that a record or dataset was
+ * updated.
+ * All requests require an 'Authorization: Bearer <key>' header with the configured admin key.
+ */
+@RestController
+public class AdminController {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private ManifestService manifestService;
+
+    public AdminController(ManifestService manifestService) {
+        this.manifestService = manifestService;
+    }
+
+    /**
+     * Removes the indexed validators (and cached data) of a record, so the next conditional request for this record
+     * retrieves the record from the Record API again
+     *
+     * @param collectionId (required field)
+     * @param recordId     (required field)
+     * @param authorization Authorization header containing the admin key
+     * @return number of removed validators
+     * @throws IIIFException when the admin key is not valid or the record id has an illegal format
+     */
+    @DeleteMapping(value = "/admin/validators/{collectionId}/{recordId}")
+    public Map<String, Long> invalidateRecord(
+            @PathVariable String collectionId,
+            @PathVariable String recordId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) throws IIIFException {
+        validateAdminKey(authorization);
+        String id = "/" + collectionId + "/" + recordId;
+        ValidateUtils.validateRecordIdFormat(id);
+        return Collections.singletonMap("invalidated", manifestService.invalidateValidators(id));
+    }
+
+    /**
+     * Removes the indexed validators (and cached data) of all records in a dataset
+     *
+     * @param collectionId (required field)
+     * @param authorization Authorization header containing the admin key
+     * @return number of removed validators
+     * @throws IIIFException when the admin key is not valid or the dataset id has an illegal format
+     */
+    @DeleteMapping(value = "/admin/validators/{collectionId}")
+    public Map<String, Long> invalidateDataset(
+            @PathVariable String collectionId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) throws IIIFException {
+        validateAdminKey(authorization);
+        // a dataset id has the same format as the first part of a record id
+        ValidateUtils.validateRecordIdFormat("/" + collectionId + "/");
+        return Collections.singletonMap("invalidated", manifestService.invalidateValidators("/" + collectionId));
+    }
+
+    /**
+     * Lists the surrogate key of a dataset and the records of the dataset that were requested recently, so it's clear
+     * what a purge of the dataset affects
+     *
+     * @param collectionId (required field)
+     * @param authorization Authorization header containing the admin key
+     * @return dataset surrogate key and the ids of recently requested records
+     * @throws IIIFException when the admin key is not valid or the dataset id has an illegal format
+     */
+    @GetMapping(value = "/admin/purge/{collectionId}")
+    public Map<String, Object> listDatasetPurge(
+            @PathVariable String collectionId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) throws IIIFException {
+        validateAdminKey(authorization);
+        ValidateUtils.validateRecordIdFormat("/" + collectionId + "/");
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("surrogateKey", CacheUtils.getDatasetSurrogateKey(collectionId));
+        result.put("records", manifestService.getIndexedRecordIds(collectionId));
+        return result;
+    }
+
+    /**
+     * Purges a record that was updated: the indexed validators and cached data are removed and, if configured, the
+     * CDN is asked to purge all responses tagged with the record's surrogate key
+     *
+     * @param collectionId (required field)
+     * @param recordId     (required field)
+     * @param authorization Authorization header containing the admin key
+     * @return number of removed validators and whether the CDN purge succeeded
+     * @throws IIIFException when the admin key is not valid or the record id has an illegal format
+     */
+    @PostMapping(value = "/admin/purge/{collectionId}/{recordId}")
+    public Map<String, Object> purgeRecord(
+            @PathVariable String collectionId,
+            @PathVariable String recordId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) throws IIIFException {
+        validateAdminKey(authorization);
+        String id = "/" + collectionId + "/" + recordId;
+        ValidateUtils.validateRecordIdFormat(id);
+        return purge(id, CacheUtils.getRecordSurrogateKey(id));
+    }
+
+    /**
+     * Purges a dataset of which records were updated: the indexed validators and cached data of all its records are
+     * removed and, if configured, the CDN is asked to purge all responses tagged with the dataset's surrogate key
+     *
+     * @param collectionId (required field)
+     * @param authorization Authorization header containing the admin key
+     * @return number of removed validators and whether the CDN purge succeeded
+     * @throws IIIFException when the admin key is not valid or the dataset id has an illegal format
+     */
+    @PostMapping(value = "/admin/purge/{collectionId}")
+    public Map<String, Object> purgeDataset(
+            @PathVariable String collectionId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) throws IIIFException {
+        validateAdminKey(authorization);
+        ValidateUtils.validateRecordIdFormat("/" + collectionId + "/");
+        return purge("/" + collectionId, CacheUtils.getDatasetSurrogateKey(collectionId));
+    }
+
+    private Map<String, Object> purge(String idPrefix, String surrogateKey) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("invalidated", manifestService.invalidateValidators(idPrefix));
+        result.put("surrogateKey", surrogateKey);
+        result.put("cdnPurged", manifestService.purgeCdn(surrogateKey));
+        return result;
+    }
+
+    /**
+     * Checks the provided Authorization header against the configured admin key. If no admin key is configured, the
+     * admin endpoints are disabled and all requests are refused.
+     */
+    private void validateAdminKey(String authorization) throws InvalidApiKeyException {
+        String adminKey = manifestService.getSettings().getAdminApiKey();
+        if (StringUtils.isEmpty(adminKey) || authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            throw new InvalidApiKeyException("Admin key is not valid");
+        }
+        // compare in constant time, so the key can't be guessed from response times
+        byte[] provided = authorization.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(provided, adminKey.getBytes(StandardCharsets.UTF_8))) {
+            throw new InvalidApiKeyException("Admin key is not valid");
+        }
+    }
+}
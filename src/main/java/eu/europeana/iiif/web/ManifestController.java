@@ -1,24 +1,52 @@
 package eu.europeana.iiif.web;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import eu.europeana.iiif.model.Definitions;
+import eu.europeana.iiif.model.edm.EdmRecord;
 import eu.europeana.iiif.service.EdmManifestMapping;
 import eu.europeana.iiif.service.CacheUtils;
+import eu.europeana.iiif.service.ManifestCache;
 import eu.europeana.iiif.service.ManifestService;
+import eu.europeana.iiif.service.SingleFlight;
+import eu.europeana.iiif.service.StaleManifestCache;
 import eu.europeana.iiif.service.ValidateUtils;
+import eu.europeana.iiif.service.ValidatorIndex;
 import eu.europeana.iiif.service.exception.IIIFException;
+import eu.europeana.iiif.service.exception.IllegalArgumentException;
+import eu.europeana.iiif.service.exception.InvalidApiKeyException;
+import eu.europeana.iiif.service.exception.RecordParseException;
+import eu.europeana.iiif.service.exception.RecordRetrieveException;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpHeaders;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,8 +67,23 @@ public class ManifestController {
     /* for parsing accept headers */
     private static final Pattern acceptProfilePattern = Pattern.compile("profile=\"(.*?)\"");
 
+    /* manifests can differ per IIIF version (Accept header) and can be sent gzip encoded */
+    private static final String VARY_HEADER = "Accept, Accept-Encoding";
+
+    /* for writing bulk responses */
+    private static final ObjectMapper BULK_MAPPER = new ObjectMapper();
+    private static final byte[] BULK_ID_START = "{\"id\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BULK_MANIFEST_START = ",\"manifest\":".getBytes(StandardCharsets.UTF_8);
+
     private ManifestService manifestService;
 
+    // concurrent identical requests share a single record retrieval and a single manifest generation
+    private final SingleFlight<String, EdmRecord> recordRequests = new SingleFlight<>();
+    private final SingleFlight<String, ManifestCache.CachedManifest> manifestGenerations = new SingleFlight<>();
+    // streamed manifests are generated once, but serialized by each request into its own response
+    private final SingleFlight<String, Object> manifestStreams = new SingleFlight<>();
+    private final SingleFlight<String, ManifestCache.CachedManifest> staleRefreshes = new SingleFlight<>();
+
     public ManifestController(ManifestService manifestService) {
         this.manifestService = manifestService;
     }
@@ -54,13 +97,14 @@ public class ManifestController {
      * @param version      (optional) indicates which IIIF version to generate, either '2' or '3'
      * @param recordApi    (optional) alternative recordApi baseUrl to use for retrieving record data
      * @param fullTextApi  (optional) alternative fullTextApi baseUrl to use for retrieving record data
-     * @return JSON-LD string containing manifest
+     * @return JSON-LD containing manifest, or null if the manifest was streamed directly into the response
      * @throws IIIFException when something goes wrong during processing
+     * @throws IOException when there is a problem writing a streamed response
      */
     @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
 
     @GetMapping(value = "/presentation/{collectionId}/{recordId}/manifest")
-    public ResponseEntity<String> manifestRequest(
+    public ResponseEntity<byte[]> manifestRequest(
             @PathVariable String collectionId,
             @PathVariable String recordId,
             @RequestParam(value = "wskey", required = true) String wskey,
@@ -69,48 +113,725 @@ public class ManifestController {
             @RequestParam(value = "fullText", required = false, defaultValue = "true") Boolean addFullText,
             @RequestParam(value = "fullTextApi", required = false) URL fullTextApi,
             HttpServletRequest request,
-            HttpServletResponse response) throws IIIFException {
+            HttpServletResponse response) throws IIIFException, IOException {
         // TODO integrate with apikey service?? (or leave it like this?)
 
         String id = "/" + collectionId + "/" + recordId;
-        ValidateUtils.validateWskeyFormat(wskey);
-        ValidateUtils.validateRecordIdFormat(id);
+        validateRequest(id, wskey, recordApi, fullTextApi);
 
-        if (recordApi != null) {
-            ValidateUtils.validateApiUrlFormat(recordApi);
+        if (!isAcceptHeaderOK(request)) {
+            return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE);
         }
-        if (fullTextApi != null) {
-            ValidateUtils.validateApiUrlFormat(fullTextApi);
+        // if no version was provided as request param, then we check the accept header for a profiles= value
+        String iiifVersion = (version == null ? versionFromAcceptHeader(request) : version);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        ResponseEntity<byte[]> notModified = checkIndexedValidators(id, wskey, recordApi, iiifVersion, VARY_HEADER,
+                ifNoneMatch, ifModifiedSince);
+        if (notModified != null) {
+            LOG.debug("Returning 304 response (indexed validators)");
+            return notModified;
+        }
+        String staleKey = getStaleKey(id, recordApi, iiifVersion, addFullText, fullTextApi);
+        StaleManifestCache.StaleManifest stale = manifestService.getStaleWhileRevalidate(staleKey, wskey, recordApi);
+        if (stale != null) {
+            LOG.debug("Returning stale manifest while revalidating");
+            refreshStaleManifest(staleKey, id, wskey, recordApi, iiifVersion, addFullText, fullTextApi);
+            return createStaleResponse(stale, id, iiifVersion, ifNoneMatch, ifModifiedSince, acceptEncoding, false);
+        }
+
+        EdmRecord record;
+        try {
+            record = recordRequests.execute(getRecordRequestKey(id, wskey, recordApi),
+                    () -> manifestService.getRecordJson(id, wskey, recordApi));
+        } catch (RecordRetrieveException | HystrixRuntimeException e) {
+            stale = manifestService.getStaleIfError(staleKey, wskey, recordApi);
+            if (stale == null) {
+                throw e;
+            }
+            LOG.warn("Returning stale manifest of record {} because the record can't be retrieved: {}", id,
+                    e.getMessage());
+            return createStaleResponse(stale, id, iiifVersion, ifNoneMatch, ifModifiedSince, acceptEncoding, true);
+        }
+        ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+        String           eTag = generateETag(id, lastModified, iiifVersion);
+        manifestService.indexValidators(id, recordApi, iiifVersion, eTag, lastModified);
+        HttpHeaders   headers = generateCacheHeaders(id, eTag, lastModified, VARY_HEADER);
+        ResponseEntity cached = CacheUtils.checkCached(request, headers, lastModified, eTag);
+        if (cached != null) {
+            LOG.debug("Returning 304 response");
+            return cached;
+        }
+
+        headers.add("Content-Type", getContentType(iiifVersion));
+        String manifestKey = getManifestKey(eTag, recordApi, addFullText, fullTextApi);
+        ManifestCache.CachedManifest cachedManifest = manifestService.getCachedManifest(manifestKey);
+        if (cachedManifest != null) {
+            LOG.debug("Returning cached manifest");
+            manifestService.cacheStaleManifest(staleKey, cachedManifest, eTag, lastModified);
+            return createResponse(cachedManifest, headers, acceptEncoding);
+        }
+        ManifestOrigin origin = new ManifestOrigin(staleKey, id, recordApi, iiifVersion, eTag, lastModified);
+
+        if (manifestService.getSettings().isResponseStreaming()) {
+            // concurrent identical requests share the generated manifest, but we stream it outside the single flight so
+            // a slow client doesn't hold up the other requests
+            Object manifest = manifestStreams.execute(manifestKey, () ->
+                    generateManifest(record, iiifVersion, addFullText, fullTextApi));
+            ManifestCache.CachedManifest copy = streamManifest(manifest, manifestKey, origin, headers, response);
+            if (copy != null) {
+                manifestService.cacheStaleManifest(staleKey, copy, eTag, lastModified);
+            }
+            return null;
+        }
+
+        ManifestCache.CachedManifest manifest = manifestGenerations.execute(manifestKey, () ->
+                generateAndCacheManifest(manifestKey, origin, record, addFullText, fullTextApi));
+        manifestService.cacheStaleManifest(staleKey, manifest, eTag, lastModified);
+        return createResponse(manifest, headers, acceptEncoding);
+    }
+
+    /**
+     * Stale manifests are kept per request, identified by record, Record API, IIIF version and the options that
+     * influence the generated manifest (but not the record version). The key starts with the record id and a space, so
+     * the stale manifests of a record or dataset can be removed when it's purged.
+     */
+    private String getStaleKey(String id, URL recordApi, String iiifVersion, boolean addFullText, URL fullTextApi) {
+        return id + " " + recordApi + " " + iiifVersion + " " + addFullText + " " + fullTextApi;
+    }
+
+    /**
+     * Creates a response with a stale manifest (or 304 Not Modified if the client already has it). The Warning header
+     * tells that the manifest is stale (110) and, if we couldn't retrieve the record, that revalidating failed (111).
+     * The Age header has the number of seconds since we knew the manifest was up-to-date.
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    private ResponseEntity<byte[]> createStaleResponse(StaleManifestCache.StaleManifest stale, String id,
+                                                       String iiifVersion, String ifNoneMatch, String ifModifiedSince,
+                                                       String acceptEncoding, boolean revalidationFailed) {
+        HttpHeaders headers = generateCacheHeaders(id, stale.getETag(), stale.getLastModified(), VARY_HEADER);
+        headers.add("Age", Long.toString(TimeUnit.MILLISECONDS.toSeconds(stale.getAge())));
+        headers.add("Warning", "110 - \"Response is Stale\"");
+        if (revalidationFailed) {
+            headers.add("Warning", "111 - \"Revalidation Failed\"");
+        }
+        ResponseEntity<byte[]> cached = CacheUtils.checkCached(ifNoneMatch, ifModifiedSince, null, headers,
+                stale.getLastModified(), stale.getETag());
+        if (cached != null) {
+            return cached;
+        }
+        headers.add("Content-Type", getContentType(iiifVersion));
+        return createResponse(stale.getManifest(), headers, acceptEncoding);
+    }
+
+    /**
+     * Retrieves the record and generates the manifest in the background, so the stale manifest is replaced by an
+     * up-to-date one. Concurrent requests for the same stale manifest share a single refresh.
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    private void refreshStaleManifest(String staleKey, String id, String wskey, URL recordApi, String iiifVersion,
+                                      boolean addFullText, URL fullTextApi) {
+        staleRefreshes.executeAsync(staleKey, () -> getRecordJsonAsync(id, wskey, recordApi).thenCompose(record -> {
+            ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+            String eTag = generateETag(id, lastModified, iiifVersion);
+            manifestService.indexValidators(id, recordApi, iiifVersion, eTag, lastModified);
+            ManifestOrigin origin = new ManifestOrigin(staleKey, id, recordApi, iiifVersion, eTag, lastModified);
+            return generateManifestAsync(record, origin, addFullText, fullTextApi).thenApply(manifest -> {
+                manifestService.cacheStaleManifest(staleKey, manifest, eTag, lastModified);
+                return manifest;
+            });
+        })).whenComplete((manifest, error) -> {
+            if (error != null) {
+                LOG.warn("Error refreshing stale manifest of record {}", id, error);
+            }
+        });
+    }
+
+    /**
+     * Answers a conditional request with the indexed validators of a previous response, so we don't have to retrieve
+     * the record first. Only 304 Not Modified responses are returned this way. If the request isn't conditional, if
+     * there are no (usable) validators or if the client's version doesn't match, we return null and the request is
+     * handled as usual.
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    private ResponseEntity<byte[]> checkIndexedValidators(String id, String wskey, URL recordApi, String variant,
+                                                          String vary, String ifNoneMatch, String ifModifiedSince) {
+        if (StringUtils.isEmpty(ifNoneMatch) && StringUtils.isEmpty(ifModifiedSince)) {
+            return null;
+        }
+        ValidatorIndex.Validators validators = manifestService.getIndexedValidators(id, wskey, recordApi, variant);
+        if (validators == null) {
+            return null;
+        }
+        HttpHeaders headers = generateCacheHeaders(id, validators.getETag(), validators.getLastModified(), vary);
+        return CacheUtils.checkCached(ifNoneMatch, ifModifiedSince, null, headers, validators.getLastModified(),
+                validators.getETag());
+    }
+
+    /**
+     * Generates the caching headers of a manifest or canvas page response, including the Cache-Control policy of the
+     * record's dataset and the surrogate keys that a CDN can use to purge the response
+     */
+    private HttpHeaders generateCacheHeaders(String id, String eTag, ZonedDateTime lastModified, String vary) {
+        HttpHeaders headers = CacheUtils.generateCacheHeaders(manifestService.getCacheControl(id), eTag, lastModified,
+                vary);
+        CacheUtils.addSurrogateKeys(headers, id);
+        return headers;
+    }
+
+    /**
+     * Returns the gzip encoded manifest if that's available and accepted by the client, otherwise the plain manifest.
+     * Either way no compression is done for this request.
+     */
+    private ResponseEntity<byte[]> createResponse(ManifestCache.CachedManifest manifest, HttpHeaders headers,
+                                                  String acceptEncoding) {
+        if (manifest.getGzipContent() != null && CacheUtils.acceptsGzip(acceptEncoding)) {
+            headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return new ResponseEntity<>(manifest.getGzipContent(), headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(manifest.getContent(), headers, HttpStatus.OK);
+    }
+
+    private Object generateManifest(EdmRecord record, String iiifVersion, boolean addFullText, URL fullTextApi)
+            throws InvalidApiKeyException {
+        boolean direct = manifestService.getSettings().isManifestWriterDirect();
+        if ("3".equalsIgnoreCase(iiifVersion)) {
+            return direct ? manifestService.generateDirectManifestV3(record)
+                    : manifestService.generateManifestV3(record, addFullText, fullTextApi);
+        }
+        // fallback option
+        return direct ? manifestService.generateDirectManifestV2(record, addFullText, fullTextApi)
+                : manifestService.generateManifestV2(record, addFullText, fullTextApi);
+    }
+
+    /**
+     * Serializes the manifest directly into the response, so the serialized manifest is never held in memory as a
+     * whole. Headers (including the ETag) are set before we start writing. Small manifests are still cached.
+     *
+     * If serializing fails before anything was sent (i.e. within the first response buffer), the response is reset so
+     * the exception handler can send a proper error response. If part of the manifest was already sent, the status
+     * and headers can't be changed anymore and the client gets a truncated 200 response. That's the price of streaming
+     * (see response.streaming setting).
+     * @return the cached manifest, or null if the manifest was too large to keep a copy
+     */
+    private ManifestCache.CachedManifest streamManifest(Object manifest, String manifestKey, ManifestOrigin origin,
+                                                        HttpHeaders headers, HttpServletResponse response)
+            throws IIIFException {
+        response.setStatus(HttpStatus.OK.value());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                response.addHeader(header.getKey(), value);
+            }
+        }
+        byte[] copy;
+        try {
+            copy = manifestService.serializeManifest(manifest, response.getOutputStream(),
+                    manifestService.getSettings().getResponseStreamingCacheMaxBytes());
+            response.flushBuffer();
+        } catch (RecordParseException | RuntimeException e) {
+            resetIfNotCommitted(response);
+            throw e;
+        } catch (IOException e) {
+            resetIfNotCommitted(response);
+            throw new RecordParseException("Error writing manifest: " + e.getMessage(), e);
         }
+        return (copy == null ? null : cacheManifest(manifestKey, origin, manifest, copy));
+    }
+
+    private static void resetIfNotCommitted(HttpServletResponse response) {
+        if (!response.isCommitted()) {
+            response.reset();
+        }
+    }
+
+    /**
+     * Generates and caches the manifest of a record the same way as a manifest request (with default options) would,
+     * so it's available when it's requested. Used to warm up the cache after startup.
+     *
+     * @param id           record id in the form of "/collectionId/recordId"
+     * @param wskey        apikey
+     * @param iiifVersion  IIIF version to generate, either '2' or '3'
+     * @throws IIIFException when something goes wrong during processing
+     */
+    public void warmUpManifest(String id, String wskey, String iiifVersion) throws IIIFException {
+        validateRequest(id, wskey, null, null);
+        EdmRecord record = recordRequests.execute(getRecordRequestKey(id, wskey, null),
+                () -> manifestService.getRecordJson(id, wskey, null));
+        ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+        String eTag = generateETag(id, lastModified, iiifVersion);
+        manifestService.indexValidators(id, null, iiifVersion, eTag, lastModified);
+        String manifestKey = getManifestKey(eTag, null, true, null);
+        if (manifestService.getCachedManifest(manifestKey) == null) {
+            ManifestOrigin origin = new ManifestOrigin(getStaleKey(id, null, iiifVersion, true, null), id, null,
+                    iiifVersion, eTag, lastModified);
+            manifestGenerations.execute(manifestKey, () ->
+                    generateAndCacheManifest(manifestKey, origin, record, true, null));
+        }
+    }
+
+    /**
+     * Handles canvas page requests. For records with very many canvases the manifest only contains the first page of
+     * canvases and a link to the next page (see canvas.paging-threshold setting). Canvas pages are only available for
+     * IIIF v2.
+     *
+     * @param collectionId (required field)
+     * @param recordId     (required field)
+     * @param page         number of the requested page, first page is 1 (required field)
+     * @param wskey        apikey (required field)
+     * @param recordApi    (optional) alternative recordApi baseUrl to use for retrieving record data
+     * @param fullTextApi  (optional) alternative fullTextApi baseUrl to use for retrieving record data
+     * @return JSON-LD containing the canvas page
+     * @throws IIIFException when something goes wrong during processing
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    @GetMapping(value = "/presentation/{collectionId}/{recordId}/canvases/{page}")
+    public ResponseEntity<byte[]> canvasPageRequest(
+            @PathVariable String collectionId,
+            @PathVariable String recordId,
+            @PathVariable int page,
+            @RequestParam(value = "wskey", required = true) String wskey,
+            @RequestParam(value = "recordApi", required = false) URL recordApi,
+            @RequestParam(value = "fullText", required = false, defaultValue = "true") Boolean addFullText,
+            @RequestParam(value = "fullTextApi", required = false) URL fullTextApi,
+            HttpServletRequest request) throws IIIFException {
+        String id = "/" + collectionId + "/" + recordId;
+        validateRequest(id, wskey, recordApi, fullTextApi);
 
         if (!isAcceptHeaderOK(request)) {
             return new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE);
         }
-        // if no version was provided as request param, then we check the accept header for a profiles= value
-        String iiifVersion = version;
-        if (iiifVersion == null) {
-            iiifVersion = versionFromAcceptHeader(request);
+        String variant = "2 page " + page;
+        ResponseEntity<byte[]> notModified = checkIndexedValidators(id, wskey, recordApi, variant, "Accept",
+                request.getHeader("If-None-Match"), request.getHeader("If-Modified-Since"));
+        if (notModified != null) {
+            LOG.debug("Returning 304 response (indexed validators)");
+            return notModified;
         }
 
-        String json = manifestService.getRecordJson(id, wskey, recordApi);
-        ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(json);
-        String           eTag = generateETag(id, lastModified, iiifVersion);
-        HttpHeaders   headers = CacheUtils.generateCacheHeaders("no-cache", eTag, lastModified, "Accept");
+        EdmRecord record = recordRequests.execute(getRecordRequestKey(id, wskey, recordApi),
+                () -> manifestService.getRecordJson(id, wskey, recordApi));
+        ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+        String           eTag = generateETag(id, lastModified, variant);
+        manifestService.indexValidators(id, recordApi, variant, eTag, lastModified);
+        HttpHeaders   headers = generateCacheHeaders(id, eTag, lastModified, "Accept");
         ResponseEntity cached = CacheUtils.checkCached(request, headers, lastModified, eTag);
         if (cached != null) {
             LOG.debug("Returning 304 response");
             return cached;
         }
 
-        Object manifest;
+        headers.add("Content-Type", MEDIA_TYPE_IIIF_JSONLD_V2);
+        String jsonLd = manifestService.serializeManifest(
+                manifestService.generateCanvasPageV2(record, page, addFullText, fullTextApi));
+        return new ResponseEntity<>(jsonLd.getBytes(StandardCharsets.UTF_8), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Handles manifest requests asynchronously, so no servlet thread is blocked while we wait for the Record API or
+     * Full-Text API. Generating and serializing the manifest is done in a separate thread pool.
+     *
+     * @param collectionId (required field)
+     * @param recordId     (required field)
+     * @param wskey        apikey (required field)
+     * @param version      (optional) indicates which IIIF version to generate, either '2' or '3'
+     * @param recordApi    (optional) alternative recordApi baseUrl to use for retrieving record data
+     * @param fullTextApi  (optional) alternative fullTextApi baseUrl to use for retrieving record data
+     * @return deferred result with the JSON-LD containing manifest
+     * @throws IIIFException when the request parameters are not valid
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    @GetMapping(value = "/presentation/{collectionId}/{recordId}/manifest", params = "async=true")
+    public DeferredResult<ResponseEntity<byte[]>> manifestRequestAsync(
+            @PathVariable String collectionId,
+            @PathVariable String recordId,
+            @RequestParam(value = "wskey", required = true) String wskey,
+            @RequestParam(value = "format", required = false) String version,
+            @RequestParam(value = "recordApi", required = false) URL recordApi,
+            @RequestParam(value = "fullText", required = false, defaultValue = "true") Boolean addFullText,
+            @RequestParam(value = "fullTextApi", required = false) URL fullTextApi,
+            HttpServletRequest request) throws IIIFException {
+        String id = "/" + collectionId + "/" + recordId;
+        validateRequest(id, wskey, recordApi, fullTextApi);
+
+        DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>();
+        if (!isAcceptHeaderOK(request)) {
+            result.setResult(new ResponseEntity<>(HttpStatus.NOT_ACCEPTABLE));
+            return result;
+        }
+        String iiifVersion = (version == null ? versionFromAcceptHeader(request) : version);
+        // note that we need to read the request headers before we leave the servlet thread
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        String ifMatch = request.getHeader("If-Match");
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        ResponseEntity<byte[]> notModified = checkIndexedValidators(id, wskey, recordApi, iiifVersion, VARY_HEADER,
+                ifNoneMatch, ifModifiedSince);
+        if (notModified != null) {
+            LOG.debug("Returning 304 response (indexed validators)");
+            result.setResult(notModified);
+            return result;
+        }
+        String staleKey = getStaleKey(id, recordApi, iiifVersion, addFullText, fullTextApi);
+        StaleManifestCache.StaleManifest stale = manifestService.getStaleWhileRevalidate(staleKey, wskey, recordApi);
+        if (stale != null) {
+            LOG.debug("Returning stale manifest while revalidating");
+            refreshStaleManifest(staleKey, id, wskey, recordApi, iiifVersion, addFullText, fullTextApi);
+            result.setResult(createStaleResponse(stale, id, iiifVersion, ifNoneMatch, ifModifiedSince, acceptEncoding,
+                    false));
+            return result;
+        }
+
+        getRecordJsonAsync(id, wskey, recordApi).thenCompose(record -> {
+            ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+            String           eTag = generateETag(id, lastModified, iiifVersion);
+            manifestService.indexValidators(id, recordApi, iiifVersion, eTag, lastModified);
+            HttpHeaders   headers = generateCacheHeaders(id, eTag, lastModified, VARY_HEADER);
+            ResponseEntity<byte[]> cached = CacheUtils.checkCached(ifNoneMatch, ifModifiedSince, ifMatch, headers,
+                    lastModified, eTag);
+            if (cached != null) {
+                LOG.debug("Returning 304 response");
+                return CompletableFuture.completedFuture(cached);
+            }
+
+            headers.add("Content-Type", getContentType(iiifVersion));
+            ManifestOrigin origin = new ManifestOrigin(staleKey, id, recordApi, iiifVersion, eTag, lastModified);
+            return generateManifestAsync(record, origin, addFullText, fullTextApi).thenApply(manifest -> {
+                manifestService.cacheStaleManifest(staleKey, manifest, eTag, lastModified);
+                return createResponse(manifest, headers, acceptEncoding);
+            });
+        }).whenComplete((response, error) -> {
+            if (error == null) {
+                result.setResult(response);
+                return;
+            }
+            Throwable cause = (error instanceof CompletionException ? error.getCause() : error);
+            StaleManifestCache.StaleManifest staleIfError = null;
+            if (cause instanceof RecordRetrieveException || cause instanceof HystrixRuntimeException) {
+                staleIfError = manifestService.getStaleIfError(staleKey, wskey, recordApi);
+            }
+            if (staleIfError == null) {
+                result.setErrorResult(cause);
+            } else {
+                LOG.warn("Returning stale manifest of record {} because the record can't be retrieved: {}", id,
+                        cause.getMessage());
+                result.setResult(createStaleResponse(staleIfError, id, iiifVersion, ifNoneMatch, ifModifiedSince,
+                        acceptEncoding, true));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Retrieves record data without blocking, concurrent identical requests share the same Record API request
+     */
+    private CompletableFuture<EdmRecord> getRecordJsonAsync(String id, String wskey, URL recordApi) {
+        return recordRequests.executeAsync(getRecordRequestKey(id, wskey, recordApi),
+                () -> manifestService.getRecordJsonAsync(id, wskey, recordApi));
+    }
+
+    /**
+     * Returns the serialized manifest from cache, or generates it without blocking. Concurrent identical requests
+     * share the same manifest generation.
+     */
+    private CompletableFuture<ManifestCache.CachedManifest> generateManifestAsync(EdmRecord record,
+                                                                                  ManifestOrigin origin,
+                                                                                  boolean addFullText, URL fullTextApi) {
+        String manifestKey = getManifestKey(origin.eTag, origin.recordApi, addFullText, fullTextApi);
+        String iiifVersion = origin.iiifVersion;
+        ManifestCache.CachedManifest cachedManifest = manifestService.getCachedManifest(manifestKey);
+        if (cachedManifest != null) {
+            LOG.debug("Returning cached manifest");
+            return CompletableFuture.completedFuture(cachedManifest);
+        }
+
+        return manifestGenerations.executeAsync(manifestKey, () -> {
+            boolean direct = manifestService.getSettings().isManifestWriterDirect();
+            CompletableFuture<?> manifest;
+            if ("3".equalsIgnoreCase(iiifVersion)) {
+                manifest = direct ? manifestService.generateDirectManifestV3Async(record)
+                        : manifestService.generateManifestV3Async(record, addFullText, fullTextApi);
+            } else if (direct) {
+                manifest = manifestService.generateDirectManifestV2Async(record, addFullText, fullTextApi);
+            } else {
+                manifest = manifestService.generateManifestV2Async(record, addFullText, fullTextApi); // fallback option
+            }
+            return manifest.thenCompose(m -> manifestService.serializeManifestAsync(m)
+                    .thenApply(jsonLd -> cacheManifest(manifestKey, origin, m, jsonLd)));
+        });
+    }
+
+    /**
+     * Handles bulk manifest requests, i.e. generates manifests for a list of records. Records are processed
+     * concurrently (with a configurable maximum) and each manifest is written to the response as soon as it's ready, so
+     * the order of the results can differ from the order of the provided ids. If there is a problem with a particular
+     * record, the result for that record contains an error instead of a manifest. Records that are not done within the
+     * bulk timeout get a 504 error, so the response always contains one result per provided id.
+     *
+     * @param ids          json array of record ids in the form of "/collectionId/recordId" (required field)
+     * @param wskey        apikey (required field)
+     * @param version      (optional) indicates which IIIF version to generate, either '2' or '3'
+     * @param recordApi    (optional) alternative recordApi baseUrl to use for retrieving record data
+     * @param fullTextApi  (optional) alternative fullTextApi baseUrl to use for retrieving record data
+     * @throws IIIFException when the request parameters are not valid
+     * @throws IOException when there is a problem writing the response
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    @PostMapping(value = "/presentation/manifests")
+    public void bulkManifestRequest(
+            @RequestBody List<String> ids,
+            @RequestParam(value = "wskey", required = true) String wskey,
+            @RequestParam(value = "format", required = false, defaultValue = "2") String version,
+            @RequestParam(value = "recordApi", required = false) URL recordApi,
+            @RequestParam(value = "fullText", required = false, defaultValue = "true") Boolean addFullText,
+            @RequestParam(value = "fullTextApi", required = false) URL fullTextApi,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IIIFException, IOException {
+        validateParameters(wskey, recordApi, fullTextApi);
+        int maxRecords = manifestService.getSettings().getBulkMaxRecords();
+        if (ids.size() > maxRecords) {
+            throw new IllegalArgumentException("Too many record ids, the maximum is " + maxRecords);
+        }
+
+        // results are passed to the servlet thread in the order in which they are ready
+        BlockingQueue<BulkResult> completed = new LinkedBlockingQueue<>();
+        int parallelism = Math.max(1, manifestService.getSettings().getBulkParallelism());
+        int next = 0;
+        while (next < ids.size() && next < parallelism) {
+            startBulkItem(next, ids.get(next), wskey, version, addFullText, recordApi, fullTextApi, completed);
+            next++;
+        }
+        long deadline = System.currentTimeMillis() + manifestService.getSettings().getBulkTimeout();
+
+        boolean ndJson = StringUtils.containsIgnoreCase(request.getHeader("Accept"), Definitions.MEDIA_TYPE_NDJSON);
+        response.setContentType((ndJson ? Definitions.MEDIA_TYPE_NDJSON : MediaType.APPLICATION_JSON_VALUE) + ";charset=UTF-8");
+        OutputStream out = response.getOutputStream();
+        if (!ndJson) {
+            out.write('[');
+        }
+        boolean[] done = new boolean[ids.size()];
+        int written = 0;
+        try {
+            while (written < ids.size()) {
+                BulkResult result = completed.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    break;
+                }
+                if (!ndJson && written > 0) {
+                    out.write(',');
+                }
+                writeBulkResult(out, result, ndJson);
+                out.flush();
+                done[result.index] = true;
+                written++;
+                if (next < ids.size()) {
+                    startBulkItem(next, ids.get(next), wskey, version, addFullText, recordApi, fullTextApi, completed);
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // we don't close the array, so the client can see that the response is incomplete
+            throw new IOException("Interrupted while waiting for bulk manifest results", e);
+        }
+        if (written < ids.size()) {
+            LOG.warn("Bulk manifest request timed out, {} of {} records not done", ids.size() - written, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (!done[i]) {
+                    if (!ndJson && written > 0) {
+                        out.write(',');
+                    }
+                    writeBulkError(out, ids.get(i), HttpStatus.GATEWAY_TIMEOUT, "Timed out generating manifest",
+                            ndJson);
+                    written++;
+                }
+            }
+        }
+        if (!ndJson) {
+            out.write(']');
+        }
+        out.flush();
+    }
+
+    /**
+     * Starts retrieving the record and generating the manifest for one record of a bulk request. When done, the result
+     * (or error) is added to the provided queue
+     */
+    @SuppressWarnings("squid:S00107") // too many parameters -> we cannot avoid it.
+    private void startBulkItem(int index, String id, String wskey, String iiifVersion, boolean addFullText,
+                               URL recordApi, URL fullTextApi, BlockingQueue<BulkResult> completed) {
+        CompletableFuture<byte[]> manifest;
+        try {
+            ValidateUtils.validateRecordIdFormat(id);
+            manifest = getRecordJsonAsync(id, wskey, recordApi).thenCompose(record -> {
+                ZonedDateTime lastModified = EdmManifestMapping.getRecordTimestampUpdate(record);
+                String eTag = generateETag(id, lastModified, iiifVersion);
+                ManifestOrigin origin = new ManifestOrigin(getStaleKey(id, recordApi, iiifVersion, addFullText,
+                        fullTextApi), id, recordApi, iiifVersion, eTag, lastModified);
+                return generateManifestAsync(record, origin, addFullText, fullTextApi)
+                        .thenApply(ManifestCache.CachedManifest::getContent);
+            });
+        } catch (IIIFException | RuntimeException e) {
+            manifest = new CompletableFuture<>();
+            manifest.completeExceptionally(e);
+        }
+        manifest.whenComplete((jsonLd, error) -> completed.add(new BulkResult(index, id, jsonLd, error)));
+    }
+
+    /**
+     * Writes a single bulk result, either {"id":..., "manifest":...} or {"id":..., "status":..., "error":...}
+     */
+    private void writeBulkResult(OutputStream out, BulkResult result, boolean ndJson) throws IOException {
+        if (result.error != null) {
+            Throwable error = (result.error instanceof CompletionException ? result.error.getCause() : result.error);
+            if (!(error instanceof IIIFException) || ((IIIFException) error).doLog()) {
+                LOG.error("Error generating manifest for record {}", result.id, error);
+            }
+            ResponseStatus status = AnnotationUtils.findAnnotation(error.getClass(), ResponseStatus.class);
+            writeBulkError(out, result.id, (status == null ? HttpStatus.INTERNAL_SERVER_ERROR : status.value()),
+                    error.getMessage(), ndJson);
+            return;
+        }
+        out.write(BULK_ID_START);
+        out.write(BULK_MAPPER.writeValueAsBytes(result.id));
+        out.write(BULK_MANIFEST_START);
+        // manifests are pretty printed, but for ndjson each result has to be on a single line
+        boolean compact = manifestService.getSettings().isResponseCompact();
+        out.write(ndJson && !compact ? compactJson(result.manifest) : result.manifest);
+        out.write('}');
+        if (ndJson) {
+            out.write('\n');
+        }
+    }
+
+    /**
+     * Writes a single bulk error result {"id":..., "status":..., "error":...}
+     */
+    private void writeBulkError(OutputStream out, String id, HttpStatus status, String message, boolean ndJson)
+            throws IOException {
+        Map<String, Object> errorResult = new LinkedHashMap<>();
+        errorResult.put("id", id);
+        errorResult.put("status", status.value());
+        errorResult.put("error", message);
+        out.write(BULK_MAPPER.writeValueAsBytes(errorResult));
+        if (ndJson) {
+            out.write('\n');
+        }
+    }
+
+    private static byte[] compactJson(byte[] json) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = BULK_MAPPER.getFactory().createParser(json);
+             JsonGenerator generator = BULK_MAPPER.getFactory().createGenerator(result)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Result of one record in a bulk request, either a serialized manifest or an error
+     */
+    private static final class BulkResult {
+        private final int index;
+        private final String id;
+        private final byte[] manifest;
+        private final Throwable error;
+
+        private BulkResult(int index, String id, byte[] manifest, Throwable error) {
+            this.index = index;
+            this.id = id;
+            this.manifest = manifest;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The request and record version a manifest is generated for. It's stored with the manifest, so the indexed
+     * validators and stale manifests can be restored after a restart.
+     */
+    private static final class ManifestOrigin {
+        private final String staleKey;
+        private final String id;
+        private final URL recordApi;
+        private final String iiifVersion;
+        private final String eTag;
+        private final ZonedDateTime lastModified;
+
+        private ManifestOrigin(String staleKey, String id, URL recordApi, String iiifVersion, String eTag,
+                               ZonedDateTime lastModified) {
+            this.staleKey = staleKey;
+            this.id = id;
+            this.recordApi = recordApi;
+            this.iiifVersion = iiifVersion;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private void validateRequest(String id, String wskey, URL recordApi, URL fullTextApi) throws IIIFException {
+        ValidateUtils.validateRecordIdFormat(id);
+        validateParameters(wskey, recordApi, fullTextApi);
+    }
+
+    private void validateParameters(String wskey, URL recordApi, URL fullTextApi) throws IIIFException {
+        ValidateUtils.validateWskeyFormat(wskey);
+
+        if (recordApi != null) {
+            ValidateUtils.validateApiUrlFormat(recordApi);
+        }
+        if (fullTextApi != null) {
+            ValidateUtils.validateApiUrlFormat(fullTextApi);
+        }
+    }
+
+    /**
+     * Record requests are only shared by requests with the same api key, so invalid api keys are always detected
+     */
+    private String getRecordRequestKey(String id, String wskey, URL recordApi) {
+        return id + " " + wskey + " " + recordApi;
+    }
+
+    /**
+     * The eTag already identifies the record id, record version, app version and IIIF version. We add the Record API
+     * (records of other environments can differ, even with the same update timestamp) and the options that influence
+     * the generated manifest.
+     */
+    private String getManifestKey(String eTag, URL recordApi, boolean addFullText, URL fullTextApi) {
+        return eTag + " " + recordApi + " " + addFullText + " " + fullTextApi;
+    }
+
+    private ManifestCache.CachedManifest generateAndCacheManifest(String manifestKey, ManifestOrigin origin,
+                                                                  EdmRecord record, boolean addFullText,
+                                                                  URL fullTextApi) throws IIIFException {
+        Object manifest = generateManifest(record, origin.iiifVersion, addFullText, fullTextApi);
+        return cacheManifest(manifestKey, origin, manifest, manifestService.serializeManifest(manifest));
+    }
+
+    private ManifestCache.CachedManifest cacheManifest(String manifestKey, ManifestOrigin origin, Object manifest,
+                                                       String jsonLd) {
+        return cacheManifest(manifestKey, origin, manifest, jsonLd.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Caches the serialized manifest. If configured we also store it gzip encoded, so we compress it only once.
+     * Manifests for which the full text check failed are not cached (see ManifestService.cacheManifest).
+     */
+    private ManifestCache.CachedManifest cacheManifest(String manifestKey, ManifestOrigin origin, Object manifest,
+                                                       byte[] jsonLd) {
+        byte[] gzip = (manifestService.getSettings().isManifestCacheGzip() ? CacheUtils.gzip(jsonLd) : null);
+        ManifestCache.CachedManifest result = new ManifestCache.CachedManifest(jsonLd, gzip,
+                getContentType(origin.iiifVersion), ManifestService.isFullTextUnknown(manifest));
+        manifestService.cacheManifest(manifestKey, result, origin.staleKey, origin.id, origin.recordApi,
+                origin.iiifVersion, origin.eTag, origin.lastModified);
+        return result;
+    }
+
+    private String getContentType(String iiifVersion) {
         if ("3".equalsIgnoreCase(iiifVersion)) {
-            manifest = manifestService.generateManifestV3(json, addFullText, fullTextApi);
-            headers.add("Content-Type", MEDIA_TYPE_IIIF_JSONLD_V3);
-        } else {
-            manifest = manifestService.generateManifestV2(json, addFullText, fullTextApi); // fallback option
-            headers.add("Content-Type", MEDIA_TYPE_IIIF_JSONLD_V2);
+            return MEDIA_TYPE_IIIF_JSONLD_V3;
         }
-        return new ResponseEntity<>(manifestService.serializeManifest(manifest), headers, HttpStatus.OK);
+        return MEDIA_TYPE_IIIF_JSONLD_V2;
     }
 
     private String versionFromAcceptHeader(HttpServletRequest request) {
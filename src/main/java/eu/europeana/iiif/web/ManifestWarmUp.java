@@ -0,0 +1,217 @@
+package eu.europeana.iiif.web;
+
+import eu.europeana.iiif.service.ManifestSettings;
+import eu.europeana.iiif.service.exception.IIIFException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Warms up the manifest cache after startup, so the most requested manifests don't have to be generated while users
+ * are waiting for them. The records are read from a file that contains either a list of record ids or a past access
+ * log. Records are ranked by the number of times they occur and the manifests of the top records are generated with a
+ * configurable concurrency and maximum Record API request rate.
+ *
+ * Until the configured percentage of the warm-up has been processed, the application reports itself as out of service
+ * in the actuator /health endpoint, so a load balancer or readiness probe can wait for it.
+ */
+public class ManifestWarmUp implements HealthIndicator, ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOG = LogManager.getLogger(ManifestWarmUp.class);
+
+    // either a record id on its own or a manifest request in an access log line
+    private static final Pattern RECORD_ID = Pattern.compile("^\\s*(/[a-zA-Z0-9_]+/[a-zA-Z0-9_]+)\\s*$");
+    private static final Pattern MANIFEST_REQUEST = Pattern.compile(
+            "/presentation(/[a-zA-Z0-9_]+/[a-zA-Z0-9_]+)/manifest(\\?[^\\s\"]*)?");
+    private static final Pattern FORMAT_3 = Pattern.compile("[?&]format=3(&|$)");
+
+    private final ManifestController manifestController;
+    private final ManifestSettings settings;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile boolean started;
+    // set when the warm-up file was read (or when we gave up reading it)
+    private volatile boolean loaded;
+    private volatile boolean skipped;
+
+    public ManifestWarmUp(ManifestController manifestController, ManifestSettings settings) {
+        this.manifestController = manifestController;
+        this.settings = settings;
+    }
+
+    /**
+     * Starts the warm-up in the background when the application is ready (if a warm-up file is configured)
+     * @param event application ready event
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (started || StringUtils.isEmpty(settings.getWarmUpFile())) {
+            return;
+        }
+        started = true;
+        Thread thread = new Thread(this::warmUp, "manifest-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        List<String> manifests;
+        try {
+            manifests = rankManifests(settings.getWarmUpFile(), settings.getWarmUpTopN());
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error reading warm-up file {}, skipping warm-up", settings.getWarmUpFile(), e);
+            skipped = true;
+            return;
+        }
+        total.set(manifests.size());
+        loaded = true;
+        LOG.info("Warming up {} manifests", manifests.size());
+        long start = System.currentTimeMillis();
+
+        int parallelism = Math.max(1, settings.getWarmUpParallelism());
+        long interval = (settings.getWarmUpMaxRate() > 0 ? TimeUnit.SECONDS.toNanos(1) / settings.getWarmUpMaxRate() : 0);
+        AtomicLong nextStart = new AtomicLong(System.nanoTime());
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        for (String manifest : manifests) {
+            executor.execute(() -> {
+                waitForTurn(nextStart, interval);
+                warmUp(manifest);
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while warming up manifests", e);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Warm-up done: {} manifests, {} failed, in {} ms", processed.get(), failed.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Limits the rate at which we start generating manifests (and so the rate of Record API requests)
+     */
+    private static void waitForTurn(AtomicLong nextStart, long interval) {
+        if (interval <= 0) {
+            return;
+        }
+        long myStart = nextStart.getAndAdd(interval);
+        long wait = myStart - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void warmUp(String manifest) {
+        int separator = manifest.indexOf(' ');
+        String id = manifest.substring(0, separator);
+        try {
+            manifestController.warmUpManifest(id, settings.getWarmUpWskey(), manifest.substring(separator + 1));
+        } catch (IIIFException | RuntimeException e) {
+            failed.incrementAndGet();
+            LOG.debug("Error warming up manifest of record {}", id, e);
+        } finally {
+            processed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads all record ids (or manifest requests) from the provided file and returns the most frequent ones
+     * @param file path to a file with either one record id per line or an access log
+     * @param topN maximum number of returned manifests
+     * @return record id and IIIF version (separated by a space) of the most requested manifests, most requested first
+     * @throws IOException when the file can't be read
+     */
+    public static List<String> rankManifests(String file, int topN) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String manifest = parseLine(line);
+                if (manifest != null) {
+                    counts.merge(manifest, 1, Integer::sum);
+                }
+            }
+        }
+        if (counts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(topN)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return record id and IIIF version of the manifest in the provided line, or null if there isn't any
+     */
+    private static String parseLine(String line) {
+        Matcher recordId = RECORD_ID.matcher(line);
+        if (recordId.matches()) {
+            return recordId.group(1) + " 2";
+        }
+        Matcher request = MANIFEST_REQUEST.matcher(line);
+        if (request.find()) {
+            String query = request.group(2);
+            boolean v3 = query != null && FORMAT_3.matcher(query).find();
+            return request.group(1) + (v3 ? " 3" : " 2");
+        }
+        return null;
+    }
+
+    /**
+     * Reports the application as out of service until the configured percentage of the warm-up was processed
+     * @return health with the warm-up progress
+     */
+    @Override
+    public Health health() {
+        if (StringUtils.isEmpty(settings.getWarmUpFile()) || skipped) {
+            return Health.up().build();
+        }
+        if (!loaded) {
+            return Health.outOfService().withDetail("warm-up", "not started").build();
+        }
+        int todo = total.get();
+        int done = processed.get();
+        Health.Builder result = (isWarm(done, todo) ? Health.up() : Health.outOfService());
+        return result.withDetail("total", todo)
+                .withDetail("processed", done)
+                .withDetail("failed", failed.get())
+                .build();
+    }
+
+    private boolean isWarm(int done, int todo) {
+        return todo == 0 || done * 100L >= (long) todo * settings.getWarmUpReadyPercentage();
+    }
+}
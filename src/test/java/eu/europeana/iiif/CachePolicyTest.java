@@ -0,0 +1,71 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.CachePolicy;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the CachePolicy class
+ */
+public class CachePolicyTest {
+
+    /**
+     * Test that we send 'no-cache' when no max-age is configured
+     */
+    @Test
+    public void testNoCache() {
+        CachePolicy policy = new CachePolicy(-1, 3600, 60, 86400, null);
+        assertEquals("no-cache", policy.getCacheControl("/1/2"));
+    }
+
+    /**
+     * Test if only the configured directives are added
+     */
+    @Test
+    public void testDefaultPolicy() {
+        assertEquals("public, max-age=60", new CachePolicy(60, -1, -1, -1, "").getCacheControl("/1/2"));
+        assertEquals("public, max-age=60, s-maxage=3600, stale-while-revalidate=30, stale-if-error=86400",
+                new CachePolicy(60, 3600, 30, 86400, "").getCacheControl("/1/2"));
+    }
+
+    /**
+     * Test if datasets can have their own policy
+     */
+    @Test
+    public void testDatasetPolicy() {
+        CachePolicy policy = new CachePolicy(60, -1, -1, -1, "9200579=public, max-age=3600; 2021672 = no-cache");
+        assertEquals("public, max-age=3600", policy.getCacheControl("/9200579/abc"));
+        assertEquals("no-cache", policy.getCacheControl("/2021672/abc"));
+        assertEquals("public, max-age=60", policy.getCacheControl("/920057/abc"));
+    }
+
+    /**
+     * Test that empty entries (e.g. a trailing semicolon) are ignored
+     */
+    @Test
+    public void testDatasetPolicyEmptyEntries() {
+        CachePolicy policy = new CachePolicy(60, -1, -1, -1, "9200579=no-cache;");
+        assertEquals("no-cache", policy.getCacheControl("/9200579/abc"));
+        policy = new CachePolicy(60, -1, -1, -1, "a=no-cache;; b=public, max-age=3600 ; ");
+        assertEquals("no-cache", policy.getCacheControl("/a/abc"));
+        assertEquals("public, max-age=3600", policy.getCacheControl("/b/abc"));
+    }
+
+    /**
+     * Test that a dataset policy without Cache-Control value is reported at startup
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testEmptyDatasetPolicy() {
+        new CachePolicy(60, -1, -1, -1, "9200579= ");
+    }
+
+    /**
+     * Test that an illegal dataset policy is reported at startup
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testIllegalDatasetPolicy() {
+        new CachePolicy(60, -1, -1, -1, "public, max-age=3600");
+    }
+
+}
@@ -0,0 +1,243 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.DiskManifestStore;
+import eu.europeana.iiif.service.ManifestCache;
+import eu.europeana.iiif.service.StaleManifestCache;
+import eu.europeana.iiif.service.ValidatorIndex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the DiskManifestStore class
+ */
+public class DiskManifestStoreTest {
+
+    private static final String CONTENT_TYPE = "application/ld+json";
+    private static final int SEGMENT_BYTES = 4096;
+    private static final long TTL = 60_000;
+    private static final ZonedDateTime LAST_MODIFIED = ZonedDateTime.parse("2017-06-06T19:40:18.082Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ManifestCache.CachedManifest manifest(String json, boolean gzip) {
+        byte[] content = json.getBytes(StandardCharsets.UTF_8);
+        return new ManifestCache.CachedManifest(content, gzip ? new byte[]{1, 2, 3} : null, CONTENT_TYPE);
+    }
+
+    /**
+     * Test if we read back what we stored
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        try (DiskManifestStore store = new DiskManifestStore(folder.getRoot().toPath(), 10 * SEGMENT_BYTES,
+                SEGMENT_BYTES, TTL)) {
+            store.put("W/\"1\" true null", manifest("{\"id\":1}", true));
+            store.put("W/\"2\" true null", manifest("{\"id\":2}", false));
+
+            ManifestCache.CachedManifest result = store.get("W/\"1\" true null");
+            assertNotNull(result);
+            assertEquals("{\"id\":1}", new String(result.getContent(), StandardCharsets.UTF_8));
+            assertArrayEquals(new byte[]{1, 2, 3}, result.getGzipContent());
+            assertEquals(CONTENT_TYPE, result.getContentType());
+            assertNull(store.get("W/\"2\" true null").getGzipContent());
+            assertNull(store.get("W/\"3\" true null"));
+            assertEquals(2, store.getHitCount());
+            assertEquals(1, store.getMissCount());
+        }
+    }
+
+    /**
+     * Test if stored manifests are available again after reopening the store
+     */
+    @Test
+    public void testReload() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("key" + i, manifest("{\"id\":" + i + "}", false));
+            }
+            store.put("key1", manifest("{\"id\":\"updated\"}", false));
+        }
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            assertEquals(100, store.size());
+            assertEquals("{\"id\":99}", new String(store.get("key99").getContent(), StandardCharsets.UTF_8));
+            assertEquals("{\"id\":\"updated\"}", new String(store.get("key1").getContent(), StandardCharsets.UTF_8));
+            // new manifests are appended after the existing ones
+            store.put("key100", manifest("{\"id\":100}", false));
+            assertNotNull(store.get("key0"));
+            assertNotNull(store.get("key100"));
+        }
+    }
+
+    /**
+     * Test if the request and validators of stored manifests are restored after reopening the store
+     */
+    @Test
+    public void testStoredRequestReload() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            store.put("W/\"1\" null true null", manifest("{\"id\":1}", false),
+                    new DiskManifestStore.StoredRequest("/1/2 null 3 true null", "/1/2", "https://api 3", "W/\"1\"",
+                            LAST_MODIFIED));
+            store.put("W/\"2\" null true null", manifest("{\"id\":2}", false),
+                    new DiskManifestStore.StoredRequest("/1/2 null 3 true null", "/1/2", "https://api 3", "W/\"2\"",
+                            LAST_MODIFIED.plusDays(1)));
+            store.put("W/\"3\" null true null", manifest("{\"id\":3}", false));
+        }
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            // only the last stored manifest of a request is restored
+            StaleManifestCache.StaleManifest stale = store.getStale("/1/2 null 3 true null");
+            assertNotNull(stale);
+            assertEquals("{\"id\":2}", new String(stale.getManifest().getContent(), StandardCharsets.UTF_8));
+            assertEquals("W/\"2\"", stale.getETag());
+            assertEquals(LAST_MODIFIED.plusDays(1), stale.getLastModified());
+            assertTrue(stale.getAge() < TTL);
+            assertNull(store.getStale("/1/3 null 3 true null"));
+
+            ValidatorIndex validatorIndex = new ValidatorIndex(100, TTL);
+            assertEquals(1, store.restoreValidators(validatorIndex));
+            assertEquals("W/\"2\"", validatorIndex.get("/1/2", "https://api 3").getETag());
+        }
+    }
+
+    /**
+     * Test that purged requests are not restored after reopening the store
+     */
+    @Test
+    public void testInvalidateReload() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            store.put("W/\"1\" null true null", manifest("{\"id\":1}", false),
+                    new DiskManifestStore.StoredRequest("/1/2 null 3 true null", "/1/2", "https://api 3", "W/\"1\"",
+                            LAST_MODIFIED));
+            store.put("W/\"2\" null true null", manifest("{\"id\":2}", false),
+                    new DiskManifestStore.StoredRequest("/12/2 null 3 true null", "/12/2", "https://api 3", "W/\"2\"",
+                            LAST_MODIFIED));
+            store.flush();
+            assertEquals(1, store.invalidate("/1"));
+            assertNull(store.getStale("/1/2 null 3 true null"));
+        }
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            assertNull(store.getStale("/1/2 null 3 true null"));
+            assertNull(store.get("W/\"1\" null true null"));
+            assertNotNull(store.getStale("/12/2 null 3 true null"));
+        }
+    }
+
+    /**
+     * Test that a record that was only partly written doesn't replace an earlier copy after reopening the store
+     */
+    @Test
+    public void testCorruptRecordOnReload() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            store.put("key1", manifest("{\"id\":\"old\"}", false));
+            store.flush();
+            store.put("key1", manifest("{\"id\":\"new\"}", false));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        byte[] data = Files.readAllBytes(segment);
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        data[text.indexOf("new")] = 'x';
+        Files.write(segment, data);
+
+        try (DiskManifestStore store = new DiskManifestStore(directory, 10 * SEGMENT_BYTES, SEGMENT_BYTES, TTL)) {
+            assertEquals("{\"id\":\"old\"}", new String(store.get("key1").getContent(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Test that the store doesn't grow beyond the maximum size and that manifests that were read survive compaction
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        try (DiskManifestStore store = new DiskManifestStore(folder.getRoot().toPath(), 3 * SEGMENT_BYTES,
+                SEGMENT_BYTES, TTL)) {
+            store.put("popular", manifest("{\"id\":\"popular\"}", false));
+            for (int i = 0; i < 1000; i++) {
+                store.put("key" + i, manifest("{\"id\":" + i + "}", false));
+                store.flush();
+                // keep reading the popular manifest, so it's copied when its segment is compacted
+                assertNotNull(store.get("popular"));
+            }
+            assertTrue(store.getBytes() <= 3 * SEGMENT_BYTES);
+            try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+                assertEquals(3, files.count());
+            }
+            assertNull(store.get("key0"));
+            assertNotNull(store.get("key999"));
+        }
+    }
+
+    /**
+     * Test that expired manifests and manifests that don't fit in a segment are not returned
+     */
+    @Test
+    public void testExpiredAndTooLarge() throws IOException {
+        try (DiskManifestStore store = new DiskManifestStore(folder.getRoot().toPath(), 10 * SEGMENT_BYTES,
+                SEGMENT_BYTES, 0)) {
+            store.put("expired", manifest("{}", false));
+            assertNull(store.get("expired"));
+        }
+        try (DiskManifestStore store = new DiskManifestStore(folder.newFolder().toPath(), 10 * SEGMENT_BYTES,
+                SEGMENT_BYTES, TTL)) {
+            store.put("large", new ManifestCache.CachedManifest(new byte[SEGMENT_BYTES], CONTENT_TYPE));
+            assertNull(store.get("large"));
+        }
+    }
+
+    /**
+     * Test if concurrent readers always get complete manifests while a single writer keeps adding manifests
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try (DiskManifestStore store = new DiskManifestStore(folder.getRoot().toPath(), 4 * SEGMENT_BYTES,
+                SEGMENT_BYTES, TTL)) {
+            List<Future<?>> results = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                results.add(readers.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int id = i % 500;
+                        ManifestCache.CachedManifest result = store.get("key" + id);
+                        if (result != null) {
+                            assertEquals("{\"id\":" + id + "}", new String(result.getContent(), StandardCharsets.UTF_8));
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < 2_000; i++) {
+                store.put("key" + (i % 500), manifest("{\"id\":" + (i % 500) + "}", false));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            readers.shutdown();
+        }
+    }
+
+}
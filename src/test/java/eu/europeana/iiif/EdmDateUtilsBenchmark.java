@@ -0,0 +1,86 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.EdmDateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmark for parsing dctermsIssued values. The legacy benchmark uses the previous implementation (two
+ * DateTimeFormatters, where every value that doesn't match throws an exception), the current benchmark uses
+ * EdmDateUtils. Both parse the same mix of dates and values that aren't dates.
+ *
+ * This is not a unit test (so it's not run during the build), run the main method to execute it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdmDateUtilsBenchmark {
+
+    private static final DateTimeFormatter DATE_YEARFIRST = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter DATE_YEARLAST = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    private static final String[] VALUES = {"1922-03-15", "15-03-1922", "1922", "1919-01-05 - 1937-12-22",
+            "ca. 1900", "1940-02-15T10:15:30Z", "NOT A REAL DATE", "http://semium.org/time/1940"};
+
+    @Benchmark
+    public int legacy() {
+        int parsed = 0;
+        for (String value : VALUES) {
+            if (legacyDateStringToDate(value) != null) {
+                parsed++;
+            }
+        }
+        return parsed;
+    }
+
+    @Benchmark
+    public int current() {
+        int parsed = 0;
+        for (String value : VALUES) {
+            if (EdmDateUtils.dateStringToDate(value) != null) {
+                parsed++;
+            }
+        }
+        return parsed;
+    }
+
+    private static LocalDate legacyDateStringToDate(String edmDate) {
+        LocalDate result = legacyTryParseFormat(edmDate, DATE_YEARFIRST);
+        if (result == null) {
+            result = legacyTryParseFormat(edmDate, DATE_YEARLAST);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("squid:S1166") // like the previous implementation, we ignore the exception on purpose
+    private static LocalDate legacyTryParseFormat(String edmDate, DateTimeFormatter format) {
+        try {
+            return LocalDate.parse(edmDate, format);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EdmDateUtilsBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,93 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.EdmDateUtils;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the EdmDateUtils class with (a sample of) date values as we find them in the dctermsIssued field of records
+ */
+public class EdmDateUtilsTest {
+
+    // value found in a record and the date we expect
+    private static final String[][] DATES = {
+            {"1922-03-15", "1922-03-15"},
+            {" 1922-03-15 ", "1922-03-15"},
+            {"1940-2-5", "1940-02-05"},
+            {"1940/02/15", "1940-02-15"},
+            {"1940.02.15", "1940-02-15"},
+            {"15-03-1922", "1922-03-15"},
+            {"15/03/1922", "1922-03-15"},
+            {"15.03.1922", "1922-03-15"},
+            {"5.3.1922", "1922-03-05"},
+            {"1922", "1922-01-01"},
+            {"1922-03", "1922-03-01"},
+            {"1940-02-15T10:15:30Z", "1940-02-15"},
+            {"1940-02-15T10:15:30.000+01:00", "1940-02-15"},
+            {"2000-02-29", "2000-02-29"},
+            {"ca. 1900", "1900-01-01"},
+            {"ca.1900", "1900-01-01"},
+            {"Ca 1900", "1900-01-01"},
+            {"c. 1900", "1900-01-01"},
+            {"circa 1900", "1900-01-01"},
+            {"approx. 1900", "1900-01-01"},
+            {"~1900", "1900-01-01"},
+            {"[1900]", "1900-01-01"},
+            {"1900?", "1900-01-01"},
+            {"[ca. 1900]", "1900-01-01"},
+            {"1919-01-05 - 1937-12-22", "1919-01-05"},
+            {"1900-1910", "1900-01-01"},
+            {"1900/1910", "1900-01-01"},
+            {"1900 – 1910", "1900-01-01"},
+            {"1914-07/1918-11", "1914-07-01"}
+    };
+
+    // values found in records that we don't recognize as a date
+    private static final String[] NO_DATES = {
+            null,
+            "",
+            "NOT A REAL DATE",
+            "19th century",
+            "1940s",
+            "22",
+            "12345",
+            "1922-13-01",
+            "1922-02-30",
+            "1900-02-29",
+            "32-01-1922",
+            "1922-03-15abc",
+            "1922-03-",
+            "1922-03-155",
+            "15-03-22",
+            "1919-01-05 - unknown",
+            "1940-02-15Tnoon",
+            "http://semium.org/time/1940",
+            "Mon Jan 01 00:20:00 CET 1940",
+            "cat 1900"
+    };
+
+    /**
+     * Test if we recognize all supported date formats
+     */
+    @Test
+    public void testDates() {
+        for (String[] date : DATES) {
+            assertEquals("Parsing '" + date[0] + "'", LocalDate.parse(date[1]), EdmDateUtils.dateStringToDate(date[0]));
+        }
+    }
+
+    /**
+     * Test if we return null for values that aren't (existing) dates
+     */
+    @Test
+    public void testNoDates() {
+        for (String value : NO_DATES) {
+            assertNull("Parsing '" + value + "'", EdmDateUtils.dateStringToDate(value));
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.model.v2.ManifestV2;
+import eu.europeana.iiif.model.v3.ManifestV3;
+import eu.europeana.iiif.service.DirectManifest;
+import eu.europeana.iiif.service.EdmManifestMapping;
+import eu.europeana.iiif.service.EdmRecordReader;
+import eu.europeana.iiif.service.ManifestService;
+import eu.europeana.iiif.service.ManifestSettings;
+import eu.europeana.iiif.service.exception.RecordParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmark for reading EDM records and the EDM-IIIF Manifest mapping.
+ *
+ * The parseTree and parseStreaming benchmarks compare reading a record via a tree of the entire record json with
+ * reading it in a single pass directly from the json stream (add the JMH gc profiler to see the difference in
+ * allocation). The manifestData benchmark measures extracting the format-neutral data from an already read record,
+ * the manifest benchmarks measure only rendering that data as a v2 or v3 manifest. The serialize benchmarks compare
+ * rendering and serializing a ManifestV2 object with writing the same JSON-LD directly from the data.
+ *
+ * This is not a unit test (so it's not run during the build), run the main method to execute it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdmManifestMappingBenchmark {
+
+    private ManifestSettings settings;
+    private ManifestService service;
+    private EdmRecordReader reader;
+    private byte[] json;
+    private EdmRecord record;
+    private ManifestData data;
+
+    @Setup
+    public void setup() throws IOException {
+        settings = new ManifestSettings();
+        // initialize the manifestservice, because that will setup our default Jackson mapper configuration
+        service = new ManifestService(settings);
+        reader = new EdmRecordReader(false);
+        json = ExampleData.EXAMPLE_RECORD_CHILD_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        record = reader.readTree(new ByteArrayInputStream(
+                ExampleData.EXAMPLE_RECORD_PARENT_RESPONSE.getBytes(StandardCharsets.UTF_8)));
+        data = EdmManifestMapping.getManifestData(record);
+    }
+
+    @Benchmark
+    public EdmRecord parseTree() throws IOException {
+        return reader.readTree(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public EdmRecord parseStreaming() throws IOException {
+        return reader.readStreaming(new ByteArrayInputStream(json));
+    }
+
+    @Benchmark
+    public ManifestData manifestData() {
+        return EdmManifestMapping.getManifestData(record);
+    }
+
+    @Benchmark
+    public ManifestV2 manifestV2() {
+        return EdmManifestMapping.getManifestV2(settings, data);
+    }
+
+    @Benchmark
+    public ManifestV3 manifestV3() {
+        return EdmManifestMapping.getManifestV3(settings, data);
+    }
+
+    @Benchmark
+    public String serializeObjectsV2() throws RecordParseException {
+        return service.serializeManifest(EdmManifestMapping.getManifestV2(settings, data));
+    }
+
+    @Benchmark
+    public String serializeDirectV2() throws RecordParseException {
+        return service.serializeManifest(DirectManifest.v2(settings, data, null));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EdmManifestMappingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
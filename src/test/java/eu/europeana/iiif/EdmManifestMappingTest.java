@@ -1,24 +1,36 @@
 package eu.europeana.iiif;
 
-import com.jayway.jsonpath.Configuration;
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.EdmRecord;
 import eu.europeana.iiif.model.v2.Annotation;
 import eu.europeana.iiif.model.v2.AnnotationBody;
 import eu.europeana.iiif.model.v2.Canvas;
+import eu.europeana.iiif.model.v2.CanvasPage;
 import eu.europeana.iiif.model.v2.DataSet;
+import eu.europeana.iiif.model.v2.FullText;
 import eu.europeana.iiif.model.v2.Image;
 import eu.europeana.iiif.model.v2.LanguageObject;
+import eu.europeana.iiif.model.v2.ManifestV2;
 import eu.europeana.iiif.model.v2.MetaData;
 import eu.europeana.iiif.model.v2.Sequence;
 import eu.europeana.iiif.model.v2.Service;
+import eu.europeana.iiif.service.DirectManifest;
 import eu.europeana.iiif.service.EdmManifestMapping;
+import eu.europeana.iiif.service.EdmRecordReader;
 import eu.europeana.iiif.service.ManifestService;
 import eu.europeana.iiif.service.ManifestSettings;
+import eu.europeana.iiif.service.exception.RecordParseException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 
@@ -50,7 +62,7 @@ public class EdmManifestMappingTest {
     private static final String TEST_ATTRIBUTION = "{\"object\": {\"aggregations\":[{}, {\"webResources\":[{}, {\"textAttributionSnippet\":\"attributionText\"}]}]}}";
     private static final String TEST_LICENSE_EUROPEANAAGGREGATION = "{\"object\": { \"aggregations\": [{\"edmRights\": { \"en\": [\"licenseTextAggregation\"]}}], \"europeanaAggregation\" : {\"edmRights\": { \"en\": [\"licenseTextEuropeana\"]}}}}";
     private static final String TEST_LICENSE_OTHERAGGREGATION = "{\"object\": { \"europeanaAggregation\" : {\"edmRights\":{}}, \"aggregations\": [{}, {\"edmRights\": { \"en\": [\"licenseTextAggregation\"]}}] }}";
-    private static final String TEST_SEQUENCE_2CANVAS_1SERVICE = "{\"object\": { \"aggregations\": [ {\"edmIsShownBy\": \"wr1Id\", \"hasView\": [\"wr2Id\"], \"webResources\": [ "+
+    private static final String TEST_SEQUENCE_2CANVAS_1SERVICE = "{\"object\": { \"about\": \"/test-id\", \"aggregations\": [ {\"edmIsShownBy\": \"wr1Id\", \"hasView\": [\"wr2Id\"], \"webResources\": [ "+
             "{\"about\": \"wr1Id\", \"textAttributionSnippet\": \"wr1Attribution\", \"webResourceEdmRights\":"+
             "{\"def\":[\"wr1License\"]}, \"ebuCoreHasMimeType\": \"wr1MimeType\", \"svcsHasService\": [\"service1Id\"]  },"+
             "{\"about\": \"wr2Id\", \"textAttributionSnippet\": \"wr2Attribution\", \"webResourceEdmRights\":"+
@@ -66,10 +78,20 @@ public class EdmManifestMappingTest {
     // Initialize the manifestservice, because that will setup our default Jackson mapper configuration used in the tests
     private static final ManifestService ms = new ManifestService(new ManifestSettings());
 
+    private static final EdmRecordReader reader = new EdmRecordReader(false);
+
+    private static EdmRecord parse(String json) {
+        try {
+            return reader.readTree(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 
     @Test
     public void testId() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_ID);
+        EdmRecord document = parse(TEST_ID);
         assertEquals("id", EdmManifestMapping.getEuropeanaId(document));
     }
 
@@ -78,8 +100,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLabelIsTitle() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_TITLE);
-        LanguageObject[] labels = EdmManifestMapping.getLabelsV2(document);
+        EdmRecord document = parse(TEST_TITLE);
+        LanguageObject[] labels = EdmManifestMapping.getLabelsV2(EdmManifestMapping.getManifestData(document));
         assertNotNull(labels[0]);
         assertEquals("en", labels[0].getLanguage());
         assertEquals("Title", labels[0].getValue());
@@ -90,8 +112,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLabelIsDescription() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_DESCRIPTION);
-        LanguageObject[] labels = EdmManifestMapping.getLabelsV2(document);
+        EdmRecord document = parse(TEST_DESCRIPTION);
+        LanguageObject[] labels = EdmManifestMapping.getLabelsV2(EdmManifestMapping.getManifestData(document));
         assertNotNull(labels[0]);
         assertNull(labels[0].getLanguage());
         assertEquals("Description", labels[0].getValue());
@@ -102,8 +124,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLabelEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
-        assertNull(EdmManifestMapping.getLabelsV2(document));
+        EdmRecord document = parse(TEST_EMPTY);
+        assertNull(EdmManifestMapping.getLabelsV2(EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -111,8 +133,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testDescription() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_TITLE_DESCRIPTION);
-        LanguageObject[] descriptions = EdmManifestMapping.getDescriptionV2(document);
+        EdmRecord document = parse(TEST_TITLE_DESCRIPTION);
+        LanguageObject[] descriptions = EdmManifestMapping.getDescriptionV2(EdmManifestMapping.getManifestData(document));
         assertNotNull(descriptions[0]);
         assertNull(descriptions[0].getLanguage());
         assertEquals("Description", descriptions[0].getValue());
@@ -124,11 +146,11 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testDescriptionEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_DESCRIPTION);
-        assertNull(EdmManifestMapping.getDescriptionV2(document));
+        EdmRecord document = parse(TEST_DESCRIPTION);
+        assertNull(EdmManifestMapping.getDescriptionV2(EdmManifestMapping.getManifestData(document)));
 
-        document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_TITLE); // no description
-        assertNull(EdmManifestMapping.getDescriptionV2(document));
+        document = parse(TEST_TITLE); // no description
+        assertNull(EdmManifestMapping.getDescriptionV2(EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -136,8 +158,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testMetaDataV2() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_METADATA);
-        MetaData[] metaData = EdmManifestMapping.getMetaDataV2(document);
+        EdmRecord document = parse(TEST_METADATA);
+        MetaData[] metaData = EdmManifestMapping.getMetaDataV2(EdmManifestMapping.getManifestData(document));
         assertNotNull(metaData);
         assertEquals(2, metaData.length);
 
@@ -159,8 +181,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testMetaDataV2Empty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
-        assertNull(EdmManifestMapping.getMetaDataV2(document));
+        EdmRecord document = parse(TEST_EMPTY);
+        assertNull(EdmManifestMapping.getMetaDataV2(EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -168,8 +190,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testThumbnail() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_THUMBNAIL);
-        Image image = EdmManifestMapping.getThumbnailImageV2(ms.getSettings(), "test", document);
+        EdmRecord document = parse(TEST_THUMBNAIL);
+        Image image = EdmManifestMapping.getThumbnailImageV2(EdmManifestMapping.getManifestData(document));
         assertNotNull(image);
         assertEquals(TEST_THUMBNAIL_ID, image.getId());
     }
@@ -179,8 +201,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testThumbnailEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
-        assertNull(EdmManifestMapping.getThumbnailImageV2(ms.getSettings(), "test", document));
+        EdmRecord document = parse(TEST_EMPTY);
+        assertNull(EdmManifestMapping.getThumbnailImageV2(EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -188,7 +210,7 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testNavDate() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_NAVDATE);
+        EdmRecord document = parse(TEST_NAVDATE);
         String navDate = EdmManifestMapping.getNavDate("test", document);
         assertNotNull(navDate);
         assertEquals("1922-03-15T00:00:00Z", navDate);
@@ -199,7 +221,7 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testNavDateEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
+        EdmRecord document = parse(TEST_EMPTY);
         assertNull(EdmManifestMapping.getNavDate("test", document));
     }
 
@@ -208,8 +230,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testAttribution() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_ATTRIBUTION);
-        String attribution = EdmManifestMapping.getAttributionV2("test", document);
+        EdmRecord document = parse(TEST_ATTRIBUTION);
+        String attribution = EdmManifestMapping.getAttribution("test", document);
         assertNotNull(attribution);
         assertEquals("attributionText", attribution);
     }
@@ -219,8 +241,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testAttributionEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
-        assertNull(EdmManifestMapping.getAttributionV2("test", document));
+        EdmRecord document = parse(TEST_EMPTY);
+        assertNull(EdmManifestMapping.getAttribution("test", document));
     }
 
     /**
@@ -228,7 +250,7 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLicenseFromEuropeanaAggregation() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_LICENSE_EUROPEANAAGGREGATION);
+        EdmRecord document = parse(TEST_LICENSE_EUROPEANAAGGREGATION);
         String license = EdmManifestMapping.getLicense("test", document);
         assertNotNull(license);
         assertEquals("licenseTextEuropeana", license);
@@ -239,7 +261,7 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLicenseFromOtherAggregations() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_LICENSE_OTHERAGGREGATION);
+        EdmRecord document = parse(TEST_LICENSE_OTHERAGGREGATION);
         String license = EdmManifestMapping.getLicense("test", document);
         assertNotNull(license);
         assertEquals("licenseTextAggregation", license);
@@ -250,7 +272,7 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testLicenseEmpty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
+        EdmRecord document = parse(TEST_EMPTY);
         assertNull(EdmManifestMapping.getLicense("test", document));
     }
 
@@ -272,8 +294,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testSequenceV2Empty() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_EMPTY);
-        assertNull(EdmManifestMapping.getSequencesV2(ms.getSettings(), "test", document));
+        EdmRecord document = parse(TEST_EMPTY);
+        assertNull(EdmManifestMapping.getSequencesV2(ms.getSettings(), EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -281,8 +303,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testSequenceV2MissingIsShownAtHasView() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_SEQUENCE_2CANVAS_NOISSHOWNAT);
-        assertNull(EdmManifestMapping.getSequencesV2(ms.getSettings(), "test", document));
+        EdmRecord document = parse(TEST_SEQUENCE_2CANVAS_NOISSHOWNAT);
+        assertNull(EdmManifestMapping.getSequencesV2(ms.getSettings(), EdmManifestMapping.getManifestData(document)));
     }
 
     /**
@@ -290,8 +312,8 @@ public class EdmManifestMappingTest {
      */
     @Test
     public void testSequenceV2() {
-        Object document = Configuration.defaultConfiguration().jsonProvider().parse(TEST_SEQUENCE_2CANVAS_1SERVICE);
-        Sequence[] sequence = EdmManifestMapping.getSequencesV2(ms.getSettings(), "/test-id", document);
+        EdmRecord document = parse(TEST_SEQUENCE_2CANVAS_1SERVICE);
+        Sequence[] sequence = EdmManifestMapping.getSequencesV2(ms.getSettings(), EdmManifestMapping.getManifestData(document));
         assertNotNull(sequence);
         assertEquals(1, sequence.length); // there should always be only 1 sequence
         assertTrue(sequence[0].getId().endsWith("/test-id" + "/sequence/s1"));
@@ -318,6 +340,107 @@ public class EdmManifestMappingTest {
         checkCanvasV2(ecv, sequence[0].getCanvases()[0]);
     }
 
+    /**
+     * Test that for a record with more canvases than the paging threshold, the manifest contains only the first page
+     * of canvases and a link to the next page
+     */
+    @Test
+    public void testSequenceV2Paged() {
+        Sequence[] sequence = EdmManifestMapping.getSequencesV2(getPagingSettings(), getPagingData(5));
+        assertNotNull(sequence);
+        assertEquals(2, sequence[0].getCanvases().length);
+        assertEquals(Integer.valueOf(5), sequence[0].getTotal());
+        assertTrue(sequence[0].getNext().endsWith("/test-id/canvases/2"));
+        assertTrue(sequence[0].getCanvases()[1].getId().endsWith("/test-id/canvas/p2"));
+
+        // below the threshold nothing changes
+        sequence = EdmManifestMapping.getSequencesV2(getPagingSettings(), getPagingData(3));
+        assertEquals(3, sequence[0].getCanvases().length);
+        assertNull(sequence[0].getTotal());
+        assertNull(sequence[0].getNext());
+    }
+
+    /**
+     * Test if we generate canvas pages properly
+     */
+    @Test
+    public void testCanvasPageV2() {
+        ManifestData data = getPagingData(5);
+        CanvasPage page2 = EdmManifestMapping.getCanvasPageV2(getPagingSettings(), data, 2);
+        assertNotNull(page2);
+        assertTrue(page2.getId().endsWith("/test-id/canvases/2"));
+        assertTrue(page2.getWithin().endsWith("/test-id/sequence/s1"));
+        assertEquals(2, page2.getStartIndex());
+        assertEquals(5, page2.getTotal());
+        assertTrue(page2.getPrev().endsWith("/test-id/canvases/1"));
+        assertTrue(page2.getNext().endsWith("/test-id/canvases/3"));
+        assertEquals(2, page2.getCanvases().length);
+        assertTrue(page2.getCanvases()[0].getId().endsWith("/test-id/canvas/p3"));
+        assertEquals("wr3", page2.getCanvases()[0].getImages()[0].getResource().getId());
+
+        CanvasPage page3 = EdmManifestMapping.getCanvasPageV2(getPagingSettings(), data, 3);
+        assertEquals(1, page3.getCanvases().length);
+        assertNull(page3.getNext());
+
+        assertNull(EdmManifestMapping.getCanvasPageV2(getPagingSettings(), data, 0));
+        assertNull(EdmManifestMapping.getCanvasPageV2(getPagingSettings(), data, 4));
+        // no pages if paging is disabled
+        assertNull(EdmManifestMapping.getCanvasPageV2(ms.getSettings(), data, 1));
+    }
+
+    /**
+     * Test if manifests that are written directly from the manifest data are the same as serialized manifest objects
+     */
+    @Test
+    public void testDirectManifest() throws RecordParseException {
+        for (String json : new String[]{TEST_EMPTY, TEST_TITLE, TEST_DESCRIPTION, TEST_TITLE_DESCRIPTION, TEST_METADATA,
+                TEST_THUMBNAIL, TEST_NAVDATE, TEST_ATTRIBUTION, TEST_LICENSE_EUROPEANAAGGREGATION}) {
+            // a manifest id can only be generated for records with an id
+            checkDirectManifest(json.replaceFirst("\\{\"object\": ?\\{", "{\"object\": {\"about\": \"/test-id\", "));
+        }
+        checkDirectManifest(TEST_SEQUENCE_2CANVAS_1SERVICE);
+    }
+
+    private static void checkDirectManifest(String json) throws RecordParseException {
+        ManifestData data = EdmManifestMapping.getManifestData(parse(json));
+        assertEquals(ms.serializeManifest(EdmManifestMapping.getManifestV2(ms.getSettings(), data)),
+                ms.serializeManifest(DirectManifest.v2(ms.getSettings(), data, null)));
+        assertEquals(ms.serializeManifest(EdmManifestMapping.getManifestV3(ms.getSettings(), data)),
+                ms.serializeManifest(DirectManifest.v3(ms.getSettings(), data)));
+    }
+
+    /**
+     * Test if directly written manifests are the same as serialized manifest objects when canvases are split into
+     * pages and have full text links
+     */
+    @Test
+    public void testDirectManifestPagedFullText() throws RecordParseException {
+        ManifestData data = getPagingData(5);
+        ManifestV2 manifest = EdmManifestMapping.getManifestV2(getPagingSettings(), data);
+        for (Canvas c : manifest.getSequences()[0].getCanvases()) {
+            c.setOtherContent(new FullText[]{new FullText("fulltext" + c.getPageNr())});
+        }
+        assertEquals(ms.serializeManifest(manifest),
+                ms.serializeManifest(DirectManifest.v2(getPagingSettings(), data, pageNr -> "fulltext" + pageNr)));
+    }
+
+    private static ManifestSettings getPagingSettings() {
+        ManifestSettings settings = new ManifestSettings();
+        ReflectionTestUtils.setField(settings, "canvasPagingThreshold", 3);
+        ReflectionTestUtils.setField(settings, "canvasPageSize", 2);
+        return settings;
+    }
+
+    private static ManifestData getPagingData(int nrCanvases) {
+        ManifestData data = new ManifestData("/test-id");
+        ManifestData.CanvasData[] canvases = new ManifestData.CanvasData[nrCanvases];
+        for (int i = 0; i < nrCanvases; i++) {
+            canvases[i] = new ManifestData.CanvasData("wr" + (i + 1), null, null, null, null, null);
+        }
+        data.setCanvases(canvases);
+        return data;
+    }
+
     /**
      * Test if we generate a canvas object (and it's containing objects) properly
      */
@@ -388,9 +511,10 @@ public class EdmManifestMappingTest {
 
     @Test
     public void testRetrieveRecordUpdate() {
+        EdmRecord document = parse(
+                "{\"object\":{\"timestamp_update\":\"2017-06-06T19:40:18.082Z\"}}");
         assertEquals(LocalDateTime.of(2017, 6, 6, 19, 40, 18, 82000000).atZone(ZoneOffset.UTC),
-                EdmManifestMapping.getRecordTimestampUpdate(
-                "{\"object\":{\"timestamp_update\":\"2017-06-06T19:40:18.082Z\"}}"));
+                EdmManifestMapping.getRecordTimestampUpdate(document));
     }
 
 }
@@ -0,0 +1,94 @@
+package eu.europeana.iiif;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.model.edm.EdmWebResource;
+import eu.europeana.iiif.service.EdmManifestMapping;
+import eu.europeana.iiif.service.EdmRecordReader;
+import eu.europeana.iiif.service.ManifestService;
+import eu.europeana.iiif.service.ManifestSettings;
+import eu.europeana.iiif.service.exception.IIIFException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the EdmRecordReader class
+ */
+public class EdmRecordReaderTest {
+
+    // Initialize the manifestservice, because that will setup our default Jackson mapper configuration
+    private static final ManifestService ms = new ManifestService(new ManifestSettings());
+
+    private static final EdmRecordReader reader = new EdmRecordReader(false);
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test if the manifests generated from a record read in streaming mode are the same as the ones generated from a
+     * record read via a tree
+     */
+    @Test
+    public void testSameManifest() throws IOException, IIIFException {
+        for (String record : new String[]{ExampleData.EXAMPLE_RECORD_PARENT_RESPONSE, ExampleData.EXAMPLE_RECORD_CHILD_RESPONSE}) {
+            EdmRecord tree = reader.readTree(toStream(record));
+            EdmRecord streaming = reader.readStreaming(toStream(record));
+
+            assertEquals(ms.serializeManifest(EdmManifestMapping.getManifestV2(ms.getSettings(), tree)),
+                    ms.serializeManifest(EdmManifestMapping.getManifestV2(ms.getSettings(), streaming)));
+            assertEquals(ms.serializeManifest(EdmManifestMapping.getManifestV3(ms.getSettings(), tree)),
+                    ms.serializeManifest(EdmManifestMapping.getManifestV3(ms.getSettings(), streaming)));
+            assertEquals(EdmManifestMapping.getRecordTimestampUpdate(tree), EdmManifestMapping.getRecordTimestampUpdate(streaming));
+        }
+    }
+
+    /**
+     * Test if the fields we need are read, regardless of where they are in the json
+     */
+    @Test
+    public void testReadFields() throws IOException {
+        String json = "{\"apikey\":\"test\", \"object\": {\"concepts\":[{\"about\":\"skip\"}], \"about\":\"/1/2\", " +
+                "\"aggregations\":[{\"webResources\":[{\"about\":\"wr1\", \"isNextInSequence\":\"wr2\", " +
+                "\"webResourceEdmRights\":{\"def\":[\"license\"]}}], \"hasView\":[\"wr1\"]}], " +
+                "\"services\":[{\"about\":\"s1\", \"doapImplements\":\"profile\"}]}, \"success\":true}";
+        EdmRecord record = reader.readStreaming(toStream(json));
+        assertEquals("/1/2", record.getAbout());
+        assertNull(record.getEuropeanaAggregation());
+        assertEquals(0, record.getProxies().length);
+        assertArrayEquals(new String[]{"wr1"}, record.getAggregations()[0].getHasView());
+
+        EdmWebResource webResource = record.getAggregations()[0].getWebResources()[0];
+        assertEquals("wr1", webResource.getId());
+        assertEquals("wr2", webResource.getNextInSequence());
+        assertEquals("def", webResource.getWebResourceEdmRights().getLanguage(0));
+        assertArrayEquals(new String[]{"license"}, webResource.getWebResourceEdmRights().getValues("def"));
+
+        // doapImplements is sometimes a single value instead of an array
+        assertArrayEquals(new String[]{"profile"}, record.getServices()[0].getDoapImplements());
+    }
+
+    /**
+     * Test if invalid json results in an exception
+     */
+    @Test(expected = JsonProcessingException.class)
+    public void testInvalidJson() throws IOException {
+        reader.readStreaming(toStream("{\"object\": {\"about\": "));
+    }
+
+    /**
+     * Test if json without record data results in an exception
+     */
+    @Test(expected = JsonProcessingException.class)
+    public void testNoRecord() throws IOException {
+        reader.readTree(toStream("{\"success\": false}"));
+    }
+}
@@ -0,0 +1,53 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.FullTextCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the FullTextCache class
+ */
+public class FullTextCacheTest {
+
+    private static final String URL1 = "https://www.europeana.eu/api/fulltext/1";
+    private static final String URL2 = "https://www.europeana.eu/api/fulltext/2";
+    private static final String URL3 = "https://www.europeana.eu/api/fulltext/3";
+
+    /**
+     * Test if we can distinguish between exists, not exists, unknown and not cached
+     */
+    @Test
+    public void testAvailability() {
+        FullTextCache cache = new FullTextCache(100, 60_000, 60_000, 60_000);
+        cache.put(URL1, Boolean.TRUE);
+        cache.put(URL2, Boolean.FALSE);
+        cache.put(URL3, null);
+
+        assertEquals(FullTextCache.Availability.EXISTS, cache.get(URL1));
+        assertEquals(Boolean.TRUE, cache.get(URL1).exists());
+        assertEquals(FullTextCache.Availability.NOT_EXISTS, cache.get(URL2));
+        assertEquals(Boolean.FALSE, cache.get(URL2).exists());
+        assertEquals(FullTextCache.Availability.UNKNOWN, cache.get(URL3));
+        assertNull(cache.get(URL3).exists());
+        assertNull(cache.get("https://www.europeana.eu/api/fulltext/4"));
+    }
+
+    /**
+     * Test if each result type uses its own time-to-live
+     */
+    @Test
+    public void testSeparateTtl() {
+        FullTextCache cache = new FullTextCache(100, 60_000, 60_000, 0);
+        cache.put(URL1, Boolean.TRUE);
+        cache.put(URL3, null);
+        assertEquals(FullTextCache.Availability.EXISTS, cache.get(URL1));
+        assertNull(cache.get(URL3));
+
+        // a confirmed answer replaces an unknown one
+        cache.put(URL3, Boolean.FALSE);
+        assertEquals(FullTextCache.Availability.NOT_EXISTS, cache.get(URL3));
+    }
+
+}
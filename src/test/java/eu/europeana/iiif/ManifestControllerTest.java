@@ -1,32 +1,63 @@
 package eu.europeana.iiif;
 
 import eu.europeana.iiif.model.Definitions;
+import eu.europeana.iiif.model.edm.EdmRecord;
 import eu.europeana.iiif.model.v2.ManifestV2;
 import eu.europeana.iiif.model.v3.ManifestV3;
+import eu.europeana.iiif.service.CacheUtils;
+import eu.europeana.iiif.service.ManifestCache;
 import eu.europeana.iiif.service.ManifestService;
 import eu.europeana.iiif.service.ManifestSettings;
+import eu.europeana.iiif.service.StaleManifestCache;
+import eu.europeana.iiif.service.ValidatorIndex;
+import eu.europeana.iiif.service.exception.RecordNotFoundException;
+import eu.europeana.iiif.service.exception.RecordParseException;
+import eu.europeana.iiif.service.exception.RecordRetrieveException;
+import eu.europeana.iiif.web.AdminController;
 import eu.europeana.iiif.web.ManifestController;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -36,10 +67,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @RunWith(SpringJUnit4ClassRunner.class)
 @TestPropertySource("classpath:iiif-test.properties")
-@WebMvcTest(ManifestController.class)
+@WebMvcTest({ManifestController.class, AdminController.class})
 public class ManifestControllerTest {
 
-    private static final String JSON_RECORD = "{ \"object\": {\"timestamp_update\":\"2015-10-28T07:28:00Z\"} }";
+    private static final String RECORD_TIMESTAMP_UPDATE = "2015-10-28T07:28:00Z";
     private static final String JSONLD_V2_OUTPUT = "{Manifest : JSONLD-V2}";
     private static final String JSONLD_V3_OUTPUT = "{Manifest : JSONLD-V3}";
     private static final String TIMESTAMP_UPDATE = "Wed, 28 Oct 2015 07:28:00 GMT";
@@ -57,20 +88,31 @@ public class ManifestControllerTest {
     @MockBean
     private ManifestSettings manifestSettings;
 
+    private EdmRecord record;
+
     @Before
     public void setup() throws Exception {
         given(manifestSettings.getAppVersion()).willReturn("v1.0-test");
+        record = new EdmRecord("/1/2", RECORD_TIMESTAMP_UPDATE, null, null, null, null);
 
         // mock v2 and v3 manifest responses
         ManifestV2 manifest2 = new ManifestV2("/1/2", "/1/2");
         ManifestV3 manifest3 = new ManifestV3("/1/2", "/1/2");
-        given(manifestService.getRecordJson("/1/2", "test")).willReturn(JSON_RECORD);
-        given(manifestService.getRecordJson("/1/2", "test", null)).willReturn(JSON_RECORD);
-        given(manifestService.generateManifestV2(eq(JSON_RECORD), anyBoolean(), any())).willReturn(manifest2);
-        given(manifestService.generateManifestV3(eq(JSON_RECORD), anyBoolean(), any())).willReturn(manifest3);
+        given(manifestService.getRecordJson("/1/2", "test")).willReturn(record);
+        given(manifestService.getRecordJson("/1/2", "test", null)).willReturn(record);
+        given(manifestService.generateManifestV2(eq(record), anyBoolean(), any())).willReturn(manifest2);
+        given(manifestService.generateManifestV3(eq(record), anyBoolean(), any())).willReturn(manifest3);
         given(manifestService.serializeManifest(manifest2)).willReturn(JSONLD_V2_OUTPUT);
         given(manifestService.serializeManifest(manifest3)).willReturn(JSONLD_V3_OUTPUT);
         given(manifestService.getSettings()).willReturn(manifestSettings);
+        given(manifestService.getCacheControl("/1/2")).willReturn("public, max-age=60");
+
+        // mock asynchronous responses
+        given(manifestService.getRecordJsonAsync("/1/2", "test", null)).willReturn(CompletableFuture.completedFuture(record));
+        given(manifestService.generateManifestV2Async(eq(record), anyBoolean(), any())).willReturn(CompletableFuture.completedFuture(manifest2));
+        given(manifestService.generateManifestV3Async(eq(record), anyBoolean(), any())).willReturn(CompletableFuture.completedFuture(manifest3));
+        given(manifestService.serializeManifestAsync(manifest2)).willReturn(CompletableFuture.completedFuture(JSONLD_V2_OUTPUT));
+        given(manifestService.serializeManifestAsync(manifest3)).willReturn(CompletableFuture.completedFuture(JSONLD_V3_OUTPUT));
     }
 
     /**
@@ -85,6 +127,158 @@ public class ManifestControllerTest {
                 .andExpect(content().json(JSONLD_V2_OUTPUT));
     }
 
+    /**
+     * Test if responses have the Cache-Control policy of the dataset and are tagged with the record and dataset
+     */
+    @Test
+    public void testManifestCacheHeaders() throws Exception {
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", equalTo("public, max-age=60")))
+                .andExpect(header().string("Surrogate-Key", equalTo("dataset-1 record-1-2")))
+                .andExpect(header().string("Cache-Tag", equalTo("dataset-1,record-1-2")));
+    }
+
+    /**
+     * Test if we get the same manifest when processing a request asynchronously
+     */
+    @Test
+    public void testManifestAsync() throws Exception {
+        MvcResult result = this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                .param("async", "true")
+                .header("Accept", "application/ld+json;profile=\""+Definitions.MEDIA_TYPE_IIIF_V3+"\""))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", containsString("profile=\""+Definitions.MEDIA_TYPE_IIIF_V3+"\"")))
+                .andExpect(header().string("eTag", equalTo(ETAG_HEADER_V3)))
+                .andExpect(content().json(JSONLD_V3_OUTPUT));
+    }
+
+    /**
+     * Test if we return a cached manifest without generating it again
+     */
+    @Test
+    public void testManifestCached() throws Exception {
+        given(manifestService.getCachedManifest(anyString())).willReturn(new ManifestCache.CachedManifest(
+                JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8), Definitions.MEDIA_TYPE_IIIF_JSONLD_V2));
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("eTag", equalTo(ETAG_HEADER_V2)))
+                .andExpect(content().json(JSONLD_V2_OUTPUT));
+        verify(manifestService, never()).generateManifestV2(any(), anyBoolean(), any());
+    }
+
+    /**
+     * Test that manifests of records retrieved from another Record API are cached separately
+     */
+    @Test
+    public void testManifestCacheKeyRecordApi() throws Exception {
+        given(manifestService.getRecordJson(eq("/1/2"), eq("test"), any())).willReturn(record);
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                .param("recordApi", "https://test-api.eanadev.org"))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(manifestService, times(2)).getCachedManifest(keys.capture());
+        assertNotEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+    }
+
+    /**
+     * Test if we return the stored gzip encoded manifest, but only to clients that accept gzip
+     */
+    @Test
+    public void testManifestCachedGzip() throws Exception {
+        byte[] plain = JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = CacheUtils.gzip(plain);
+        given(manifestService.getCachedManifest(anyString())).willReturn(new ManifestCache.CachedManifest(
+                plain, gzip, Definitions.MEDIA_TYPE_IIIF_JSONLD_V2));
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                .header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", equalTo("gzip")))
+                .andExpect(header().string("Vary", containsString("Accept-Encoding")))
+                .andExpect(content().bytes(gzip));
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                .header("Accept-Encoding", "gzip;q=0, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().bytes(plain));
+    }
+
+    /**
+     * Test if a bulk request returns a manifest for an existing record and an error for a record that doesn't exist,
+     * both as json array and as newline delimited json
+     */
+    @Test
+    public void testBulkManifest() throws Exception {
+        given(manifestSettings.getBulkMaxRecords()).willReturn(10);
+        given(manifestSettings.getBulkParallelism()).willReturn(2);
+        given(manifestSettings.getBulkTimeout()).willReturn(10_000L);
+        given(manifestService.serializeManifestAsync(any())).willReturn(CompletableFuture.completedFuture("{\n  \"test\" : \"v2\"\n}"));
+        CompletableFuture<Object> notFound = new CompletableFuture<>();
+        notFound.completeExceptionally(new RecordNotFoundException("Record with id '/3/4' not found"));
+        given(manifestService.getRecordJsonAsync("/3/4", "test", null)).willReturn(notFound);
+
+        this.mockMvc.perform(post("/presentation/manifests").param("wskey", "test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"/1/2\", \"/3/4\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("[")))
+                .andExpect(content().string(containsString("{\"id\":\"/1/2\",\"manifest\":{\n  \"test\" : \"v2\"\n}}")))
+                .andExpect(content().string(containsString("{\"id\":\"/3/4\",\"status\":404,")))
+                .andExpect(content().string(endsWith("]")));
+
+        MvcResult result = this.mockMvc.perform(post("/presentation/manifests").param("wskey", "test")
+                .header("Accept", Definitions.MEDIA_TYPE_NDJSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"/1/2\", \"/3/4\"]"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", containsString(Definitions.MEDIA_TYPE_NDJSON)))
+                .andReturn();
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(result.getResponse().getContentAsString().contains("{\"id\":\"/1/2\",\"manifest\":{\"test\":\"v2\"}}"));
+    }
+
+    /**
+     * Test if records that are not done within the bulk timeout are reported with a 504 error, so the response still
+     * contains one result per record
+     */
+    @Test
+    public void testBulkManifestTimeout() throws Exception {
+        given(manifestSettings.getBulkMaxRecords()).willReturn(10);
+        given(manifestSettings.getBulkParallelism()).willReturn(1);
+        given(manifestSettings.getBulkTimeout()).willReturn(200L);
+        given(manifestService.getRecordJsonAsync("/3/4", "test", null)).willReturn(new CompletableFuture<>());
+
+        this.mockMvc.perform(post("/presentation/manifests").param("wskey", "test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"/3/4\", \"/1/2\"]"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("[{\"id\":\"/3/4\",\"status\":504,")))
+                .andExpect(content().string(containsString(",{\"id\":\"/1/2\",\"status\":504,")))
+                .andExpect(content().string(endsWith("]")));
+    }
+
+    /**
+     * Test if we get an error when a bulk request contains too many records
+     */
+    @Test
+    public void testBulkManifestTooManyRecords() throws Exception {
+        given(manifestSettings.getBulkMaxRecords()).willReturn(1);
+        this.mockMvc.perform(post("/presentation/manifests").param("wskey", "test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[\"/1/2\", \"/3/4\"]"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Test if (the correct) error is thrown if no api key is present
      */
@@ -219,6 +413,156 @@ public class ManifestControllerTest {
     }
 
 
+    /**
+     * Test if a conditional request is answered with the indexed validators, without retrieving the record
+     */
+    @Test
+    public void testManifestIndexedValidators() throws Exception {
+        given(manifestService.getIndexedValidators("/1/2", "test", null, "2")).willReturn(
+                new ValidatorIndex.Validators(ETAG_HEADER_V2, ZonedDateTime.parse(RECORD_TIMESTAMP_UPDATE)));
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                    .header("If-None-Match", ETAG_HEADER_V2))
+                    .andExpect(header().string("eTag", equalTo(ETAG_HEADER_V2)))
+                    .andExpect(status().isNotModified());
+        verify(manifestService, never()).getRecordJson(anyString(), anyString(), any());
+
+        // if the indexed validators don't match we retrieve the record as usual
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")
+                    .header("If-None-Match", ETAG_HEADER_FALSE))
+                    .andExpect(status().isOk());
+        verify(manifestService).getRecordJson("/1/2", "test", null);
+        verify(manifestService).indexValidators("/1/2", null, "2", ETAG_HEADER_V2,
+                ZonedDateTime.parse(RECORD_TIMESTAMP_UPDATE));
+    }
+
+
+    /**
+     * Test that after a purge the stale manifest of a record is not served anymore while revalidating
+     */
+    @Test
+    public void testManifestStaleAfterPurge() throws Exception {
+        String staleKey = "/1/2 null 2 true null";
+        // the stale manifest cache and its invalidation work the same as in the ManifestService
+        StaleManifestCache staleManifests = new StaleManifestCache(1_000_000, 0, 60_000, 60_000);
+        staleManifests.put(staleKey, new StaleManifestCache.StaleManifest(
+                new ManifestCache.CachedManifest(JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8),
+                        Definitions.MEDIA_TYPE_IIIF_JSONLD_V2), ETAG_HEADER_V2,
+                ZonedDateTime.parse(RECORD_TIMESTAMP_UPDATE)));
+        given(manifestService.getStaleWhileRevalidate(eq(staleKey), eq("test"), any()))
+                .willAnswer(invocation -> staleManifests.getStaleWhileRevalidate(staleKey));
+        given(manifestService.invalidateValidators("/1/2"))
+                .willAnswer(invocation -> staleManifests.invalidate("/1/2"));
+        given(manifestSettings.getAdminApiKey()).willReturn("secret");
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("Warning", containsString("110")));
+
+        this.mockMvc.perform(post("/admin/purge/1/2").header("Authorization", "Bearer secret"))
+                    .andExpect(status().isOk());
+        verify(manifestService).invalidateValidators("/1/2");
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().doesNotExist("Warning"))
+                    .andExpect(content().json(JSONLD_V2_OUTPUT));
+        verify(manifestService).getRecordJson("/1/2", "test", null);
+    }
+
+    /**
+     * Test if a streamed manifest is returned and kept for serving stale
+     */
+    @Test
+    public void testManifestStreaming() throws Exception {
+        byte[] json = JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8);
+        given(manifestSettings.isResponseStreaming()).willReturn(true);
+        given(manifestSettings.getResponseStreamingCacheMaxBytes()).willReturn(1000);
+        given(manifestService.serializeManifest(any(), any(OutputStream.class), anyInt())).willAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write(json);
+            return json;
+        });
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("eTag", equalTo(ETAG_HEADER_V2)))
+                    .andExpect(content().string(JSONLD_V2_OUTPUT));
+        verify(manifestService).cacheStaleManifest(eq("/1/2 null 2 true null"), any(), eq(ETAG_HEADER_V2), any());
+    }
+
+    /**
+     * Test that a client that reads a streamed manifest slowly doesn't hold up a concurrent request for the same manifest
+     */
+    @Test
+    public void testManifestStreamingSlowClient() throws Exception {
+        byte[] json = JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8);
+        given(manifestSettings.isResponseStreaming()).willReturn(true);
+        given(manifestSettings.getResponseStreamingCacheMaxBytes()).willReturn(1000);
+        CountDownLatch slowClientWriting = new CountDownLatch(1);
+        CountDownLatch otherRequestDone = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        given(manifestService.serializeManifest(any(), any(OutputStream.class), anyInt())).willAnswer(invocation -> {
+            if (calls.getAndIncrement() == 0) {
+                slowClientWriting.countDown();
+                otherRequestDone.await(10, TimeUnit.SECONDS);
+            }
+            OutputStream out = invocation.getArgument(1);
+            out.write(json);
+            return json;
+        });
+
+        CompletableFuture<MvcResult> slowRequest = CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test")).andReturn();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertTrue(slowClientWriting.await(10, TimeUnit.SECONDS));
+        long start = System.currentTimeMillis();
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(JSONLD_V2_OUTPUT));
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+        otherRequestDone.countDown();
+        assertEquals(JSONLD_V2_OUTPUT, slowRequest.get(10, TimeUnit.SECONDS).getResponse().getContentAsString());
+    }
+
+    /**
+     * Test that we get an error response (and not an empty 200 response) if streaming fails before anything was sent
+     */
+    @Test
+    public void testManifestStreamingError() throws Exception {
+        given(manifestSettings.isResponseStreaming()).willReturn(true);
+        given(manifestSettings.getResponseStreamingCacheMaxBytes()).willReturn(1000);
+        given(manifestService.serializeManifest(any(), any(OutputStream.class), anyInt()))
+                .willThrow(new RecordParseException("Error serializing data"));
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isInternalServerError());
+    }
+
+    /**
+     * Test if the last served manifest is returned (with Warning headers) when the record can't be retrieved
+     */
+    @Test
+    public void testManifestStaleIfError() throws Exception {
+        given(manifestService.getRecordJson("/1/2", "test", null)).willThrow(new RecordRetrieveException("timeout"));
+        given(manifestService.getStaleIfError("/1/2 null 2 true null", "test", null)).willReturn(new StaleManifestCache.StaleManifest(
+                new ManifestCache.CachedManifest(JSONLD_V2_OUTPUT.getBytes(StandardCharsets.UTF_8),
+                        Definitions.MEDIA_TYPE_IIIF_JSONLD_V2), ETAG_HEADER_V2,
+                ZonedDateTime.parse(RECORD_TIMESTAMP_UPDATE)));
+
+        this.mockMvc.perform(get("/presentation/1/2/manifest").param("wskey", "test"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("eTag", equalTo(ETAG_HEADER_V2)))
+                    .andExpect(header().string("Age", notNullValue()))
+                    .andExpect(header().stringValues("Warning", hasItem(containsString("111"))))
+                    .andExpect(content().string(JSONLD_V2_OUTPUT));
+    }
+
+
     /**
      * Check if the If-Match header is handled properly
      * @throws Exception
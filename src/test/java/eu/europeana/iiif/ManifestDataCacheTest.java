@@ -0,0 +1,78 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.ManifestData;
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.service.ManifestDataCache;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the ManifestDataCache class
+ */
+public class ManifestDataCacheTest {
+
+    private static final EdmRecord RECORD = new EdmRecord("/1/2", "2017-06-06T19:40:18.082Z", null, null, null, null);
+    private static final EdmRecord RECORD_UPDATED = new EdmRecord("/1/2", "2018-01-01T00:00:00.000Z", null, null, null, null);
+    private static final EdmRecord RECORD_NO_TIMESTAMP = new EdmRecord("/1/3", null, null, null, null, null);
+
+    /**
+     * Test if data is extracted only once per record and update timestamp
+     */
+    @Test
+    public void testExtractOnce() {
+        ManifestDataCache cache = new ManifestDataCache(100, 60_000);
+        AtomicInteger extractions = new AtomicInteger();
+
+        ManifestData data = cache.get(RECORD, r -> {
+            extractions.incrementAndGet();
+            return new ManifestData(r.getAbout());
+        });
+        assertSame(data, cache.get(RECORD, r -> {
+            extractions.incrementAndGet();
+            return new ManifestData(r.getAbout());
+        }));
+        assertSame(data, cache.getIfPresent(RECORD));
+        assertEquals(1, extractions.get());
+
+        // an updated record should be extracted again
+        assertNull(cache.getIfPresent(RECORD_UPDATED));
+        cache.get(RECORD_UPDATED, r -> {
+            extractions.incrementAndGet();
+            return new ManifestData(r.getAbout());
+        });
+        assertEquals(2, extractions.get());
+    }
+
+    /**
+     * Test that data of records retrieved from different Record APIs is cached separately
+     */
+    @Test
+    public void testRecordApi() {
+        ManifestDataCache cache = new ManifestDataCache(100, 60_000);
+        EdmRecord production = RECORD.withRecordApi("https://www.europeana.eu");
+        EdmRecord test = RECORD.withRecordApi("https://test-api.eanadev.org");
+
+        ManifestData data = cache.get(production, r -> new ManifestData(r.getAbout()));
+        assertSame(data, cache.getIfPresent(RECORD.withRecordApi("https://www.europeana.eu")));
+        assertNull(cache.getIfPresent(test));
+        assertNotSame(data, cache.get(test, r -> new ManifestData(r.getAbout())));
+    }
+
+    /**
+     * Test that we don't cache data of records without an update timestamp
+     */
+    @Test
+    public void testNoTimestamp() {
+        ManifestDataCache cache = new ManifestDataCache(100, 60_000);
+        cache.get(RECORD_NO_TIMESTAMP, r -> new ManifestData(r.getAbout()));
+        assertNull(cache.getIfPresent(RECORD_NO_TIMESTAMP));
+        assertEquals(0, cache.size());
+    }
+
+}
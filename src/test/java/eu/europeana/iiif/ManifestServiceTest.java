@@ -2,20 +2,26 @@ package eu.europeana.iiif;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.netflix.hystrix.exception.HystrixRuntimeException;
+import eu.europeana.iiif.model.edm.EdmRecord;
 import eu.europeana.iiif.model.v2.ManifestV2;
 import eu.europeana.iiif.model.v3.ManifestV3;
+import eu.europeana.iiif.service.EdmManifestMapping;
+import eu.europeana.iiif.service.ManifestCache;
 import eu.europeana.iiif.service.ManifestService;
 import eu.europeana.iiif.service.ManifestSettings;
 import eu.europeana.iiif.service.exception.IIIFException;
 import eu.europeana.iiif.service.exception.InvalidApiKeyException;
 import eu.europeana.iiif.service.exception.RecordNotFoundException;
 import eu.europeana.iiif.service.exception.RecordRetrieveException;
+import eu.europeana.iiif.web.ManifestController;
+import org.apache.http.pool.PoolStats;
 import org.apache.logging.log4j.LogManager;
 import org.junit.Before;
 import org.junit.FixMethodOrder;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runners.MethodSorters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -23,15 +29,30 @@ import org.springframework.cloud.client.circuitbreaker.EnableCircuitBreaker;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.ByteArrayOutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ExecutionException;
 
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
 
@@ -54,13 +75,18 @@ public class ManifestServiceTest {
 
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort().dynamicHttpsPort());
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     private static final String EXAMPLE_WSKEY = "junit";
     private static final String EXAMPLE_ERROR_ID = "/server/error";
     private static final String EXAMPLE_TIMEOUT_ID = "/timeout/1234";
+    private static final String EXAMPLE_UNAUTHORIZED_ID = "/unauthorized/1234";
 
     @Autowired
     private ManifestService ms;
+    @Autowired
+    private ManifestSettings settings;
 
     @Before
     public void setupApiStub() {
@@ -129,6 +155,12 @@ public class ManifestServiceTest {
                         .withStatus(500)
                         .withHeader("Content-Length", "0")));
 
+        // Full Text API, simulate request that isn't accepted
+        stubFor(head(urlEqualTo("/presentation" + EXAMPLE_UNAUTHORIZED_ID + "/annopage/" +ExampleData.EXAMPLE_FULLTEXT_PAGENR))
+                .willReturn(aResponse()
+                        .withStatus(401)
+                        .withHeader("Content-Length", "0")));
+
         // Full Text API, simulate (timeout?) exception
         stubFor(head(urlEqualTo("/presentation" + EXAMPLE_TIMEOUT_ID + "/annopage/" +ExampleData.EXAMPLE_FULLTEXT_PAGENR))
                 .willReturn(aResponse()
@@ -161,10 +193,10 @@ public class ManifestServiceTest {
         }
     }
 
-    private String getRecord(String recordId) throws IIIFException {
-        String json = ms.getRecordJson(recordId, EXAMPLE_WSKEY, getRecordApiUrl());
+    private EdmRecord getRecord(String recordId) throws IIIFException {
+        EdmRecord json = ms.getRecordJson(recordId, EXAMPLE_WSKEY, getRecordApiUrl());
         assertNotNull(json);
-        assertTrue(json.contains("\"about\":\""+recordId+"\""));
+        assertEquals(recordId, EdmManifestMapping.getEuropeanaId(json));
         return json;
     }
 
@@ -224,6 +256,28 @@ public class ManifestServiceTest {
         assertNull(result);
     }
 
+    /**
+     * Test whether we get an InvalidApiKeyException (and not the fallback value) if the Full-Text API returns 401, both
+     * for the Hystrix command and for the asynchronous check
+     */
+    @Test
+    public void testFullTextApikeyInvalid() throws InterruptedException {
+        String url = ms.generateFullTextUrl(EXAMPLE_UNAUTHORIZED_ID, ExampleData.EXAMPLE_FULLTEXT_PAGENR,
+                getFullTextApiUrl());
+        try {
+            ms.existsFullText(url);
+            fail("Expected InvalidApiKeyException");
+        } catch (IIIFException e) {
+            assertTrue(e instanceof InvalidApiKeyException);
+        }
+        try {
+            ms.existsFullTextAsync(url).get();
+            fail("Expected InvalidApiKeyException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidApiKeyException);
+        }
+    }
+
     /**
      * Test retrieval of record json data
      */
@@ -232,6 +286,70 @@ public class ManifestServiceTest {
         getRecord(ExampleData.EXAMPLE_RECORD_PARENT_ID);
     }
 
+    /**
+     * Test if we send the validators of a previously retrieved record and reuse that record when the Record API
+     * responds with 304 Not Modified
+     */
+    @Test
+    public void testGetJsonRecordRevalidate() throws IIIFException {
+        String recordId = ExampleData.EXAMPLE_RECORD_CHILD_ID;
+        String eTag = "\"revalidate-test\"";
+        String recordUrl = "/api/v2/record" + recordId + ".json?wskey=" + EXAMPLE_WSKEY;
+        stubFor(get(urlEqualTo(recordUrl))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json;charset=UTF-8")
+                        .withHeader("ETag", eTag)
+                        .withBody(ExampleData.EXAMPLE_RECORD_CHILD_RESPONSE)));
+        stubFor(get(urlEqualTo(recordUrl))
+                .withHeader("If-None-Match", equalTo(eTag))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", eTag)));
+
+        Object first = getRecord(recordId);
+        Object second = getRecord(recordId);
+        assertSame(first, second);
+        verify(1, getRequestedFor(urlEqualTo(recordUrl)).withHeader("If-None-Match", equalTo(eTag)));
+    }
+
+    /**
+     * Test asynchronous retrieval of record json data
+     */
+    @Test
+    public void testGetJsonRecordAsync() throws Exception {
+        String recordId = ExampleData.EXAMPLE_RECORD_PARENT_ID;
+        EdmRecord json = ms.getRecordJsonAsync(recordId, EXAMPLE_WSKEY, getRecordApiUrl()).get();
+        assertNotNull(json);
+        assertEquals(recordId, EdmManifestMapping.getEuropeanaId(json));
+    }
+
+    /**
+     * Test whether an asynchronous request completes with a RecordNotFoundException if we provide an incorrect id
+     */
+    @Test
+    public void testGetJsonRecordAsyncNotExist() throws InterruptedException {
+        try {
+            ms.getRecordJsonAsync("/NOTEXISTS/123", EXAMPLE_WSKEY, getRecordApiUrl()).get();
+            fail("Expected RecordNotFoundException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RecordNotFoundException);
+        }
+    }
+
+    /**
+     * Test asynchronous full text checks for an existing page, a non-existing page and a server error
+     */
+    @Test
+    public void testFullTextExistsAsync() throws Exception {
+        String url = ms.generateFullTextUrl(ExampleData.EXAMPLE_FULLTEXT_ID, ExampleData.EXAMPLE_FULLTEXT_PAGENR, getFullTextApiUrl());
+        assertTrue(ms.existsFullTextAsync(url).get());
+        url = ms.generateFullTextUrl("/test/bla", "9999", getFullTextApiUrl());
+        assertFalse(ms.existsFullTextAsync(url).get());
+        url = ms.generateFullTextUrl(EXAMPLE_ERROR_ID, ExampleData.EXAMPLE_FULLTEXT_PAGENR, getFullTextApiUrl());
+        assertNull(ms.existsFullTextAsync(url).get());
+    }
+
     /**
      * Test whether we get a RecordNotFoundException if we provide an incorrect id
      */
@@ -264,6 +382,19 @@ public class ManifestServiceTest {
         ms.getRecordJson(ExampleData.EXAMPLE_RECORD_CHILD_ID, "INVALID", getRecordApiUrl());
     }
 
+    /**
+     * Test if connections are returned to the pool and if we get statistics per route
+     */
+    @Test
+    public void testConnectionPoolStats() throws IIIFException {
+        getRecord(ExampleData.EXAMPLE_RECORD_PARENT_ID);
+        PoolStats routeStats = ms.getConnectionPoolRouteStats().get("localhost:" + wireMockRule.port());
+        assertNotNull(routeStats);
+        assertEquals(0, routeStats.getLeased());
+        assertTrue(routeStats.getAvailable() >= 1);
+        assertEquals(0, ms.getConnectionPoolStats().getLeased());
+    }
+
     /**
      * Test generation of Manifest for version 2
      */
@@ -306,4 +437,152 @@ public class ManifestServiceTest {
         assertTrue(jsonLd.contains("\"http://iiif.io/api/presentation/3/context.json\""));
     }
 
+    /**
+     * Test if manifests that are written directly from the record data are the same as serialized manifest objects
+     */
+    @Test
+    public void testSerializeDirectManifest() throws IIIFException {
+        for (String recordId : new String[]{ExampleData.EXAMPLE_RECORD_PARENT_ID, ExampleData.EXAMPLE_RECORD_CHILD_ID}) {
+            EdmRecord record = getRecord(recordId);
+            assertEquals(ms.serializeManifest(ms.generateManifestV2(record, true, getFullTextApiUrl())),
+                    ms.serializeManifest(ms.generateDirectManifestV2(record, true, getFullTextApiUrl())));
+            assertEquals(ms.serializeManifest(ms.generateManifestV3(record, true, getFullTextApiUrl())),
+                    ms.serializeManifest(ms.generateDirectManifestV3(record)));
+        }
+    }
+
+    /**
+     * Test if serializing directly to a stream gives the same result as serializing to a string, and that we only get a
+     * copy if the manifest is small enough
+     */
+    @Test
+    public void testSerializeToStream() throws IIIFException {
+        ManifestV2 manifest = getManifestV2(ExampleData.EXAMPLE_RECORD_PARENT_ID);
+        byte[] expected = ms.serializeManifest(manifest).getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] copy = ms.serializeManifest(manifest, out, expected.length);
+        assertArrayEquals(expected, out.toByteArray());
+        assertArrayEquals(expected, copy);
+
+        out = new ByteArrayOutputStream();
+        assertNull(ms.serializeManifest(manifest, out, expected.length - 1));
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    /**
+     * Test that manifests for which the full text check failed are not cached (and that the flag isn't serialized)
+     */
+    @Test
+    public void testCacheManifestFullTextUnknown() throws IIIFException {
+        ManifestV2 manifest = getManifestV2(ExampleData.EXAMPLE_RECORD_PARENT_ID);
+        manifest.setFullTextUnknown(true);
+        assertTrue(ManifestService.isFullTextUnknown(manifest));
+        byte[] json = ms.serializeManifest(manifest).getBytes(StandardCharsets.UTF_8);
+        assertFalse(new String(json, StandardCharsets.UTF_8).contains("fullTextUnknown"));
+
+        ms.cacheManifest("unknown", new ManifestCache.CachedManifest(json, null, "application/ld+json", true));
+        assertNull(ms.getCachedManifest("unknown"));
+        ms.cacheManifest("known", new ManifestCache.CachedManifest(json, null, "application/ld+json", false));
+        assertNotNull(ms.getCachedManifest("known"));
+    }
+
+    /**
+     * Test that the last served manifest isn't served when the record can't be retrieved and the api key wasn't
+     * accepted by the Record API recently
+     */
+    @Test
+    public void testStaleIfErrorApiKeyNotValidated() {
+        ms.cacheStaleManifest("stale", new ManifestCache.CachedManifest("{}".getBytes(StandardCharsets.UTF_8),
+                "application/ld+json"), "W/\"1\"", null);
+        assertNotNull(ms.getStaleManifestCache().getStaleIfError("stale"));
+        assertNull(ms.getStaleIfError("stale", "UNKNOWN", getRecordApiUrl()));
+    }
+
+    /**
+     * Test that indexed validators are used for an accepted api key after the record cache time-to-live (0 in the test
+     * settings) has passed, but not for an unknown api key
+     */
+    @Test
+    public void testIndexedValidatorsAfterRecordCacheTtl() throws Exception {
+        getRecord(ExampleData.EXAMPLE_RECORD_CHILD_ID);
+        ms.indexValidators(ExampleData.EXAMPLE_RECORD_CHILD_ID, getRecordApiUrl(), "2", "W/\"1\"",
+                ZonedDateTime.parse("2017-06-06T19:40:18Z"));
+        Thread.sleep(10);
+        assertNotNull(ms.getIndexedValidators(ExampleData.EXAMPLE_RECORD_CHILD_ID, EXAMPLE_WSKEY, getRecordApiUrl(), "2"));
+        assertNull(ms.getIndexedValidators(ExampleData.EXAMPLE_RECORD_CHILD_ID, "UNKNOWN", getRecordApiUrl(), "2"));
+    }
+
+    /**
+     * Test that the controller still serves the last served manifest when the Record API fails after the record cache
+     * time-to-live (0 in the test settings) has passed, because the api key is remembered longer than that
+     */
+    @Test
+    public void testControllerStaleIfErrorAfterRecordCacheTtl() throws Exception {
+        String recordApiBaseUrl = settings.getRecordApiBaseUrl();
+        ReflectionTestUtils.setField(settings, "recordApiBaseUrl", getRecordApiUrl().toString());
+        try {
+            MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new ManifestController(ms)).build();
+            String manifestUrl = "/presentation" + ExampleData.EXAMPLE_RECORD_PARENT_ID + "/manifest";
+            mockMvc.perform(MockMvcRequestBuilders.get(manifestUrl).param("wskey", EXAMPLE_WSKEY)
+                    .param("fullText", "false"))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist("Warning"));
+
+            Thread.sleep(10);
+            stubFor(get(urlEqualTo("/api/v2/record" + ExampleData.EXAMPLE_RECORD_PARENT_ID + ".json?wskey=" + EXAMPLE_WSKEY))
+                    .willReturn(aResponse().withStatus(503)));
+            mockMvc.perform(MockMvcRequestBuilders.get(manifestUrl).param("wskey", EXAMPLE_WSKEY)
+                    .param("fullText", "false"))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.header().stringValues("Warning",
+                            hasItem(containsString("111"))));
+        } finally {
+            ReflectionTestUtils.setField(settings, "recordApiBaseUrl", recordApiBaseUrl);
+        }
+    }
+
+    /**
+     * Test that a restarted instance restores the indexed validators and stale manifests from the manifest store, so
+     * it can serve a manifest when the record can't be retrieved
+     */
+    @Test
+    public void testStaleIfErrorAfterRestart() throws Exception {
+        String recordApiBaseUrl = settings.getRecordApiBaseUrl();
+        ReflectionTestUtils.setField(settings, "recordApiBaseUrl", getRecordApiUrl().toString());
+        ReflectionTestUtils.setField(settings, "manifestStoreDirectory", folder.getRoot().getAbsolutePath());
+        ReflectionTestUtils.setField(settings, "staleManifestIfErrorAnyApiKey", Boolean.TRUE);
+        String manifestUrl = "/presentation" + ExampleData.EXAMPLE_RECORD_PARENT_ID + "/manifest";
+        try {
+            ManifestService first = new ManifestService(settings);
+            try {
+                MockMvcBuilders.standaloneSetup(new ManifestController(first)).build()
+                        .perform(MockMvcRequestBuilders.get(manifestUrl).param("wskey", EXAMPLE_WSKEY)
+                                .param("fullText", "false"))
+                        .andExpect(MockMvcResultMatchers.status().isOk());
+            } finally {
+                first.close();
+            }
+
+            stubFor(get(urlEqualTo("/api/v2/record" + ExampleData.EXAMPLE_RECORD_PARENT_ID + ".json?wskey=" + EXAMPLE_WSKEY))
+                    .willReturn(aResponse().withStatus(503)));
+            ManifestService restarted = new ManifestService(settings);
+            try {
+                assertEquals(1, restarted.getValidatorIndex().size());
+                MockMvcBuilders.standaloneSetup(new ManifestController(restarted)).build()
+                        .perform(MockMvcRequestBuilders.get(manifestUrl).param("wskey", EXAMPLE_WSKEY)
+                                .param("fullText", "false"))
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.header().stringValues("Warning",
+                                hasItem(containsString("111"))));
+            } finally {
+                restarted.close();
+            }
+        } finally {
+            ReflectionTestUtils.setField(settings, "recordApiBaseUrl", recordApiBaseUrl);
+            ReflectionTestUtils.setField(settings, "manifestStoreDirectory", "");
+            ReflectionTestUtils.setField(settings, "staleManifestIfErrorAnyApiKey", Boolean.FALSE);
+        }
+    }
+
 }
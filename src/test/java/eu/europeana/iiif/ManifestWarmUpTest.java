@@ -0,0 +1,64 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.web.ManifestWarmUp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests if the ManifestWarmUp class reads and ranks the records in a warm-up file correctly
+ */
+public class ManifestWarmUpTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createFile(String... lines) throws IOException {
+        File result = folder.newFile();
+        Files.write(result.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return result;
+    }
+
+    /**
+     * Test if a list of record ids is ranked by frequency
+     */
+    @Test
+    public void testRecordIdList() throws IOException {
+        File file = createFile("/1/2", "/1/3", " /1/3 ", "", "not a record id", "/1/3", "/1/2", "/9/9");
+        assertEquals(Arrays.asList("/1/3 2", "/1/2 2"), ManifestWarmUp.rankManifests(file.getPath(), 2));
+    }
+
+    /**
+     * Test if manifest requests (and their IIIF version) are read from an access log
+     */
+    @Test
+    public void testAccessLog() throws IOException {
+        File file = createFile(
+                "10.0.0.1 - - [16/Oct/2026:10:00:00 +0000] \"GET /presentation/1/2/manifest?wskey=x HTTP/1.1\" 200 512",
+                "10.0.0.2 - - [16/Oct/2026:10:00:01 +0000] \"GET /presentation/1/2/manifest?wskey=x&format=3 HTTP/1.1\" 200 512",
+                "10.0.0.3 - - [16/Oct/2026:10:00:02 +0000] \"GET /presentation/1/2/manifest?format=3&wskey=y HTTP/1.1\" 304 0",
+                "10.0.0.4 - - [16/Oct/2026:10:00:03 +0000] \"GET /presentation/1/2/canvases/2?wskey=x HTTP/1.1\" 200 512",
+                "10.0.0.5 - - [16/Oct/2026:10:00:04 +0000] \"GET /presentation/1/4/manifest HTTP/1.1\" 200 512",
+                "10.0.0.6 - - [16/Oct/2026:10:00:05 +0000] \"GET /presentation/1/5/manifest?format=30 HTTP/1.1\" 200 512");
+        assertEquals(Arrays.asList("/1/2 3", "/1/2 2", "/1/4 2", "/1/5 2"),
+                ManifestWarmUp.rankManifests(file.getPath(), 10));
+    }
+
+    /**
+     * Test that an empty file results in an empty warm-up
+     */
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertEquals(Collections.emptyList(), ManifestWarmUp.rankManifests(createFile().getPath(), 10));
+    }
+
+}
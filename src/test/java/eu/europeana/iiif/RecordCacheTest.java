@@ -0,0 +1,104 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.edm.EdmRecord;
+import eu.europeana.iiif.service.RecordCache;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the RecordCache class
+ */
+public class RecordCacheTest {
+
+    private static final String KEY1 = "http://localhost/api/v2/record/1/1";
+    private static final String KEY2 = "http://localhost/api/v2/record/2/2";
+    private static final EdmRecord DOC1 = new EdmRecord("/1/1", null, null, null, null, null);
+    private static final EdmRecord DOC2 = new EdmRecord("/2/2", null, null, null, null, null);
+
+    /**
+     * Test if a newly added record is fresh and if it's not fresh when the time-to-live is 0
+     */
+    @Test
+    public void testFresh() {
+        RecordCache cache = new RecordCache(1024, 60_000);
+        cache.put(KEY1, new RecordCache.CachedRecord(DOC1, "\"1\"", null, 10));
+        RecordCache.CachedRecord record = cache.get(KEY1);
+        assertNotNull(record);
+        assertSame(DOC1, record.getDocument());
+        assertTrue(record.hasValidators());
+        assertTrue(cache.isFresh(record));
+        assertFalse(cache.isFresh(null));
+
+        RecordCache noTtl = new RecordCache(1024, 0);
+        noTtl.put(KEY1, new RecordCache.CachedRecord(DOC1, null, null, 10));
+        assertFalse(noTtl.isFresh(noTtl.get(KEY1)));
+        assertFalse(noTtl.get(KEY1).hasValidators());
+    }
+
+    /**
+     * Test if records are evicted when the maximum total size is exceeded
+     */
+    @Test
+    public void testEvictOnWeight() {
+        RecordCache cache = new RecordCache(100, 60_000);
+        cache.put(KEY1, new RecordCache.CachedRecord(DOC1, null, null, 60));
+        cache.put(KEY2, new RecordCache.CachedRecord(DOC2, null, null, 60));
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+        assertTrue(cache.getWeightedSize() <= 100);
+        assertEquals(1, cache.getStats().evictionCount());
+    }
+
+    /**
+     * Test if we keep track of valid api keys
+     */
+    @Test
+    public void testApiKeyValid() {
+        RecordCache cache = new RecordCache(1024, 60_000);
+        assertFalse(cache.isApiKeyValid("test"));
+        cache.setApiKeyValid("test", true);
+        assertTrue(cache.isApiKeyValid("test"));
+        cache.setApiKeyValid("test", false);
+        assertFalse(cache.isApiKeyValid("test"));
+    }
+
+    /**
+     * Test that an accepted api key is remembered longer than the record time-to-live, but is only used for cached
+     * records within that time-to-live
+     */
+    @Test
+    public void testApiKeyValidLonger() throws InterruptedException {
+        RecordCache cache = new RecordCache(1024, 0, 60_000);
+        cache.setApiKeyValid("test", true);
+        Thread.sleep(5);
+        assertFalse(cache.isApiKeyValid("test"));
+        assertTrue(cache.isApiKeyValid("test", 60_000));
+        assertFalse(cache.isApiKeyValid("test", 1));
+        cache.setApiKeyValid("test", false);
+        assertFalse(cache.isApiKeyValid("test", 60_000));
+    }
+
+    /**
+     * Test if hits, misses and not-modified responses are counted
+     */
+    @Test
+    public void testStats() {
+        RecordCache cache = new RecordCache(1024, 60_000);
+        assertNull(cache.get(KEY1));
+        cache.put(KEY1, new RecordCache.CachedRecord(DOC1, "\"1\"", null, 10));
+        RecordCache.CachedRecord record = cache.get(KEY1);
+        cache.notModified(KEY1, record);
+        assertSame(DOC1, cache.get(KEY1).getDocument());
+
+        assertEquals(1, cache.getStats().missCount());
+        assertEquals(2, cache.getStats().hitCount());
+        assertEquals(1, cache.getNotModifiedCount());
+    }
+
+}
@@ -0,0 +1,103 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.SingleFlight;
+import eu.europeana.iiif.service.exception.IIIFException;
+import eu.europeana.iiif.service.exception.RecordNotFoundException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the SingleFlight class
+ */
+public class SingleFlightTest {
+
+    /**
+     * Test if a call with the same key as a call that is in progress waits for that call and gets the same result
+     */
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> inProgress = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.executeAsync("key", () -> {
+            executions.incrementAndGet();
+            return inProgress;
+        });
+
+        // complete the first call a little later, while the second call is waiting for it
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> {
+                Thread.sleep(200);
+                return inProgress.complete("result");
+            });
+            String second = singleFlight.execute("key", () -> {
+                executions.incrementAndGet();
+                return "other";
+            });
+
+            assertEquals("result", first.get(5, TimeUnit.SECONDS));
+            assertEquals("result", second);
+            assertEquals(1, executions.get());
+            assertEquals(0, singleFlight.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test if an error is passed on to all callers
+     */
+    @Test
+    public void testErrorPropagated() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.executeAsync("key", () -> call);
+        CompletableFuture<String> second = singleFlight.executeAsync("key", () -> CompletableFuture.completedFuture("other"));
+        assertSame(first, second);
+
+        RecordNotFoundException error = new RecordNotFoundException("test");
+        call.completeExceptionally(error);
+        for (CompletableFuture<String> future : Arrays.asList(first, second)) {
+            try {
+                future.get();
+                fail("Expected RecordNotFoundException");
+            } catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+        assertEquals(0, singleFlight.size());
+    }
+
+    /**
+     * Test if a new call is executed again after the previous call with the same key has finished
+     */
+    @Test
+    public void testSequentialCallsExecutedAgain() throws IIIFException {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        assertEquals(Integer.valueOf(1), singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(Integer.valueOf(2), singleFlight.execute("key", executions::incrementAndGet));
+    }
+
+    /**
+     * Test if an IIIFException thrown by a synchronous call is rethrown
+     */
+    @Test(expected = RecordNotFoundException.class)
+    public void testExceptionRethrown() throws IIIFException {
+        new SingleFlight<String, String>().execute("key", () -> {
+            throw new RecordNotFoundException("test");
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.ManifestCache;
+import eu.europeana.iiif.service.StaleManifestCache;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests when the StaleManifestCache class returns a stale manifest
+ */
+public class StaleManifestCacheTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private static StaleManifestCache.StaleManifest manifest(String json) {
+        return new StaleManifestCache.StaleManifest(new ManifestCache.CachedManifest(
+                json.getBytes(StandardCharsets.UTF_8), "application/ld+json"), "W/\"1\"",
+                ZonedDateTime.parse("2015-10-28T07:28:00Z"));
+    }
+
+    /**
+     * Test that a manifest that is still fresh is not served as stale
+     */
+    @Test
+    public void testFresh() {
+        StaleManifestCache cache = new StaleManifestCache(1_000_000, HOUR, HOUR, HOUR);
+        cache.put("key", manifest("{}"));
+        assertNull(cache.getStaleWhileRevalidate("key"));
+        // a fresh manifest can always be served when the record can't be retrieved
+        assertNotNull(cache.getStaleIfError("key"));
+        assertNull(cache.getStaleIfError("other"));
+    }
+
+    /**
+     * Test that a manifest past its time-to-live is served while it's revalidated or when the record can't be retrieved
+     */
+    @Test
+    public void testStale() {
+        StaleManifestCache cache = new StaleManifestCache(1_000_000, 0, HOUR, HOUR);
+        cache.put("key", manifest("{\"id\":1}"));
+        StaleManifestCache.StaleManifest result = cache.getStaleWhileRevalidate("key");
+        assertNotNull(result);
+        assertEquals("{\"id\":1}", new String(result.getManifest().getContent(), StandardCharsets.UTF_8));
+        assertEquals("W/\"1\"", result.getETag());
+        assertNotNull(cache.getStaleIfError("key"));
+    }
+
+    /**
+     * Test that the manifests of a record or dataset are removed, but not those of other records or datasets
+     */
+    @Test
+    public void testInvalidate() {
+        StaleManifestCache cache = new StaleManifestCache(1_000_000, HOUR, HOUR, HOUR);
+        cache.put("/1/2 null 2 true null", manifest("{}"));
+        cache.put("/1/2 null 3 true null", manifest("{}"));
+        cache.put("/1/3 null 2 true null", manifest("{}"));
+        cache.put("/12/3 null 2 true null", manifest("{}"));
+
+        assertEquals(2, cache.invalidate("/1/2"));
+        assertNull(cache.getStaleIfError("/1/2 null 2 true null"));
+        assertNotNull(cache.getStaleIfError("/1/3 null 2 true null"));
+
+        assertEquals(1, cache.invalidate("/1"));
+        assertNull(cache.getStaleIfError("/1/3 null 2 true null"));
+        assertNotNull(cache.getStaleIfError("/12/3 null 2 true null"));
+    }
+
+    /**
+     * Test that stale manifests are not served when the stale periods are disabled
+     */
+    @Test
+    public void testDisabled() {
+        StaleManifestCache cache = new StaleManifestCache(1_000_000, 0, 0, 0);
+        cache.put("key", manifest("{}"));
+        assertNull(cache.getStaleWhileRevalidate("key"));
+        assertNull(cache.getStaleIfError("key"));
+    }
+
+}
@@ -0,0 +1,87 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.service.ValidatorIndex;
+import org.junit.Test;
+
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ValidatorIndex class
+ */
+public class ValidatorIndexTest {
+
+    private static final ZonedDateTime LAST_MODIFIED = ZonedDateTime.parse("2017-06-06T19:40:18.082Z");
+    private static final ValidatorIndex.Validators VALIDATORS = new ValidatorIndex.Validators("W/\"1\"", LAST_MODIFIED);
+
+    /**
+     * Test if validators are stored per record and variant
+     */
+    @Test
+    public void testGetPut() {
+        ValidatorIndex index = new ValidatorIndex(100, 60_000);
+        index.put("/1/2", "2", VALIDATORS);
+        assertEquals("W/\"1\"", index.get("/1/2", "2").getETag());
+        assertEquals(LAST_MODIFIED, index.get("/1/2", "2").getLastModified());
+        assertNull(index.get("/1/2", "3"));
+        assertNull(index.get("/1/3", "2"));
+    }
+
+    /**
+     * Test if we can invalidate the validators of a single record and of a dataset
+     */
+    @Test
+    public void testInvalidate() {
+        ValidatorIndex index = new ValidatorIndex(100, 60_000);
+        index.put("/1/2", "2", VALIDATORS);
+        index.put("/1/2", "3", VALIDATORS);
+        index.put("/1/23", "2", VALIDATORS);
+        index.put("/12/2", "2", VALIDATORS);
+
+        assertEquals(2, index.invalidate("/1/2"));
+        assertNull(index.get("/1/2", "2"));
+        assertNull(index.get("/1/2", "3"));
+        assertNotNull(index.get("/1/23", "2"));
+
+        assertEquals(1, index.invalidate("/1"));
+        assertNull(index.get("/1/23", "2"));
+        assertNotNull(index.get("/12/2", "2"));
+    }
+
+    /**
+     * Test that validators that were indexed earlier (e.g. restored after a restart) expire when they would have expired
+     * if they were added then, and that they don't replace validators that were added since
+     */
+    @Test
+    public void testPutIndexedAt() throws InterruptedException {
+        ValidatorIndex index = new ValidatorIndex(100, 1000);
+        long now = System.currentTimeMillis();
+        assertTrue(index.put("/1/2", "2", VALIDATORS, now - 800));
+        assertFalse(index.put("/1/3", "2", VALIDATORS, now - 1000));
+        assertNull(index.get("/1/3", "2"));
+        index.put("/1/4", "2", VALIDATORS);
+        assertFalse(index.put("/1/4", "2", new ValidatorIndex.Validators("W/\"2\"", LAST_MODIFIED), now));
+        assertEquals("W/\"1\"", index.get("/1/4", "2").getETag());
+
+        assertNotNull(index.get("/1/2", "2"));
+        Thread.sleep(400);
+        assertNull(index.get("/1/2", "2"));
+        assertNotNull(index.get("/1/4", "2"));
+    }
+
+    /**
+     * Test that nothing is indexed when the time-to-live is 0
+     */
+    @Test
+    public void testDisabled() {
+        ValidatorIndex index = new ValidatorIndex(100, 0);
+        index.put("/1/2", "2", VALIDATORS);
+        assertNull(index.get("/1/2", "2"));
+    }
+
+}
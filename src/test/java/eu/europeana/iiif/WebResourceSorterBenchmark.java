@@ -0,0 +1,71 @@
+package eu.europeana.iiif;
+
+import eu.europeana.iiif.model.WebResourceSorter;
+import eu.europeana.iiif.model.edm.EdmWebResource;
+import eu.europeana.iiif.service.exception.DataInconsistentException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmark for sorting webresources of small records up to very large books or newspapers. The webresources
+ * form a single sequence (like the pages of a book) plus a few isolated webresources, in random order.
+ *
+ * This is not a unit test (so it's not run during the build), run the main method to execute it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebResourceSorterBenchmark {
+
+    private static final int ISOLATED = 3;
+
+    @Param({"10", "1000", "20000"})
+    private int webResources;
+
+    private List<EdmWebResource> data;
+
+    @Setup
+    public void setup() {
+        int pages = webResources - ISOLATED;
+        data = new ArrayList<>(webResources);
+        for (int i = 0; i < pages; i++) {
+            data.add(new EdmWebResource("page" + i, (i == pages - 1 ? null : "page" + (i + 1))));
+        }
+        for (int i = 0; i < ISOLATED; i++) {
+            data.add(new EdmWebResource("isolated" + i, null));
+        }
+        Collections.shuffle(data, new Random(42));
+    }
+
+    @Benchmark
+    public List<EdmWebResource> sort() throws DataInconsistentException {
+        return WebResourceSorter.sort(data);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(WebResourceSorterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,14 +1,17 @@
 package eu.europeana.iiif;
 
-import eu.europeana.iiif.model.WebResource;
 import eu.europeana.iiif.model.WebResourceSorter;
+import eu.europeana.iiif.model.edm.EdmWebResource;
 import eu.europeana.iiif.service.exception.DataInconsistentException;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -17,23 +20,23 @@ import static org.junit.Assert.assertTrue;
  */
 public class WebResourceSorterTest {
 
-    private static final WebResource[] SEQUENCE1 = new WebResource[]{ new WebResource("1", "2"),
-                                                                      new WebResource("2", null) };
-    private static final WebResource[] SEQUENCE2 = new WebResource[]{ new WebResource("3", "4"),
-                                                                      new WebResource("4", "5"),
-                                                                      new WebResource("5", null) };
-    private static final WebResource ISOLATED1 = new WebResource("iso1", null);
-    private static final WebResource ISOLATED2 = new WebResource("iso2", null);
+    private static final EdmWebResource[] SEQUENCE1 = new EdmWebResource[]{ new EdmWebResource("1", "2"),
+                                                                      new EdmWebResource("2", null) };
+    private static final EdmWebResource[] SEQUENCE2 = new EdmWebResource[]{ new EdmWebResource("3", "4"),
+                                                                      new EdmWebResource("4", "5"),
+                                                                      new EdmWebResource("5", null) };
+    private static final EdmWebResource ISOLATED1 = new EdmWebResource("iso1", null);
+    private static final EdmWebResource ISOLATED2 = new EdmWebResource("iso2", null);
 
     /**
      * @param webResources
      * @return true if the webresource with wrId1 is found after the webresource with wrId2 in the webResources array
      */
-    public boolean isAfter(List<WebResource> webResources, String wrId1, String wrId2) {
+    public boolean isAfter(List<EdmWebResource> webResources, String wrId1, String wrId2) {
         int pos1 = -1;
         int pos2 = -1;
         for (int i = 0; i < webResources.size() && (pos1 == -1 || pos2 == -1); i++) {
-            WebResource wr = webResources.get(i);
+            EdmWebResource wr = webResources.get(i);
             if (wrId1.equals(wr.getId())) {
                 pos1 = i;
             }
@@ -58,13 +61,13 @@ public class WebResourceSorterTest {
     @Test
     public void sortNormal() throws DataInconsistentException {
         // 2 sequences and 2 isolated nodes
-        List<WebResource> test = new ArrayList<>();
+        List<EdmWebResource> test = new ArrayList<>();
         test.add(ISOLATED1);
         test.addAll(Arrays.asList(SEQUENCE1));
         test.add(ISOLATED2);
         test.addAll(Arrays.asList(SEQUENCE2));
 
-        List<WebResource> wrs = WebResourceSorter.sort(test);
+        List<EdmWebResource> wrs = WebResourceSorter.sort(test);
         assertTrue(isAfter(wrs, "1", "2"));
         assertTrue(isAfter(wrs, "3", "4"));
         assertTrue(isAfter(wrs, "4", "5"));
@@ -80,8 +83,8 @@ public class WebResourceSorterTest {
      */
     @Test
     public void sortOnlyIsolated() throws DataInconsistentException {
-        WebResource[] isolated = new WebResource[]{ ISOLATED1, ISOLATED2};
-        List<WebResource> wrs = WebResourceSorter.sort(Arrays.asList(isolated));
+        EdmWebResource[] isolated = new EdmWebResource[]{ ISOLATED1, ISOLATED2};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(isolated));
         // can't test order since it's not defined.
     }
 
@@ -91,7 +94,7 @@ public class WebResourceSorterTest {
      */
     @Test
     public void sortEmpty() throws DataInconsistentException {
-        List<WebResource> wrs = WebResourceSorter.sort(Arrays.asList(new WebResource[0]));
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(new EdmWebResource[0]));
     }
 
     /**
@@ -100,11 +103,11 @@ public class WebResourceSorterTest {
      */
     @Test(expected = DataInconsistentException.class)
     public void sortInfiniteLoopTest() throws DataInconsistentException {
-        WebResource[] infiniteLoop = new WebResource[]{
-                new WebResource("1", "2"),
-                new WebResource("2", "3"),
-                new WebResource("3", "1")};
-        List<WebResource> wrs = WebResourceSorter.sort(Arrays.asList(infiniteLoop));
+        EdmWebResource[] infiniteLoop = new EdmWebResource[]{
+                new EdmWebResource("1", "2"),
+                new EdmWebResource("2", "3"),
+                new EdmWebResource("3", "1")};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(infiniteLoop));
     }
 
     /**
@@ -113,11 +116,11 @@ public class WebResourceSorterTest {
      */
     @Test(expected = DataInconsistentException.class)
     public void sortIncompleteSequence() throws DataInconsistentException {
-        WebResource[] incomplete = new WebResource[]{
-                new WebResource("1", "2"),
-                new WebResource("2", "3"),
-                new WebResource("3", "4")};
-        List<WebResource> wrs = WebResourceSorter.sort(Arrays.asList(incomplete));
+        EdmWebResource[] incomplete = new EdmWebResource[]{
+                new EdmWebResource("1", "2"),
+                new EdmWebResource("2", "3"),
+                new EdmWebResource("3", "4")};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(incomplete));
     }
 
     /**
@@ -126,12 +129,58 @@ public class WebResourceSorterTest {
      */
     @Test(expected = DataInconsistentException.class)
     public void sortIntertwinedSequence() throws DataInconsistentException {
-        WebResource[] intertwined = new WebResource[]{
-                new WebResource("1", "2"),
-                new WebResource("2", "3"),
-                new WebResource("5", "4"),
-                new WebResource("4", "3")};
-        List<WebResource> wrs = WebResourceSorter.sort(Arrays.asList(intertwined));
+        EdmWebResource[] intertwined = new EdmWebResource[]{
+                new EdmWebResource("1", "2"),
+                new EdmWebResource("2", "3"),
+                new EdmWebResource("5", "4"),
+                new EdmWebResource("4", "3")};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(intertwined));
+    }
+
+    /**
+     * Test if an error is thrown if a webresource refers to itself
+     * @throws DataInconsistentException
+     */
+    @Test(expected = DataInconsistentException.class)
+    public void sortSelfLoop() throws DataInconsistentException {
+        EdmWebResource[] selfLoop = new EdmWebResource[]{
+                new EdmWebResource("1", "1"),
+                new EdmWebResource("2", null)};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(selfLoop));
+    }
+
+    /**
+     * Test if an error is thrown if a sequence ends in a loop
+     * @throws DataInconsistentException
+     */
+    @Test(expected = DataInconsistentException.class)
+    public void sortSequenceEndsInLoop() throws DataInconsistentException {
+        EdmWebResource[] endsInLoop = new EdmWebResource[]{
+                new EdmWebResource("1", "2"),
+                new EdmWebResource("2", "3"),
+                new EdmWebResource("3", "4"),
+                new EdmWebResource("4", "2")};
+        List<EdmWebResource> wrs = WebResourceSorter.sort(Arrays.asList(endsInLoop));
+    }
+
+    /**
+     * Test if we sort a large, shuffled sequence properly
+     * @throws DataInconsistentException
+     */
+    @Test
+    public void sortLargeSequence() throws DataInconsistentException {
+        int size = 20_000;
+        List<EdmWebResource> test = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            test.add(new EdmWebResource(Integer.toString(i), (i == size - 1 ? null : Integer.toString(i + 1))));
+        }
+        Collections.shuffle(test, new Random(42));
+
+        List<EdmWebResource> wrs = WebResourceSorter.sort(test);
+        assertEquals(size, wrs.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(Integer.toString(size - 1 - i), wrs.get(i).getId());
+        }
     }
 
 }